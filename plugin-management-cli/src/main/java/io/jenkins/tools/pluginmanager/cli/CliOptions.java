@@ -18,11 +18,11 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.file.Files;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
-import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
@@ -34,10 +34,15 @@ import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 import org.kohsuke.args4j.spi.URLOptionHandler;
 
 class CliOptions {
+    static final int DEFAULT_SERVE_PORT = 8085;
+    static final long DEFAULT_SERVE_REFRESH_INTERVAL = 60;
+
     //path must include plugins.txt
-    @Option(name = "--plugin-file", aliases = {"-f"}, usage = "Path to plugins.txt or plugins.yaml file",
+    @Option(name = "--plugin-file", aliases = {"-f"},
+            usage = "Path to plugins.txt or plugins.yaml file, or to a directory of such files, optionally gzipped. " +
+                    "Can be repeated, the files are merged keeping the highest version of every plugin",
             handler = FileOptionHandler.class)
-    private File pluginFile;
+    private List<File> pluginFiles = new ArrayList<>();
 
     @Option(name = "--plugin-download-directory", aliases = {"-d"},
             usage = "Path to directory in which to install plugins; will override PLUGIN_DIR environment variable.",
@@ -165,6 +170,79 @@ class CliOptions {
             handler = MultiCredentialsOptionHandler.class)
     private List<Credentials> credentials;
 
+    @Option(name = "--max-cache-staleness", usage = "Minutes an expired update center cache entry may still be " +
+            "used while it is refreshed in the background. By default expired entries are always downloaded again " +
+            "before use")
+    private long maxCacheStaleness;
+
+    @Option(name = "--compress-cache", usage = "Store the update center cache entries gzip compressed",
+            handler = BooleanOptionHandler.class)
+    private boolean compressCache;
+
+    @Option(name = "--serve", usage = "Run as a long-running local server which keeps the update center metadata " +
+            "in memory and answers resolution, available updates and security warning queries over HTTP",
+            handler = BooleanOptionHandler.class)
+    private boolean serve;
+
+    @Option(name = "--serve-port", usage = "Port the server started with --serve listens on, default is " +
+            DEFAULT_SERVE_PORT)
+    private int servePort = DEFAULT_SERVE_PORT;
+
+    @Option(name = "--serve-refresh-interval", usage = "Minutes between update center metadata refreshes of the " +
+            "server started with --serve, default is " + DEFAULT_SERVE_REFRESH_INTERVAL)
+    private long serveRefreshInterval = DEFAULT_SERVE_REFRESH_INTERVAL;
+
+    @Option(name = "--server-url", usage = "URL of a server started with --serve. When set, the plugins are " +
+            "resolved by the server instead of locally and nothing is downloaded",
+            handler = URLOptionHandler.class)
+    private URL serverUrl;
+
+    @Option(name = "--audit", usage = "Audit the plugins installed in the plugin download directory, or in the " +
+            "directories given with --audit-plugin-directories, and the plugins bundled in the WAR for security " +
+            "warnings and print the findings as JSON. Nothing is downloaded",
+            handler = BooleanOptionHandler.class)
+    private boolean audit;
+
+    @Option(name = "--audit-plugin-directories", usage = "Plugin directories audited by --audit, separated by a " +
+            "space. By default the plugin download directory is audited",
+            handler = StringArrayOptionHandler.class)
+    private String[] auditPluginDirs = new String[0];
+
+    @Option(name = "--lockfile", usage = "Install the plugins listed in a lockfile written by --write-lockfile, " +
+            "without update center metadata and dependency resolution. Requested plugins are ignored",
+            handler = FileOptionHandler.class)
+    private File lockfile;
+
+    @Option(name = "--write-lockfile", usage = "Write the exact version, download URL, checksum and minimum Jenkins " +
+            "version of every resolved plugin to a lockfile",
+            handler = FileOptionHandler.class)
+    private File lockfileOutput;
+
+    @Option(name = "--incremental", usage = "Reuse the dependency resolution of the previous run for the requested " +
+            "plugins which did not change, and print the plugins added, removed, upgraded or downgraded since",
+            handler = BooleanOptionHandler.class)
+    private boolean incremental;
+
+    @Option(name = "--explode-plugins", usage = "Install the downloaded plugins as exploded .jpi directories, " +
+            "extracted while the other plugins are downloaded",
+            handler = BooleanOptionHandler.class)
+    private boolean explodePlugins;
+
+    @Option(name = "--reconcile-download-directory", usage = "Like --clean-download-directory, but keeps the " +
+            "installed plugins which are already at the resulting version instead of downloading them again",
+            handler = BooleanOptionHandler.class)
+    private boolean reconcilePluginDir;
+
+    @Option(name = "--warm-up-connections", usage = "Open connections to the plugin download host and to the " +
+            "mirrors of the previous run while the update center metadata is retrieved",
+            handler = BooleanOptionHandler.class)
+    private boolean warmUpConnections;
+
+    @Option(name = "--mirror-cache-ttl", usage = "Minutes the mirror the plugin downloads were redirected to is " +
+            "remembered in the cache, so the next runs download from it directly. By default it is only used " +
+            "during the run")
+    private long mirrorCacheTtl;
+
     /**
      * Creates a configuration class with configurations specified from the CLI and/or environment variables.
      *
@@ -195,6 +273,15 @@ class CliOptions {
                 .withSkipFailedPlugins(isSkipFailedPlugins())
                 .withCredentials(getCredentials())
                 .withHashFunction(getHashFunction())
+                .withMaxCacheStaleness(getMaxCacheStaleness())
+                .withCompressCache(isCompressCache())
+                .withLockfile(getLockfile())
+                .withLockfileOutput(getLockfileOutput())
+                .withIncrementalResolution(isIncremental())
+                .withExplodePlugins(isExplodePlugins())
+                .withReconcilePluginDir(isReconcilePluginDir())
+                .withWarmUpConnections(isWarmUpConnections())
+                .withMirrorCacheTtl(getMirrorCacheTtl())
                 .build();
     }
 
@@ -204,22 +291,23 @@ class CliOptions {
     }
 
     /**
-     * Outputs information about plugin txt or yaml file selected from CLI Option. Throws a PluginInputException if the
+     * Outputs information about plugin txt or yaml files selected from CLI Option. Throws a PluginInputException if a
      * file does not exist.
      *
-     * @return plugin txt or yaml file passed in through CLI, or null if user did not pass in a txt file
+     * @return plugin txt or yaml files and directories passed in through CLI, empty if user did not pass in any
      */
-    private File getPluginFile() {
-        if (pluginFile == null) {
+    private List<File> getPluginFiles() {
+        if (pluginFiles.isEmpty()) {
             logVerbose("No .txt or .yaml file containing list of plugins to be downloaded entered.");
-        } else {
+        }
+        for (File pluginFile : pluginFiles) {
             if (Files.exists(pluginFile.toPath())) {
                 logVerbose("File containing list of plugins to be downloaded: " + pluginFile);
             } else {
                 throw new PluginInputException("File containing list of plugins does not exist " + pluginFile.toPath());
             }
         }
-        return pluginFile;
+        return pluginFiles;
     }
 
     /**
@@ -284,37 +372,14 @@ class CliOptions {
         PluginListParser pluginParser = new PluginListParser(verbose);
         List<Plugin> requestedPlugins = new ArrayList<>(pluginParser.parsePluginsFromCliOption(plugins));
 
-        File pluginFile = getPluginFile();
-        if (pluginFile != null) {
-            if (isFileExtension(pluginFile, "yaml", "yml")) {
-                requestedPlugins.addAll(pluginParser.parsePluginYamlFile(pluginFile));
-            } else if (isFileExtension(pluginFile, "txt")) {
-                requestedPlugins.addAll(pluginParser.parsePluginTxtFile(pluginFile));
-            } else {
-                throw new PluginInputException("Unknown file type, file must have .yaml/.yml or .txt extension");
-            }
+        List<File> pluginFiles = getPluginFiles();
+        if (!pluginFiles.isEmpty()) {
+            // a single file is merged like fragments, with the same rule for plugins listed several times
+            requestedPlugins.addAll(pluginParser.parsePluginFiles(pluginFiles));
         }
         return requestedPlugins;
     }
 
-    /**
-     * Given a file containing a list of plugins and one or more file extensions, returns true if the file extension
-     * of the file matches any of the file extension strings gvien
-     *
-     * @param pluginFile plugin file of which to check extension
-     * @param extensions array of strings of extensions to check
-     * @return true if file extension matches any of the list of extensions
-     */
-    private boolean isFileExtension(File pluginFile, String... extensions) {
-        String fileExtension = FilenameUtils.getExtension(pluginFile.toString());
-        for (String ext : extensions) {
-            if (fileExtension.equals(ext)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /**
      * Gets the value corresponding to if user selected to show warnings for specified plugins
      *
@@ -597,6 +662,138 @@ class CliOptions {
     }
 
 
+    /**
+     * Returns for how long an expired update center cache entry may be served while it is refreshed
+     *
+     * @return maximum staleness of the cached update center metadata
+     */
+    private Duration getMaxCacheStaleness() {
+        if (maxCacheStaleness < 0) {
+            throw new PluginInputException("--max-cache-staleness must not be negative");
+        }
+        return Duration.ofMinutes(maxCacheStaleness);
+    }
+
+    private boolean isCompressCache() {
+        return compressCache;
+    }
+
+    private boolean isIncremental() {
+        return incremental;
+    }
+
+    private boolean isExplodePlugins() {
+        return explodePlugins;
+    }
+
+    private boolean isReconcilePluginDir() {
+        return reconcilePluginDir;
+    }
+
+    private boolean isWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * Returns for how long the mirror the plugin downloads were redirected to is remembered
+     *
+     * @return time to live of the mirror in the cache
+     */
+    private Duration getMirrorCacheTtl() {
+        if (mirrorCacheTtl < 0) {
+            throw new PluginInputException("--mirror-cache-ttl must not be negative");
+        }
+        return Duration.ofMinutes(mirrorCacheTtl);
+    }
+
+    /**
+     * Returns if the user wants to run the long-running server
+     *
+     * @return true if the server should be started
+     */
+    public boolean isServe() {
+        return serve;
+    }
+
+    public int getServePort() {
+        return servePort;
+    }
+
+    public long getServeRefreshInterval() {
+        return serveRefreshInterval;
+    }
+
+    /**
+     * Returns the URL of the server to send the queries to
+     *
+     * @return server URL, or {@code null} if the plugins are resolved locally
+     */
+    @CheckForNull
+    public URL getServerUrl() {
+        return serverUrl;
+    }
+
+    /**
+     * Returns if the user wants to audit existing plugin directories for security warnings
+     *
+     * @return true if the plugins should be audited
+     */
+    public boolean isAudit() {
+        return audit;
+    }
+
+    /**
+     * Gets the plugin directories to audit, defaults to the plugin download directory
+     *
+     * @return plugin directories to audit
+     */
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "we want the user to be able to specify a path")
+    public List<File> getAuditPluginDirs() {
+        if (auditPluginDirs.length == 0) {
+            return Collections.singletonList(getPluginDir());
+        }
+        List<File> dirs = new ArrayList<>();
+        for (String dir : auditPluginDirs) {
+            dirs.add(new File(dir));
+        }
+        return dirs;
+    }
+
+    /**
+     * Gets the lockfile to install the plugins from
+     *
+     * @return the lockfile, or {@code null} to resolve the requested plugins
+     */
+    @CheckForNull
+    public File getLockfile() {
+        return lockfile;
+    }
+
+    /**
+     * Gets the file to write the lockfile of the resolved plugins to
+     *
+     * @return the lockfile to write, or {@code null} to not write any
+     */
+    @CheckForNull
+    public File getLockfileOutput() {
+        return lockfileOutput;
+    }
+
+    /**
+     * Gets the WAR of which the bundled plugins are audited. The default WAR is only audited if it exists.
+     *
+     * @return WAR to audit, or {@code null} if no WAR should be audited
+     */
+    @CheckForNull
+    @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "we want the user to be able to specify a path")
+    public File getAuditJenkinsWar() {
+        if (jenkinsWarFile != null) {
+            return new File(jenkinsWarFile);
+        }
+        File defaultWar = new File(Settings.DEFAULT_WAR);
+        return defaultWar.isFile() ? defaultWar : null;
+    }
+
     /**
      * Determines the hash function used with the Update Center
      * set via environment variable only
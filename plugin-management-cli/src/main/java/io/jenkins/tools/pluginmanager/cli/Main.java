@@ -3,9 +3,12 @@ package io.jenkins.tools.pluginmanager.cli;
 import io.jenkins.tools.pluginmanager.config.Config;
 import io.jenkins.tools.pluginmanager.impl.Plugin;
 import io.jenkins.tools.pluginmanager.impl.PluginManager;
+import io.jenkins.tools.pluginmanager.impl.SecurityAuditor;
+import io.jenkins.tools.pluginmanager.impl.UpdateCenterMetadata;
 import io.jenkins.tools.pluginmanager.parsers.AvailableUpdatesStdOutPluginOutputConverter;
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.ParserProperties;
@@ -41,6 +44,18 @@ public class Main {
             }
 
             Config cfg = options.setup();
+            if (options.isServe()) {
+                serve(cfg, options);
+                return;
+            }
+            if (options.isAudit()) {
+                audit(cfg, options);
+                return;
+            }
+            if (options.getServerUrl() != null) {
+                queryServer(cfg, options);
+                return;
+            }
             try (PluginManager pm = new PluginManager(cfg)) {
                 if (options.isShowAvailableUpdates()) {
                     pm.getUCJson(pm.getJenkinsVersion());
@@ -58,4 +73,41 @@ public class Main {
             System.exit(1);
         }
     }
+
+    private static void serve(Config cfg, CliOptions options) throws IOException, InterruptedException {
+        PluginManagerServer server = new PluginManagerServer(cfg, options.getServePort(),
+                options.getServeRefreshInterval());
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            stopped.countDown();
+        }));
+        server.start();
+        stopped.await();
+    }
+
+    private static void audit(Config cfg, CliOptions options) throws IOException {
+        UpdateCenterMetadata metadata;
+        try (PluginManager pm = new PluginManager(cfg)) {
+            metadata = pm.loadUpdateCenterMetadata(false);
+        }
+        SecurityAuditor.Report report = new SecurityAuditor(cfg, metadata)
+                .audit(options.getAuditPluginDirs(), options.getAuditJenkinsWar());
+        System.out.println(report.toJson().toString(2));
+    }
+
+    private static void queryServer(Config cfg, CliOptions options) throws IOException {
+        PluginManagerClient client = new PluginManagerClient(options.getServerUrl());
+        if (options.isShowAvailableUpdates()) {
+            System.out.println(client.availableUpdates(cfg.getPlugins(), cfg.getOutputFormat()));
+            return;
+        }
+        PluginManagerClient.Resolution resolution = client.resolve(cfg.getPlugins(), cfg.getOutputFormat());
+        System.out.println(resolution.getPlugins());
+        if (!cfg.isHideWarnings() && !resolution.getSecurityWarnings().isEmpty()) {
+            // log to stderr to not interfere with primary cli output sent to stdout
+            System.err.println("\nSecurity warnings:");
+            System.err.println(String.join("\n", resolution.getSecurityWarnings()));
+        }
+    }
 }
@@ -0,0 +1,94 @@
+package io.jenkins.tools.pluginmanager.cli;
+
+import io.jenkins.tools.pluginmanager.config.OutputFormat;
+import io.jenkins.tools.pluginmanager.impl.Plugin;
+import io.jenkins.tools.pluginmanager.parsers.TxtOutputConverter;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Thin client sending queries to a running {@link PluginManagerServer}
+ */
+class PluginManagerClient {
+
+    private final URL serverUrl;
+    private final HttpClient httpClient;
+
+    PluginManagerClient(URL serverUrl) {
+        this.serverUrl = serverUrl;
+        this.httpClient = HttpClient.newHttpClient();
+    }
+
+    /**
+     * Resolves the effective plugin set
+     *
+     * @return the formatted plugin set and the security warnings of the resolved plugins
+     */
+    Resolution resolve(List<Plugin> plugins, OutputFormat outputFormat) throws IOException {
+        HttpResponse<String> response = query(PluginManagerServer.RESOLVE_PATH, plugins, outputFormat);
+        List<String> securityWarnings = response.headers()
+                .allValues(PluginManagerServer.SECURITY_WARNING_HEADER).stream()
+                .map(warning -> URLDecoder.decode(warning, StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+        return new Resolution(response.body(), securityWarnings);
+    }
+
+    String availableUpdates(List<Plugin> plugins, OutputFormat outputFormat) throws IOException {
+        return query(PluginManagerServer.AVAILABLE_UPDATES_PATH, plugins, outputFormat).body();
+    }
+
+    private HttpResponse<String> query(String path, List<Plugin> plugins, OutputFormat outputFormat) throws IOException {
+        String body = new TxtOutputConverter().convert(plugins);
+        String query = outputFormat != null ? "?output=" + outputFormat.name().toLowerCase(Locale.ROOT) : "";
+        HttpRequest request;
+        try {
+            URI base = serverUrl.toURI();
+            request = HttpRequest.newBuilder(base.resolve(path + query))
+                    .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+                    .header("Content-Type", "text/plain; charset=utf-8")
+                    .build();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid server URL: " + serverUrl, e);
+        }
+        HttpResponse<String> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + request.uri(), e);
+        }
+        if (response.statusCode() != 200) {
+            throw new IOException(String.format("Server %s answered %d: %s", serverUrl, response.statusCode(),
+                    response.body()));
+        }
+        return response;
+    }
+
+    static final class Resolution {
+        private final String plugins;
+        private final List<String> securityWarnings;
+
+        Resolution(String plugins, List<String> securityWarnings) {
+            this.plugins = plugins;
+            this.securityWarnings = securityWarnings;
+        }
+
+        String getPlugins() {
+            return plugins;
+        }
+
+        List<String> getSecurityWarnings() {
+            return securityWarnings;
+        }
+    }
+}
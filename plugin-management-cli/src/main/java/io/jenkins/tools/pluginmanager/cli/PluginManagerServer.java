@@ -0,0 +1,296 @@
+package io.jenkins.tools.pluginmanager.cli;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.util.VersionNumber;
+import io.jenkins.tools.pluginmanager.config.Config;
+import io.jenkins.tools.pluginmanager.config.LogOutput;
+import io.jenkins.tools.pluginmanager.config.OutputFormat;
+import io.jenkins.tools.pluginmanager.impl.Plugin;
+import io.jenkins.tools.pluginmanager.impl.PluginManager;
+import io.jenkins.tools.pluginmanager.impl.UpdateCenterMetadata;
+import io.jenkins.tools.pluginmanager.parsers.AvailableUpdatesStdOutPluginOutputConverter;
+import io.jenkins.tools.pluginmanager.parsers.StdOutPluginOutputConverter;
+import io.jenkins.tools.pluginmanager.util.PluginListParser;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Long-running server keeping the parsed update center metadata in memory.
+ * <p>
+ * The metadata is loaded on start and refreshed in the background; queries are answered from the current snapshot
+ * so no JVM startup or update center parsing is needed per query. The server only listens on the loopback interface.
+ * <p>
+ * Every query is a {@code POST} with the requested plugins in the plugins.txt format as the body:
+ * <ul>
+ *     <li>{@code /resolve}: effective plugin set, {@code output} query parameter selects the format. The security
+ *     warnings of the resolved plugins, dependencies included, are returned as {@value #SECURITY_WARNING_HEADER}
+ *     headers, URL encoded</li>
+ *     <li>{@code /available-updates}: available updates of the requested plugins</li>
+ *     <li>{@code /security-warnings}: security warnings of the resolved plugins</li>
+ * </ul>
+ * Invalid queries are answered with {@code 400}, failures to resolve them with {@code 500}.
+ * {@code GET /health} reports when the metadata snapshot was loaded.
+ * <p>
+ * Queries are resolved as for an empty plugin directory and without the WAR, for the Jenkins version of the configured
+ * WAR read on start: the plugins installed on the server host do not change the answers.
+ */
+class PluginManagerServer implements Closeable {
+
+    static final String RESOLVE_PATH = "/resolve";
+    static final String AVAILABLE_UPDATES_PATH = "/available-updates";
+    static final String SECURITY_WARNINGS_PATH = "/security-warnings";
+    static final String HEALTH_PATH = "/health";
+    static final String SECURITY_WARNING_HEADER = "X-Security-Warning";
+
+    private final Config baseConfig;
+    private final Supplier<UpdateCenterMetadata> metadataLoader;
+    private final long refreshIntervalMinutes;
+    private final LogOutput logOutput;
+    private final HttpServer server;
+    private final ExecutorService requestExecutor;
+    private final ScheduledExecutorService refreshExecutor;
+    // never written to, see queryConfig
+    private final File emptyPluginDir;
+
+    private volatile UpdateCenterMetadata metadata;
+    private volatile Instant metadataLoadedAt;
+    @CheckForNull
+    private volatile VersionNumber jenkinsVersion;
+
+    PluginManagerServer(Config baseConfig, int port, long refreshIntervalMinutes) throws IOException {
+        this(baseConfig, port, refreshIntervalMinutes, () -> {
+            try (PluginManager pm = new PluginManager(baseConfig)) {
+                return pm.loadUpdateCenterMetadata(false);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to load update center metadata", e);
+            }
+        });
+    }
+
+    PluginManagerServer(Config baseConfig, int port, long refreshIntervalMinutes,
+                        Supplier<UpdateCenterMetadata> metadataLoader) throws IOException {
+        if (refreshIntervalMinutes < 1) {
+            throw new IllegalArgumentException("Refresh interval must be at least one minute, was: " + refreshIntervalMinutes);
+        }
+        this.baseConfig = baseConfig;
+        this.refreshIntervalMinutes = refreshIntervalMinutes;
+        this.metadataLoader = metadataLoader;
+        this.logOutput = baseConfig.getLogOutput();
+        emptyPluginDir = Files.createTempDirectory("plugin-manager-server-plugins").toFile();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        requestExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "update-center-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(requestExecutor);
+        server.createContext(RESOLVE_PATH, exchange -> handle(exchange, this::resolve));
+        server.createContext(AVAILABLE_UPDATES_PATH, exchange -> handle(exchange, this::availableUpdates));
+        server.createContext(SECURITY_WARNINGS_PATH, exchange -> handle(exchange, this::securityWarnings));
+        server.createContext(HEALTH_PATH, this::health);
+    }
+
+    /**
+     * Loads the update center metadata, schedules its refresh and starts accepting requests
+     */
+    void start() {
+        try (PluginManager pm = new PluginManager(baseConfig)) {
+            jenkinsVersion = pm.getJenkinsVersion();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to determine the Jenkins version", e);
+        }
+        refresh();
+        refreshExecutor.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMinutes, refreshIntervalMinutes,
+                TimeUnit.MINUTES);
+        server.start();
+        logOutput.printMessage("Serving plugin queries on http://" + getAddress().getHostString() + ":" +
+                getAddress().getPort());
+    }
+
+    InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void refresh() {
+        UpdateCenterMetadata loaded = metadataLoader.get();
+        metadata = loaded;
+        metadataLoadedAt = Instant.now();
+        logOutput.printVerboseMessage("Loaded update center metadata at " + metadataLoadedAt);
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            // keep serving the previous snapshot
+            logOutput.printMessage("Unable to refresh update center metadata: " + e.getMessage());
+            logOutput.printVerboseStacktrace(e);
+        }
+    }
+
+    private Answer resolve(List<Plugin> plugins, @CheckForNull OutputFormat outputFormat) throws IOException {
+        Config config = queryConfig(plugins, outputFormat != null ? outputFormat : OutputFormat.TXT);
+        try (PluginManager pm = new PluginManager(config)) {
+            pm.setUpdateCenterMetadata(metadata);
+            pm.start(false);
+            List<Plugin> effectivePlugins = new ArrayList<>(pm.getEffectivePlugins().values());
+            effectivePlugins.sort((a, b) -> a.getName().compareTo(b.getName()));
+            // same rule as the local mode: the plugins to install at their resolved versions
+            return new Answer(
+                    pm.formatPluginsList(effectivePlugins, () -> new StdOutPluginOutputConverter("Resolved plugins")),
+                    pm.describeSecurityWarnings(pm.getPluginsToBeDownloaded()));
+        }
+    }
+
+    private Answer availableUpdates(List<Plugin> plugins, @CheckForNull OutputFormat outputFormat) throws IOException {
+        Config config = queryConfig(plugins, outputFormat != null ? outputFormat : OutputFormat.STDOUT);
+        try (PluginManager pm = new PluginManager(config)) {
+            pm.setUpdateCenterMetadata(metadata);
+            List<Plugin> latestVersionsOfPlugins = pm.getLatestVersionsOfPlugins(plugins);
+            return new Answer(pm.formatPluginsList(latestVersionsOfPlugins,
+                    () -> new AvailableUpdatesStdOutPluginOutputConverter(plugins)), Collections.emptyList());
+        }
+    }
+
+    private Answer securityWarnings(List<Plugin> plugins, @CheckForNull OutputFormat outputFormat)
+            throws IOException {
+        List<String> warnings = resolve(plugins, OutputFormat.TXT).securityWarnings;
+        return new Answer(String.join("\n", warnings), warnings);
+    }
+
+    private Config queryConfig(List<Plugin> plugins, OutputFormat outputFormat) {
+        return baseConfig.toBuilder()
+                .withPlugins(plugins)
+                .withOutputFormat(outputFormat)
+                .withDoDownload(false)
+                .withCleanPluginsDir(false)
+                .withShowPluginsToBeDownloaded(false)
+                .withShowAvailableUpdates(false)
+                .withShowAllWarnings(false)
+                .withHideWarnings(true)
+                // answered from the requested plugins, not from or into the files of the server
+                .withPluginDir(emptyPluginDir)
+                .withJenkinsWar(null)
+                .withJenkinsVersion(jenkinsVersion)
+                .withLockfile(null)
+                .withLockfileOutput(null)
+                .withIncrementalResolution(false)
+                .build();
+    }
+
+    private interface Query {
+        Answer answer(List<Plugin> plugins, @CheckForNull OutputFormat outputFormat) throws IOException;
+    }
+
+    private static final class Answer {
+        private final String body;
+        private final List<String> securityWarnings;
+
+        Answer(String body, List<String> securityWarnings) {
+            this.body = body;
+            this.securityWarnings = securityWarnings;
+        }
+    }
+
+    private void handle(HttpExchange exchange, Query query) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, "Only POST is supported");
+            return;
+        }
+        List<Plugin> plugins;
+        OutputFormat outputFormat;
+        try (InputStream body = exchange.getRequestBody()) {
+            plugins = parsePlugins(IOUtils.toString(body, StandardCharsets.UTF_8));
+            outputFormat = outputFormat(exchange.getRequestURI());
+        } catch (RuntimeException e) {
+            logOutput.printVerboseMessage("Invalid query " + exchange.getRequestURI(), e);
+            respond(exchange, 400, describe(e));
+            return;
+        }
+        Answer answer;
+        try {
+            answer = query.answer(plugins, outputFormat);
+        } catch (RuntimeException | IOException e) {
+            logOutput.printVerboseMessage("Failed to answer " + exchange.getRequestURI(), e);
+            respond(exchange, 500, describe(e));
+            return;
+        }
+        for (String warning : answer.securityWarnings) {
+            exchange.getResponseHeaders().add(SECURITY_WARNING_HEADER,
+                    URLEncoder.encode(warning, StandardCharsets.UTF_8));
+        }
+        respond(exchange, 200, answer.body);
+    }
+
+    private static String describe(Exception e) {
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    private void health(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "Update center metadata loaded at " + metadataLoadedAt);
+    }
+
+    private List<Plugin> parsePlugins(String body) {
+        String[] lines = body.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toArray(String[]::new);
+        return new PluginListParser(baseConfig.isVerbose()).parsePluginsFromCliOption(lines);
+    }
+
+    @CheckForNull
+    private static OutputFormat outputFormat(URI requestUri) {
+        String query = requestUri.getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("output=")) {
+                return OutputFormat.valueOf(parameter.substring("output=".length()).toUpperCase(Locale.ROOT));
+            }
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        refreshExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+        FileUtils.deleteQuietly(emptyPluginDir);
+    }
+}
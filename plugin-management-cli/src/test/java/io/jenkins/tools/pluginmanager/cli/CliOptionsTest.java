@@ -172,6 +172,24 @@ class CliOptionsTest {
                 .isInstanceOf(PluginInputException.class);
     }
 
+    @Test
+    void setupRepeatedPluginFilesAndDirectories() throws Exception {
+        File first = newFile(temporaryFolder, "first.txt");
+        FileUtils.writeStringToFile(first, "mailer:1.31\ngit:4.0.0\n", UTF_8);
+        File fragments = newFolder(temporaryFolder, "fragments");
+        FileUtils.writeStringToFile(new File(fragments, "team-a.txt"), "mailer:1.32\n", UTF_8);
+        FileUtils.writeStringToFile(new File(fragments, "team-b.txt"), "git:3.12.1\nssh-slaves:1.10\n", UTF_8);
+
+        parser.parseArgument("--plugin-file", first.toString(), "-f", fragments.toString());
+
+        Config cfg = options.setup();
+
+        assertThat(cfg.getPlugins()).extracting(Plugin::toString).containsExactly(
+                new Plugin("mailer", "1.32", null, null).toString(),
+                new Plugin("git", "4.0.0", null, null).toString(),
+                new Plugin("ssh-slaves", "1.10", null, null).toString());
+    }
+
     @Test
     void setupWarTest() throws Exception {
         String jenkinsWar = this.getClass().getResource("/jenkinstest.war").toString();
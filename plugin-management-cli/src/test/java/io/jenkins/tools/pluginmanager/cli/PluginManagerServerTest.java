@@ -0,0 +1,198 @@
+package io.jenkins.tools.pluginmanager.cli;
+
+import io.jenkins.tools.pluginmanager.config.Config;
+import io.jenkins.tools.pluginmanager.config.OutputFormat;
+import io.jenkins.tools.pluginmanager.impl.Plugin;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PluginManagerServerTest {
+
+    @TempDir
+    private File temporaryFolder;
+
+    private Config config;
+    private PluginManagerServer server;
+    private PluginManagerClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        File updateCenter = new File(temporaryFolder, "update-center.json");
+        Files.write(updateCenter.toPath(), ("""
+                {
+                  "plugins": {
+                    "workflow-job": {
+                      "name": "workflow-job", "version": "2.40", "requiredCore": "2.222.1", "sha256": "abc",
+                      "dependencies": [ { "name": "workflow-api", "version": "2.41", "optional": false } ]
+                    },
+                    "workflow-api": {
+                      "name": "workflow-api", "version": "2.41", "requiredCore": "2.222.1", "sha256": "abc",
+                      "dependencies": []
+                    },
+                    "workflow-cps": {
+                      "name": "workflow-cps", "version": "2.90", "requiredCore": "2.222.1", "sha256": "abc",
+                      "dependencies": [ { "name": "workflow-api", "version": "2.30", "optional": false } ]
+                    }
+                  },
+                  "warnings": [
+                    {
+                      "id": "SECURITY-1", "message": "Stored XSS", "name": "workflow-api", "type": "plugin",
+                      "url": "https://jenkins.io/security/advisory/",
+                      "versions": [ { "firstVersion": "2.0", "lastVersion": "2.40", "pattern": "2[.]([0-9]|[1-3][0-9]|40)(|[.-].*)" } ]
+                    }
+                  ]
+                }
+                """).getBytes(UTF_8));
+        File pluginVersions = new File(temporaryFolder, "plugin-versions.json");
+        Files.write(pluginVersions.toPath(), """
+                {
+                  "plugins": {
+                    "workflow-api": {
+                      "2.30": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] },
+                      "2.41": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] }
+                    }
+                  }
+                }
+                """.getBytes(UTF_8));
+
+        config = Config.builder()
+                .withPluginDir(new File(temporaryFolder, "plugins"))
+                .withJenkinsWar(new File(temporaryFolder, "missing.war").getAbsolutePath())
+                .withJenkinsUc(updateCenter.toURI().toURL())
+                .withJenkinsPluginInfo(pluginVersions.toURI().toURL())
+                .withCachePath(new File(temporaryFolder, "cache").toPath())
+                .build();
+        server = startServer(config);
+        client = clientOf(server);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void resolvesPlugins() throws IOException {
+        List<Plugin> plugins = Collections.singletonList(new Plugin("workflow-job", "latest", null, null));
+
+        PluginManagerClient.Resolution resolution = client.resolve(plugins, OutputFormat.TXT);
+
+        assertThat(resolution.getPlugins()).isEqualToNormalizingNewlines("workflow-api:2.41\nworkflow-job:2.40");
+        assertThat(resolution.getSecurityWarnings()).isEmpty();
+    }
+
+    @Test
+    void showsAvailableUpdates() throws IOException {
+        List<Plugin> plugins = Collections.singletonList(new Plugin("workflow-api", "2.30", null, null));
+
+        assertThat(client.availableUpdates(plugins, OutputFormat.STDOUT))
+                .isEqualTo("Available updates:\nworkflow-api (2.30) has an available update: 2.41\n");
+    }
+
+    @Test
+    void showsSecurityWarningsOfTheResolvedPlugins() throws IOException {
+        // the warning affects the dependency of the latest version of the requested plugin
+        List<Plugin> plugins = Collections.singletonList(new Plugin("workflow-cps", "latest", null, null));
+
+        PluginManagerClient.Resolution resolution = client.resolve(plugins, OutputFormat.TXT);
+
+        assertThat(resolution.getPlugins()).isEqualToNormalizingNewlines("workflow-api:2.30\nworkflow-cps:2.90");
+        assertThat(resolution.getSecurityWarnings())
+                .containsExactly("workflow-api (2.30): SECURITY-1 Stored XSS https://jenkins.io/security/advisory/");
+    }
+
+    @Test
+    void ignoresThePluginsInstalledOnTheServer() throws IOException {
+        File pluginDir = config.getPluginDir();
+        Files.createDirectories(pluginDir.toPath());
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Plugin-Version", "2.30");
+        try (JarOutputStream jar = new JarOutputStream(
+                Files.newOutputStream(new File(pluginDir, "workflow-api.jpi").toPath()), manifest)) {
+            jar.flush();
+        }
+        List<Plugin> plugins = Collections.singletonList(new Plugin("workflow-cps", "latest", null, null));
+
+        PluginManagerClient.Resolution resolution = client.resolve(plugins, OutputFormat.TXT);
+
+        assertThat(resolution.getPlugins()).isEqualToNormalizingNewlines("workflow-api:2.30\nworkflow-cps:2.90");
+        assertThat(resolution.getSecurityWarnings())
+                .containsExactly("workflow-api (2.30): SECURITY-1 Stored XSS https://jenkins.io/security/advisory/");
+    }
+
+    @Test
+    void ignoresTheLockfilesOfTheServer() throws IOException {
+        File lockfile = new File(temporaryFolder, "plugins-lock.json");
+        List<Plugin> plugins = Collections.singletonList(new Plugin("workflow-job", "latest", null, null));
+
+        try (PluginManagerServer lockfileServer = startServer(config.toBuilder().withLockfileOutput(lockfile).build())) {
+            assertThat(clientOf(lockfileServer).resolve(plugins, OutputFormat.TXT).getPlugins())
+                    .isEqualToNormalizingNewlines("workflow-api:2.41\nworkflow-job:2.40");
+        }
+
+        assertThat(lockfile).doesNotExist();
+    }
+
+    @Test
+    void doesNotShareTheIncrementalResolutionBetweenQueries() throws IOException {
+        List<Plugin> plugins = Collections.singletonList(new Plugin("workflow-job", "latest", null, null));
+
+        try (PluginManagerServer incrementalServer = startServer(
+                config.toBuilder().withIncrementalResolution(true).build())) {
+            clientOf(incrementalServer).resolve(plugins, OutputFormat.TXT);
+        }
+
+        assertThat(config.getCachePath().toFile().list((dir, name) -> name.startsWith("resolution-"))).isEmpty();
+    }
+
+    @Test
+    void reportsQueryFailures() {
+        List<Plugin> plugins = Collections.singletonList(new Plugin("unknown-plugin", "latest", null, null));
+
+        assertThatThrownBy(() -> client.resolve(plugins, OutputFormat.TXT))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("answered 500");
+    }
+
+    @Test
+    void rejectsInvalidQueries() throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getAddress().getPort()
+                        + PluginManagerServer.RESOLVE_PATH + "?output=unknown"))
+                .POST(HttpRequest.BodyPublishers.ofString("workflow-job:latest"))
+                .build();
+
+        HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+
+        assertThat(response.statusCode()).isEqualTo(400);
+    }
+
+    private static PluginManagerServer startServer(Config config) throws IOException {
+        PluginManagerServer started = new PluginManagerServer(config, 0, CliOptions.DEFAULT_SERVE_REFRESH_INTERVAL);
+        started.start();
+        return started;
+    }
+
+    private static PluginManagerClient clientOf(PluginManagerServer server) throws IOException {
+        return new PluginManagerClient(new URL("http://localhost:" + server.getAddress().getPort()));
+    }
+}
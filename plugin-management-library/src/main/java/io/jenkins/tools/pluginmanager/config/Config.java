@@ -7,6 +7,7 @@ import io.jenkins.tools.pluginmanager.impl.Plugin;
 import java.io.File;
 import java.net.URL;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -57,6 +58,17 @@ public class Config {
     private final OutputFormat outputFormat;
     private final List<Credentials> credentials;
     private final Path cachePath;
+    private final Duration maxCacheStaleness;
+    private final boolean compressCache;
+    @CheckForNull
+    private final File lockfile;
+    @CheckForNull
+    private final File lockfileOutput;
+    private final boolean incrementalResolution;
+    private final boolean explodePlugins;
+    private final boolean reconcilePluginDir;
+    private final boolean warmUpConnections;
+    private final Duration mirrorCacheTtl;
     private final LogOutput logOutput;
 
     private Config(
@@ -83,6 +95,15 @@ public class Config {
             HashFunction hashFunction,
             List<Credentials> credentials,
             Path cachePath,
+            Duration maxCacheStaleness,
+            boolean compressCache,
+            File lockfile,
+            File lockfileOutput,
+            boolean incrementalResolution,
+            boolean explodePlugins,
+            boolean reconcilePluginDir,
+            boolean warmUpConnections,
+            Duration mirrorCacheTtl,
             boolean hideWarnings) {
         this.pluginDir = pluginDir;
         this.cleanPluginDir = cleanPluginDir;
@@ -107,6 +128,15 @@ public class Config {
         this.credentials = credentials;
         this.hashFunction = hashFunction;
         this.cachePath = cachePath;
+        this.maxCacheStaleness = maxCacheStaleness;
+        this.compressCache = compressCache;
+        this.lockfile = lockfile;
+        this.lockfileOutput = lockfileOutput;
+        this.incrementalResolution = incrementalResolution;
+        this.explodePlugins = explodePlugins;
+        this.reconcilePluginDir = reconcilePluginDir;
+        this.warmUpConnections = warmUpConnections;
+        this.mirrorCacheTtl = mirrorCacheTtl;
         this.logOutput = new LogOutput(verbose);
         this.hideWarnings = hideWarnings;
     }
@@ -205,6 +235,49 @@ public class Config {
         return new Builder();
     }
 
+    /**
+     * Creates a builder initialized with the values of this configuration, e.g. to derive a configuration for a
+     * different set of plugins
+     *
+     * @return new builder
+     */
+    public Builder toBuilder() {
+        return builder()
+                .withPluginDir(pluginDir)
+                .withCleanPluginsDir(cleanPluginDir)
+                .withShowWarnings(showWarnings)
+                .withHideWarnings(hideWarnings)
+                .withShowAllWarnings(showAllWarnings)
+                .withShowAvailableUpdates(showAvailableUpdates)
+                .withShowPluginsToBeDownloaded(showPluginsToBeDownloaded)
+                .withIsVerbose(verbose)
+                .withJenkinsVersion(jenkinsVersion)
+                .withJenkinsWar(jenkinsWar)
+                .withPlugins(plugins)
+                .withJenkinsUc(jenkinsUc)
+                .withJenkinsUcExperimental(jenkinsUcExperimental)
+                .withJenkinsIncrementalsRepoMirror(jenkinsIncrementalsRepoMirror)
+                .withJenkinsPluginInfo(jenkinsPluginInfo)
+                .withJenkinsUcDownloadUrl(jenkinsUcDownloadUrl)
+                .withDoDownload(doDownload)
+                .withUseLatestSpecified(useLatestSpecified)
+                .withUseLatestAll(useLatestAll)
+                .withSkipFailedPlugins(skipFailedPlugins)
+                .withOutputFormat(outputFormat)
+                .withCredentials(credentials)
+                .withHashFunction(hashFunction)
+                .withCachePath(cachePath)
+                .withMaxCacheStaleness(maxCacheStaleness)
+                .withCompressCache(compressCache)
+                .withLockfile(lockfile)
+                .withLockfileOutput(lockfileOutput)
+                .withIncrementalResolution(incrementalResolution)
+                .withExplodePlugins(explodePlugins)
+                .withReconcilePluginDir(reconcilePluginDir)
+                .withWarmUpConnections(warmUpConnections)
+                .withMirrorCacheTtl(mirrorCacheTtl);
+    }
+
     public HashFunction getHashFunction() {
         return hashFunction;
     }
@@ -218,6 +291,87 @@ public class Config {
         return cachePath;
     }
 
+    /**
+     * Gets for how long an expired update center cache entry may still be served while it is refreshed in the
+     * background
+     *
+     * @return maximum staleness, {@link Duration#ZERO} if expired entries are never served
+     */
+    public Duration getMaxCacheStaleness() {
+        return maxCacheStaleness;
+    }
+
+    public boolean isCompressCache() {
+        return compressCache;
+    }
+
+    /**
+     * Gets the lockfile to install the plugins from, without update center metadata and dependency resolution
+     *
+     * @return the lockfile, or {@code null} to resolve the requested plugins
+     */
+    @CheckForNull
+    public File getLockfile() {
+        return lockfile;
+    }
+
+    /**
+     * Gets the file to write the lockfile of the resolved plugins to
+     *
+     * @return the lockfile to write, or {@code null} to not write any
+     */
+    @CheckForNull
+    public File getLockfileOutput() {
+        return lockfileOutput;
+    }
+
+    /**
+     * Whether the dependency resolution of the previous run is reused for the requested plugins which did not change
+     *
+     * @return {@code true} to resolve incrementally
+     */
+    public boolean isIncrementalResolution() {
+        return incrementalResolution;
+    }
+
+    /**
+     * Whether the downloaded plugins are installed as exploded directories instead of archives
+     *
+     * @return {@code true} to explode the plugins
+     */
+    public boolean isExplodePlugins() {
+        return explodePlugins;
+    }
+
+    /**
+     * Whether the plugin directory is made to contain exactly the resulting plugins, like after cleaning it, keeping
+     * the installed plugins which are already at the resulting version
+     *
+     * @return {@code true} to reconcile the plugin directory
+     */
+    public boolean isReconcilePluginDir() {
+        return reconcilePluginDir;
+    }
+
+    /**
+     * Whether connections to the download hosts and to the mirrors of the previous run are opened while the update
+     * center metadata is retrieved
+     *
+     * @return {@code true} to warm up the connections
+     */
+    public boolean isWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * Gets for how long the mirrors the plugin downloads were redirected to are remembered for the next runs
+     *
+     * @return time to live of the mirrors in the cache, {@link Duration#ZERO} if they are only used during a run
+     */
+    public Duration getMirrorCacheTtl() {
+        return mirrorCacheTtl;
+    }
+
     public LogOutput getLogOutput() {
         return logOutput;
     }
@@ -247,6 +401,15 @@ public class Config {
         private List<Credentials> credentials = Collections.emptyList();
         private HashFunction hashFunction = Settings.DEFAULT_HASH_FUNCTION;
         private Path cachePath = Settings.DEFAULT_CACHE_PATH;
+        private Duration maxCacheStaleness = Duration.ZERO;
+        private boolean compressCache;
+        private File lockfile;
+        private File lockfileOutput;
+        private boolean incrementalResolution;
+        private boolean explodePlugins;
+        private boolean reconcilePluginDir;
+        private boolean warmUpConnections;
+        private Duration mirrorCacheTtl = Duration.ZERO;
 
         private Builder() {
         }
@@ -383,6 +546,104 @@ public class Config {
             return this;
         }
 
+        /**
+         * Allows serving expired update center metadata from the cache while it is refreshed in the background.
+         * @param maxCacheStaleness for how long after expiration a cache entry may still be served.
+         *        {@link Duration#ZERO} to always wait for the fresh metadata.
+         * @return builder for maxCacheStaleness
+         */
+        public Builder withMaxCacheStaleness(@NonNull Duration maxCacheStaleness) {
+            this.maxCacheStaleness = maxCacheStaleness;
+            return this;
+        }
+
+        /**
+         * Stores the update center cache entries gzip compressed.
+         * @param compressCache {@code true} to compress the cache entries
+         * @return builder for compressCache
+         */
+        public Builder withCompressCache(boolean compressCache) {
+            this.compressCache = compressCache;
+            return this;
+        }
+
+        /**
+         * Installs the plugins listed in a lockfile, skipping the update center metadata and dependency resolution.
+         * @param lockfile lockfile written by a previous run, {@code null} to resolve the requested plugins
+         * @return builder for lockfile
+         */
+        public Builder withLockfile(@CheckForNull File lockfile) {
+            this.lockfile = lockfile;
+            return this;
+        }
+
+        /**
+         * Writes the exact versions, download URLs and checksums of the resolved plugins to a lockfile.
+         * @param lockfileOutput lockfile to write, {@code null} to not write any
+         * @return builder for lockfileOutput
+         */
+        public Builder withLockfileOutput(@CheckForNull File lockfileOutput) {
+            this.lockfileOutput = lockfileOutput;
+            return this;
+        }
+
+        /**
+         * Reuses the dependency resolution of the previous run for the requested plugins which did not change, as
+         * long as the update center metadata and the Jenkins version are the same, and prints what changed.
+         * @param incrementalResolution {@code true} to resolve incrementally
+         * @return builder for incrementalResolution
+         */
+        public Builder withIncrementalResolution(boolean incrementalResolution) {
+            this.incrementalResolution = incrementalResolution;
+            return this;
+        }
+
+        /**
+         * Installs every downloaded plugin as an exploded {@code .jpi} directory, extracted as soon as its download
+         * completes.
+         * @param explodePlugins {@code true} to explode the plugins
+         * @return builder for explodePlugins
+         */
+        public Builder withExplodePlugins(boolean explodePlugins) {
+            this.explodePlugins = explodePlugins;
+            return this;
+        }
+
+        /**
+         * Removes the files of the plugin directory which are not part of the resulting plugins, and keeps the
+         * installed plugins at the resulting version and checksum instead of downloading them again. The result is the
+         * same as with {@link #withCleanPluginsDir(boolean)}, which is ignored when this is set.
+         * @param reconcilePluginDir {@code true} to reconcile the plugin directory
+         * @return builder for reconcilePluginDir
+         */
+        public Builder withReconcilePluginDir(boolean reconcilePluginDir) {
+            this.reconcilePluginDir = reconcilePluginDir;
+            return this;
+        }
+
+        /**
+         * Resolves and opens connections to the plugin download host and to the mirrors the previous runs were
+         * redirected to, while the update center metadata is retrieved, so the downloads do not wait for them.
+         * @param warmUpConnections {@code true} to warm up the connections
+         * @return builder for warmUpConnections
+         */
+        public Builder withWarmUpConnections(boolean warmUpConnections) {
+            this.warmUpConnections = warmUpConnections;
+            return this;
+        }
+
+        /**
+         * Remembers the mirror the plugin downloads were redirected to in the cache, so the next runs download from
+         * it directly.
+         * @param mirrorCacheTtl for how long the mirror is remembered.
+         *        {@link Duration#ZERO} to only download from it directly during the run.
+         * @return builder for mirrorCacheTtl
+         */
+        public Builder withMirrorCacheTtl(@NonNull Duration mirrorCacheTtl) {
+            this.mirrorCacheTtl = mirrorCacheTtl;
+            return this;
+        }
+
         public Config build() {
             return new Config(
                     pluginDir,
@@ -408,6 +669,15 @@ public class Config {
                     hashFunction,
                     credentials,
                     cachePath,
+                    maxCacheStaleness,
+                    compressCache,
+                    lockfile,
+                    lockfileOutput,
+                    incrementalResolution,
+                    explodePlugins,
+                    reconcilePluginDir,
+                    warmUpConnections,
+                    mirrorCacheTtl,
                     hideWarnings
             );
         }
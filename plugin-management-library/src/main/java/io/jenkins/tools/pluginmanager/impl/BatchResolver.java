@@ -0,0 +1,125 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import io.jenkins.tools.pluginmanager.config.Config;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Resolves many plugin sets against a single, already loaded {@link UpdateCenterMetadata} snapshot.
+ * <p>
+ * The update center, plugin versions and security warnings are downloaded and parsed only once, each configuration
+ * is then resolved by its own {@link PluginManager} in parallel.
+ * A failure of one configuration does not affect the other results.
+ */
+public class BatchResolver {
+
+    private static final int DEFAULT_PARALLELISM = 8;
+
+    private final UpdateCenterMetadata metadata;
+    private final int parallelism;
+
+    public BatchResolver(UpdateCenterMetadata metadata) {
+        this(metadata, DEFAULT_PARALLELISM);
+    }
+
+    public BatchResolver(UpdateCenterMetadata metadata, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be a positive number, was: " + parallelism);
+        }
+        this.metadata = metadata;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Resolves the plugins of every configuration, the update center settings of the configurations are ignored in
+     * favour of the shared metadata snapshot
+     *
+     * @param configs configurations to resolve
+     * @return results in the same order as the configurations
+     */
+    public List<Result> resolve(List<Config> configs) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> configs.parallelStream()
+                    .map(this::resolve)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resolving plugins", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to resolve plugins", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result resolve(Config config) {
+        try (PluginManager pm = new PluginManager(config)) {
+            pm.setUpdateCenterMetadata(metadata);
+            pm.start(false);
+            return new Result(config, pm.getEffectivePlugins(), pm.getPluginsToBeDownloaded(), null);
+        } catch (RuntimeException | IOException e) {
+            return new Result(config, null, null, e);
+        }
+    }
+
+    /**
+     * Outcome of resolving a single configuration
+     */
+    public static class Result {
+        private final Config config;
+        private final Map<String, Plugin> effectivePlugins;
+        private final List<Plugin> pluginsToBeDownloaded;
+        @CheckForNull
+        private final Exception failure;
+
+        Result(Config config, @CheckForNull Map<String, Plugin> effectivePlugins,
+               @CheckForNull List<Plugin> pluginsToBeDownloaded, @CheckForNull Exception failure) {
+            this.config = config;
+            this.effectivePlugins = effectivePlugins != null ?
+                    Collections.unmodifiableMap(new HashMap<>(effectivePlugins)) : Collections.emptyMap();
+            this.pluginsToBeDownloaded = pluginsToBeDownloaded != null ?
+                    Collections.unmodifiableList(new ArrayList<>(pluginsToBeDownloaded)) : Collections.emptyList();
+            this.failure = failure;
+        }
+
+        public Config getConfig() {
+            return config;
+        }
+
+        /**
+         * Gets the effective plugin set
+         *
+         * @return map of plugin name - plugin pairs, empty if the resolution failed
+         */
+        public Map<String, Plugin> getEffectivePlugins() {
+            return effectivePlugins;
+        }
+
+        /**
+         * Gets the plugins that would be downloaded for this configuration
+         *
+         * @return list of plugins, empty if the resolution failed
+         */
+        public List<Plugin> getPluginsToBeDownloaded() {
+            return pluginsToBeDownloaded;
+        }
+
+        @CheckForNull
+        public Exception getFailure() {
+            return failure;
+        }
+
+        public boolean isSuccessful() {
+            return failure == null;
+        }
+    }
+}
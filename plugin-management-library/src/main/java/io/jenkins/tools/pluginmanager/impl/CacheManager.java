@@ -1,38 +1,88 @@
 package io.jenkins.tools.pluginmanager.impl;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import io.jenkins.tools.pluginmanager.config.LogOutput;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileTime;
 import java.time.Clock;
 import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.nio.file.Files.newBufferedWriter;
 import static java.nio.file.Files.newInputStream;
+import static java.nio.file.Files.newOutputStream;
 
 public class CacheManager {
 
+    /**
+     * Retrievals in progress in this JVM, keyed by the absolute path of the cache entry
+     */
+    private static final ConcurrentMap<Path, CompletableFuture<JSONObject>> IN_FLIGHT = new ConcurrentHashMap<>();
+
+    private static final String EXTENSION = ".json";
+    private static final String COMPRESSED_EXTENSION = ".json.gz";
+    private static final Duration EXPIRATION = Duration.ofHours(1);
+    static final Duration DEFAULT_LOCK_TIMEOUT = Duration.ofMinutes(2);
+    private static final long LOCK_POLL_MILLIS = 100;
+
     private final Path cache;
     private final LogOutput logOutput;
     private final Clock clock;
     private final boolean expires;
+    private final Duration maxStaleness;
+    private final boolean compress;
+    private Duration lockTimeout = DEFAULT_LOCK_TIMEOUT;
 
     public CacheManager(Path cache, LogOutput logOutput) {
-        this(cache, logOutput, Clock.systemDefaultZone(), true);
+        this(cache, logOutput, Duration.ZERO, false);
+    }
+
+    /**
+     * @param cache cache directory
+     * @param logOutput log output
+     * @param maxStaleness for how long after expiration an entry is still returned by
+     *                     {@link #retrieveStaleFromCache(String)}
+     * @param compress {@code true} to store the entries gzip compressed
+     */
+    public CacheManager(Path cache, LogOutput logOutput, Duration maxStaleness, boolean compress) {
+        this(cache, logOutput, Clock.systemDefaultZone(), true, maxStaleness, compress);
     }
 
     CacheManager(Path cache, LogOutput logOutput, Clock clock, boolean expires) {
+        this(cache, logOutput, clock, expires, Duration.ZERO, false);
+    }
+
+    CacheManager(Path cache, LogOutput logOutput, Clock clock, boolean expires, Duration maxStaleness,
+                 boolean compress) {
         this.cache = cache;
         this.logOutput = logOutput;
         this.clock = clock;
         this.expires = expires;
+        this.maxStaleness = maxStaleness;
+        this.compress = compress;
     }
 
     void createCache() {
@@ -51,12 +101,161 @@ public class CacheManager {
     }
 
 
+    /**
+     * Adds a json object to the cache.
+     * <p>
+     * The value is written to a temporary file which then atomically replaces the cache entry, so readers never see a
+     * partially written entry.
+     *
+     * @param cacheKey key to store the value under, i.e. update-center
+     * @param value json object to cache
+     */
     void addToCache(String cacheKey, JSONObject value) {
-        Path fileToCache = cache.resolve(cacheKey + ".json");
-        try (Writer writer = newBufferedWriter(fileToCache, UTF_8)) {
-            value.write(writer);
+        Path fileToCache = cache.resolve(cacheKey + (compress ? COMPRESSED_EXTENSION : EXTENSION));
+        Path tempFile = null;
+        try {
+            tempFile = Files.createTempFile(cache, cacheKey, ".tmp");
+            try (Writer writer = compress ?
+                    new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(newOutputStream(tempFile)), UTF_8)) :
+                    newBufferedWriter(tempFile, UTF_8)) {
+                value.write(writer);
+            }
+            try {
+                Files.move(tempFile, fileToCache, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile, fileToCache, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException e) {
             throw new UncheckedIOException(e);
+        } finally {
+            if (tempFile != null) {
+                try {
+                    Files.deleteIfExists(tempFile);
+                } catch (IOException e) {
+                    logOutput.printVerboseMessage("Unable to delete temporary cache file " + tempFile, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieves a json object from the cache, or loads and caches it if it is missing or expired.
+     * <p>
+     * Concurrent retrievals of the same key are coalesced: within the JVM the callers wait for the first one and share
+     * its result, across processes a lock file next to the cache entry makes sure only one process loads the value
+     * while the others wait and then read it from the cache. A process waiting longer than the lock timeout loads the
+     * value without lock.
+     *
+     * @param cacheKey key to lookup, i.e. update-center
+     * @param loader loads the value if it is not cached
+     * @return the cached or loaded json object
+     */
+    JSONObject retrieveFromCacheOrLoad(String cacheKey, Supplier<JSONObject> loader) {
+        Path entry = cache.resolve(cacheKey + ".json").toAbsolutePath();
+        CompletableFuture<JSONObject> retrieval = new CompletableFuture<>();
+        CompletableFuture<JSONObject> inFlight = IN_FLIGHT.putIfAbsent(entry, retrieval);
+        if (inFlight != null) {
+            logOutput.printVerboseMessage("Waiting for concurrent retrieval of: " + cacheKey);
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        try {
+            JSONObject value = loadWithLock(cacheKey, loader);
+            retrieval.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            retrieval.completeExceptionally(e);
+            throw e;
+        } finally {
+            IN_FLIGHT.remove(entry, retrieval);
+        }
+    }
+
+    private JSONObject loadWithLock(String cacheKey, Supplier<JSONObject> loader) {
+        FileLock lock = lock(cacheKey);
+        try {
+            if (lock != null) {
+                // another process may have loaded the value while we were waiting for the lock
+                JSONObject cached = retrieveFromCache(cacheKey);
+                if (cached != null) {
+                    logOutput.printVerboseMessage("Returning value cached by a concurrent retrieval for: " + cacheKey);
+                    return cached;
+                }
+            }
+            JSONObject value = loader.get();
+            addToCache(cacheKey, value);
+            return value;
+        } finally {
+            if (lock != null) {
+                try {
+                    lock.channel().close();
+                } catch (IOException e) {
+                    logOutput.printVerboseMessage("Unable to release lock of cache entry " + cacheKey, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets for how long a retrieval waits for another process loading the same entry before loading it itself
+     *
+     * @param lockTimeout maximum wait for the lock of a cache entry
+     */
+    void setLockTimeout(Duration lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    /**
+     * Locks a cache entry, polling for the lock for at most {@link #lockTimeout} so a stuck process holding it does
+     * not block this one forever
+     *
+     * @return the lock, or {@code null} if the entry is loaded without lock
+     */
+    @CheckForNull
+    private FileLock lock(String cacheKey) {
+        Path lockFile = cache.resolve(cacheKey + ".lock");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            long deadline = System.nanoTime() + lockTimeout.toNanos();
+            while (true) {
+                FileLock lock;
+                try {
+                    lock = channel.tryLock();
+                } catch (OverlappingFileLockException e) {
+                    // held through another channel of this JVM
+                    lock = null;
+                }
+                if (lock != null) {
+                    return lock;
+                }
+                if (System.nanoTime() - deadline >= 0) {
+                    logOutput.printVerboseMessage("Timed out waiting for the lock of cache entry " + cacheKey +
+                            ", loading it without lock");
+                    channel.close();
+                    return null;
+                }
+                Thread.sleep(LOCK_POLL_MILLIS);
+            }
+        } catch (IOException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            logOutput.printVerboseMessage("Unable to lock cache entry " + cacheKey + ", loading it without lock", e);
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException closeException) {
+                    e.addSuppressed(closeException);
+                }
+            }
+            return null;
         }
     }
 
@@ -70,14 +269,40 @@ public class CacheManager {
      * @return the cached json object or null
      */
     JSONObject retrieveFromCache(String cacheKey) {
-        String filename = cacheKey + ".json";
-        Path cachedPath = cache.resolve(filename);
+        return retrieveFromCache(cacheKey, EXPIRATION);
+    }
+
+    /**
+     * Retrieves an expired json object from the cache, which may be served while a fresh value is retrieved.
+     * <p>
+     * Will return null if the key can't be found or if it hasn't been
+     * modified for 1 hour plus the configured maximum staleness
+     *
+     * @param cacheKey key to lookup, i.e. update-center
+     * @return the cached json object or null
+     */
+    JSONObject retrieveStaleFromCache(String cacheKey) {
+        if (maxStaleness.isZero() || maxStaleness.isNegative()) {
+            return null;
+        }
+        return retrieveFromCache(cacheKey, EXPIRATION.plus(maxStaleness));
+    }
+
+    /**
+     * Retrieves a json object from the cache, with its own time to live instead of 1 hour
+     *
+     * @param cacheKey key to lookup, i.e. update-center
+     * @param timeToLive for how long after it was added the entry is returned
+     * @return the cached json object or null
+     */
+    JSONObject retrieveFromCache(String cacheKey, Duration timeToLive) {
+        Path cachedPath = findEntry(cacheKey);
+        String filename = String.valueOf(cachedPath.getFileName());
         try {
             FileTime lastModifiedTime = Files.getLastModifiedTime(cachedPath);
             Duration between = Duration.between(lastModifiedTime.toInstant(), clock.instant());
-            long betweenHours = between.toHours();
 
-            if (betweenHours > 0L) {
+            if (between.compareTo(timeToLive) >= 0) {
                 logOutput.printVerboseMessage("Cache entry expired: " + cacheKey +
                         (expires ? ". Will skip it" : ". Will accept it, because expiration is disabled"));
                 if (expires) {
@@ -85,8 +310,10 @@ public class CacheManager {
                 }
             }
 
-            JSONTokener tokener = new JSONTokener(newInputStream(cachedPath));
-            return new JSONObject(tokener);
+            try (InputStream stream = filename.endsWith(COMPRESSED_EXTENSION) ?
+                    new GZIPInputStream(newInputStream(cachedPath)) : newInputStream(cachedPath)) {
+                return new JSONObject(new JSONTokener(stream));
+            }
         } catch (NoSuchFileException e) {
             return null;
         } catch (RuntimeException e) {
@@ -97,4 +324,29 @@ public class CacheManager {
             return null;
         }
     }
+
+    /**
+     * Finds the file of a cache entry. Compressed and plain entries are both accepted, regardless of whether this
+     * manager compresses, so a cache directory can be shared with instances using the other setting.
+     * The most recently written one wins if both exist.
+     *
+     * @param cacheKey key to lookup
+     * @return path of the entry, which may not exist
+     */
+    private Path findEntry(String cacheKey) {
+        Path plain = cache.resolve(cacheKey + EXTENSION);
+        Path compressed = cache.resolve(cacheKey + COMPRESSED_EXTENSION);
+        try {
+            if (!Files.exists(compressed)) {
+                return plain;
+            }
+            if (!Files.exists(plain)) {
+                return compressed;
+            }
+            return Files.getLastModifiedTime(compressed).compareTo(Files.getLastModifiedTime(plain)) >= 0 ?
+                    compressed : plain;
+        } catch (IOException e) {
+            return compress ? compressed : plain;
+        }
+    }
 }
@@ -0,0 +1,175 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Expected sizes and sources of the plugins to download, known before the downloads start.
+ * <p>
+ * The largest plugins are downloaded first, so a large plugin does not start last and delay the end of the
+ * downloads. The sizes are the sizes of the archives, exploded plugins take more space once extracted.
+ */
+final class DownloadPlan {
+
+    static final long UNKNOWN_SIZE = -1;
+
+    private final List<Plugin> plugins;
+    private final Map<String, Source> sources;
+
+    /**
+     * @param plugins plugins to download
+     * @param sources where each plugin is downloaded from and its size, by plugin name
+     */
+    DownloadPlan(Collection<Plugin> plugins, Map<String, Source> sources) {
+        this.sources = new LinkedHashMap<>(sources);
+        this.plugins = order(plugins);
+    }
+
+    /**
+     * Gets the plugins to download
+     *
+     * @return the plugins, the largest first and the ones of unknown size last
+     */
+    List<Plugin> getPlugins() {
+        return plugins;
+    }
+
+    /**
+     * Orders plugins for the download
+     *
+     * @param toOrder plugins to download
+     * @return the plugins, the largest first and the ones of unknown size last
+     */
+    List<Plugin> order(Collection<Plugin> toOrder) {
+        List<Plugin> ordered = new ArrayList<>(toOrder);
+        ordered.sort(Comparator.comparingLong(this::getSize).reversed().thenComparing(Plugin::getName));
+        return ordered;
+    }
+
+    long getSize(Plugin plugin) {
+        Source source = sources.get(plugin.getName());
+        return source != null ? source.size : UNKNOWN_SIZE;
+    }
+
+    /**
+     * Gets the number of bytes to download
+     *
+     * @return total size of the plugins whose size is known
+     */
+    long getTotalBytes() {
+        return plugins.stream().mapToLong(this::getSize).filter(size -> size > 0).sum();
+    }
+
+    int getUnknownSizes() {
+        return (int) plugins.stream().filter(plugin -> getSize(plugin) == UNKNOWN_SIZE).count();
+    }
+
+    /**
+     * Gets the number of bytes to download from each host
+     *
+     * @return bytes by host name, ordered by host name
+     */
+    Map<String, Long> getBytesPerHost() {
+        Map<String, Long> bytesPerHost = new TreeMap<>();
+        for (Plugin plugin : plugins) {
+            Source source = sources.get(plugin.getName());
+            if (source != null && source.size > 0) {
+                bytesPerHost.merge(source.host, source.size, Long::sum);
+            }
+        }
+        return bytesPerHost;
+    }
+
+    /**
+     * Fails if a directory the plugins are written to does not have enough free space for all of them. Directories
+     * on the same file system share its free space.
+     *
+     * @param directories directories the plugins are written to, e.g. the temporary download directory and the
+     *                    plugin directory
+     * @throws DownloadPluginException if there is not enough free space
+     */
+    void checkFreeSpace(File... directories) {
+        long required = getTotalBytes();
+        Map<FileStore, File> stores = new LinkedHashMap<>();
+        for (File directory : directories) {
+            Path existing = directory.getAbsoluteFile().toPath();
+            while (existing != null && !Files.exists(existing)) {
+                existing = existing.getParent();
+            }
+            if (existing == null) {
+                continue;
+            }
+            try {
+                stores.putIfAbsent(Files.getFileStore(existing), directory);
+            } catch (IOException e) {
+                // unknown, the downloads will tell
+            }
+        }
+        for (Map.Entry<FileStore, File> store : stores.entrySet()) {
+            long usable;
+            try {
+                usable = store.getKey().getUsableSpace();
+            } catch (IOException e) {
+                continue;
+            }
+            if (usable < required) {
+                throw new DownloadPluginException(String.format(
+                        "Not enough free space in %s to download the plugins: %s required, %s available",
+                        store.getValue(), FileUtils.byteCountToDisplaySize(required),
+                        FileUtils.byteCountToDisplaySize(usable)));
+            }
+        }
+    }
+
+    /**
+     * Describes the expected transfer volume
+     *
+     * @return e.g. {@code Expected download volume: 12 MB for 10 plugins (updates.jenkins.io: 12 MB)}
+     */
+    String describe() {
+        StringBuilder description = new StringBuilder("Expected download volume: ")
+                .append(FileUtils.byteCountToDisplaySize(getTotalBytes()))
+                .append(" for ").append(plugins.size()).append(" plugins");
+        int unknownSizes = getUnknownSizes();
+        if (unknownSizes > 0) {
+            description.append(", ").append(unknownSizes).append(" of unknown size");
+        }
+        Map<String, Long> bytesPerHost = getBytesPerHost();
+        if (!bytesPerHost.isEmpty()) {
+            description.append(bytesPerHost.entrySet().stream()
+                    .map(host -> host.getKey() + ": " + FileUtils.byteCountToDisplaySize(host.getValue()))
+                    .collect(Collectors.joining(", ", " (", ")")));
+        }
+        return description.toString();
+    }
+
+    /**
+     * Where a plugin is downloaded from
+     */
+    static final class Source {
+        private final String host;
+        private final long size;
+
+        /**
+         * @param host host the plugin is downloaded from, after redirects if they are known
+         * @param size size of the archive, or {@link #UNKNOWN_SIZE}
+         */
+        Source(@CheckForNull String host, long size) {
+            this.host = host != null ? host : "local";
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.util.VersionNumber;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Dependency graphs resolved by the previous run, so only the requested plugins whose requirements changed have to be
+ * resolved again.
+ * <p>
+ * The resolution is keyed by the update center metadata and the Jenkins version it was computed for. A requested
+ * plugin reuses its previous dependency graph if the key is unchanged, its own requirement is unchanged and no plugin
+ * of the graph, nor any dependency declared by one of them, is a requested plugin which was added, removed or changed,
+ * because these can pin or skip parts of the graph. Graphs of plugins downloaded from a URL, from the incrementals
+ * repository or from the experimental update center are never reused, their dependencies are not covered by the key.
+ */
+final class IncrementalResolution {
+
+    static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    @CheckForNull
+    private final String key;
+    private final boolean keyMatches;
+    private final Map<String, String> requirements;
+    private final Set<String> changedRequirements;
+    @CheckForNull
+    private final Map<String, String> previousVersions;
+    private final Map<String, JSONObject> previousGraphs;
+    private final Map<String, JSONObject> graphs = new TreeMap<>();
+    private int reused;
+
+    private IncrementalResolution(File file, @CheckForNull String key, boolean keyMatches,
+                                  Map<String, String> requirements, Set<String> changedRequirements,
+                                  @CheckForNull Map<String, String> previousVersions,
+                                  Map<String, JSONObject> previousGraphs) {
+        this.file = file;
+        this.key = key;
+        this.keyMatches = keyMatches;
+        this.requirements = requirements;
+        this.changedRequirements = changedRequirements;
+        this.previousVersions = previousVersions;
+        this.previousGraphs = previousGraphs;
+    }
+
+    /**
+     * Loads the resolution of the previous run
+     *
+     * @param file file the resolution is stored in, it does not need to exist
+     * @param key identifies the update center metadata and Jenkins version of this run, {@code null} if they cannot
+     *            be identified, nothing is reused then
+     * @param requestedPlugins requested plugins, before they are resolved
+     * @return the previous resolution, empty if there is none or it cannot be read
+     */
+    static IncrementalResolution load(File file, @CheckForNull String key, List<Plugin> requestedPlugins) {
+        Map<String, String> requirements = new TreeMap<>();
+        for (Plugin plugin : requestedPlugins) {
+            requirements.put(plugin.getName(), requirementOf(plugin));
+        }
+        JSONObject json = read(file);
+        if (json == null) {
+            return new IncrementalResolution(file, key, false, requirements, requirements.keySet(), null,
+                    Collections.emptyMap());
+        }
+
+        Map<String, String> previousVersions = new TreeMap<>();
+        JSONObject plugins = json.getJSONObject("plugins");
+        for (String name : plugins.keySet()) {
+            previousVersions.put(name, plugins.getString(name));
+        }
+        Map<String, JSONObject> previousGraphs = new HashMap<>();
+        Set<String> changedRequirements = new HashSet<>(requirements.keySet());
+        JSONObject requested = json.getJSONObject("requested");
+        for (String name : requested.keySet()) {
+            JSONObject entry = requested.getJSONObject(name);
+            String requirement = requirements.get(name);
+            if (entry.getString("requirement").equals(requirement)) {
+                changedRequirements.remove(name);
+                if (entry.has("graph")) {
+                    previousGraphs.put(name, entry);
+                }
+            } else {
+                // removed or changed
+                changedRequirements.add(name);
+            }
+        }
+        boolean keyMatches = key != null && key.equals(json.optString("key", null));
+        return new IncrementalResolution(file, key, keyMatches, requirements, changedRequirements, previousVersions,
+                previousGraphs);
+    }
+
+    @CheckForNull
+    private static JSONObject read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+            if (json.optInt("formatVersion") != FORMAT_VERSION || !json.has("plugins") || !json.has("requested")) {
+                return null;
+            }
+            return json;
+        } catch (IOException | JSONException e) {
+            // a broken resolution is resolved again
+            return null;
+        }
+    }
+
+    private static String requirementOf(Plugin plugin) {
+        return plugin.getVersion() + " " + StringUtils.defaultString(plugin.getUrl()) + " " +
+                StringUtils.defaultString(plugin.getGroupId());
+    }
+
+    /**
+     * Whether a previous resolution exists, whatever it was resolved with
+     *
+     * @return {@code true} if the changes to the previous resolution can be described
+     */
+    boolean hasPrevious() {
+        return previousVersions != null;
+    }
+
+    /**
+     * Gets the number of requested plugins whose dependency graph was reused
+     *
+     * @return number of reused graphs
+     */
+    int getReused() {
+        return reused;
+    }
+
+    /**
+     * Restores the dependency graph of a requested plugin from the previous resolution, if it can be reused.
+     * The resolved version, checksum and required Jenkins version are set on the requested plugin.
+     *
+     * @param requested requested plugin
+     * @return the requested plugin and its recursive dependencies, or {@code null} if they have to be resolved
+     */
+    @CheckForNull
+    Map<String, Plugin> reuse(Plugin requested) {
+        JSONObject entry = previousGraphs.get(requested.getName());
+        if (!keyMatches || entry == null) {
+            return null;
+        }
+        JSONArray graph = entry.getJSONArray("graph");
+        for (int i = 0; i < graph.length(); i++) {
+            JSONObject node = graph.getJSONObject(i);
+            if (changedRequirements.contains(node.getString("name"))) {
+                return null;
+            }
+            JSONArray dependencies = node.getJSONArray("dependencies");
+            for (int j = 0; j < dependencies.length(); j++) {
+                if (changedRequirements.contains(dependencies.getJSONObject(j).getString("name"))) {
+                    return null;
+                }
+            }
+        }
+
+        Map<String, Plugin> plugins = new LinkedHashMap<>();
+        Map<String, String> parents = new HashMap<>();
+        for (int i = 0; i < graph.length(); i++) {
+            JSONObject node = graph.getJSONObject(i);
+            String name = node.getString("name");
+            Plugin plugin;
+            if (name.equals(requested.getName())) {
+                plugin = requested;
+                plugin.setVersion(new VersionNumber(node.getString("version")));
+            } else {
+                plugin = new Plugin(name, node.getString("version"), null, null);
+                plugin.setLatest(node.optBoolean("latest"));
+                plugin.setOptional(node.optBoolean("optional"));
+            }
+            plugin.setChecksum(node.optString("checksum", null));
+            String requiredCore = node.optString("requiredCore", null);
+            if (requiredCore != null) {
+                plugin.setJenkinsVersion(requiredCore);
+            }
+            JSONArray dependencies = node.getJSONArray("dependencies");
+            List<Plugin> direct = new ArrayList<>(dependencies.length());
+            for (int j = 0; j < dependencies.length(); j++) {
+                JSONObject dependency = dependencies.getJSONObject(j);
+                Plugin dependentPlugin = new Plugin(dependency.getString("name"), dependency.getString("version"),
+                        null, null);
+                dependentPlugin.setOptional(dependency.optBoolean("optional"));
+                dependentPlugin.setParent(plugin);
+                direct.add(dependentPlugin);
+            }
+            plugin.setDependencies(direct);
+            String parent = node.optString("parent", null);
+            if (parent != null) {
+                parents.put(name, parent);
+            }
+            plugins.put(name, plugin);
+        }
+        for (Map.Entry<String, String> parent : parents.entrySet()) {
+            Plugin parentPlugin = plugins.get(parent.getValue());
+            if (parentPlugin != null) {
+                plugins.get(parent.getKey()).setParent(parentPlugin);
+            }
+        }
+        graphs.put(requested.getName(), entry);
+        reused++;
+        return plugins;
+    }
+
+    /**
+     * Records the dependency graph resolved for a requested plugin, so the next run can reuse it
+     *
+     * @param requested requested plugin
+     * @param graph the requested plugin and its recursive dependencies, as resolved without errors
+     */
+    void record(Plugin requested, Map<String, Plugin> graph) {
+        JSONArray nodes = new JSONArray();
+        for (Plugin plugin : graph.values()) {
+            if (!StringUtils.isEmpty(plugin.getUrl()) || !StringUtils.isEmpty(plugin.getGroupId()) ||
+                    plugin.isExperimental()) {
+                return;
+            }
+            JSONArray dependencies = new JSONArray();
+            if (plugin.isDependenciesSpecified()) {
+                for (Plugin dependency : plugin.getDependencies()) {
+                    dependencies.put(new JSONObject()
+                            .put("name", dependency.getName())
+                            .put("version", dependency.getVersion().toString())
+                            .put("optional", dependency.getOptional()));
+                }
+            }
+            Plugin parent = plugin.getParent();
+            nodes.put(new JSONObject()
+                    .put("name", plugin.getName())
+                    .put("version", plugin.getVersion().toString())
+                    .put("latest", plugin.isLatest())
+                    .put("optional", plugin.getOptional())
+                    .putOpt("checksum", plugin.getChecksum())
+                    .putOpt("requiredCore", plugin.getJenkinsVersion() != null ?
+                            plugin.getJenkinsVersion().toString() : null)
+                    .putOpt("parent", parent != null && parent != plugin ? parent.getName() : null)
+                    .put("dependencies", dependencies));
+        }
+        graphs.put(requested.getName(), new JSONObject()
+                .put("requirement", requirements.get(requested.getName()))
+                .put("graph", nodes));
+    }
+
+    /**
+     * Describes how the resolved plugins differ from the previous resolution
+     *
+     * @param resolved resolved plugins of this run
+     * @return one line per added, removed, upgraded or downgraded plugin, ordered by name
+     */
+    List<String> describeChanges(Map<String, Plugin> resolved) {
+        List<String> changes = new ArrayList<>();
+        if (previousVersions == null) {
+            return changes;
+        }
+        Set<String> names = new TreeSet<>(previousVersions.keySet());
+        names.addAll(resolved.keySet());
+        for (String name : names) {
+            String previous = previousVersions.get(name);
+            Plugin plugin = resolved.get(name);
+            if (previous == null) {
+                changes.add("added " + name + " " + plugin.getVersion());
+            } else if (plugin == null) {
+                changes.add("removed " + name + " " + previous);
+            } else {
+                VersionNumber previousVersion = new VersionNumber(previous);
+                if (previousVersion.isOlderThan(plugin.getVersion())) {
+                    changes.add("upgraded " + name + " " + previous + " -> " + plugin.getVersion());
+                } else if (plugin.getVersion().isOlderThan(previousVersion)) {
+                    changes.add("downgraded " + name + " " + previous + " -> " + plugin.getVersion());
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Stores the resolution of this run for the next one, replacing the previous resolution
+     *
+     * @param resolved resolved plugins of this run
+     * @throws IOException if the resolution cannot be written
+     */
+    void save(Map<String, Plugin> resolved) throws IOException {
+        JSONObject plugins = new JSONObject();
+        for (Plugin plugin : resolved.values()) {
+            plugins.put(plugin.getName(), plugin.getVersion().toString());
+        }
+        JSONObject requested = new JSONObject();
+        for (Map.Entry<String, String> requirement : requirements.entrySet()) {
+            JSONObject graph = graphs.get(requirement.getKey());
+            requested.put(requirement.getKey(), graph != null ? graph :
+                    new JSONObject().put("requirement", requirement.getValue()));
+        }
+        JSONObject json = new JSONObject()
+                .put("formatVersion", FORMAT_VERSION)
+                .putOpt("key", key)
+                .put("plugins", plugins)
+                .put("requested", requested);
+
+        Path target = file.toPath();
+        Path parent = Objects.requireNonNull(target.toAbsolutePath().getParent());
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, file.getName(), ".tmp");
+        try {
+            Files.write(tmp, json.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+}
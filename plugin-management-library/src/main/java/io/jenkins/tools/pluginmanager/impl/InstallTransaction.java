@@ -0,0 +1,229 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import io.jenkins.tools.pluginmanager.config.LogOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import org.apache.commons.io.FileUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Installs downloaded plugins into the plugin directory all at once, or not at all.
+ * <p>
+ * The plugins are first staged in the plugin directory under hidden names, which can be done in parallel and is the
+ * slow part when the downloads are on another file system. Then a journal of the installation is written and every
+ * staged plugin is renamed to its final name, after the previous archive was renamed to its backup, or the previous
+ * exploded directory was set aside. If this fails, or if the process dies before the journal is removed, the
+ * installation is rolled back from the backups, by the transaction itself or by {@link #recover(File, LogOutput)} on
+ * the next run. A backup which existed before the installation is replaced, so it is not restored by a roll back.
+ * If staging fails, {@link #abort()} deletes the plugins staged so far, no journal exists yet then.
+ */
+final class InstallTransaction {
+
+    static final String JOURNAL = ".plugin-installation.journal";
+
+    private static final String PREVIOUS_NONE = "none";
+    private static final String PREVIOUS_FILE = "file";
+    private static final String PREVIOUS_DIRECTORY = "directory";
+
+    private final File pluginDir;
+    private final LogOutput logOutput;
+    private final List<Entry> entries = Collections.synchronizedList(new ArrayList<>());
+
+    InstallTransaction(File pluginDir, LogOutput logOutput) {
+        this.pluginDir = pluginDir;
+        this.logOutput = logOutput;
+    }
+
+    /**
+     * Stages a plugin in the plugin directory. Can be called from many threads.
+     *
+     * @param target file name of the installed plugin, e.g. {@code mailer.jpi}
+     * @param backup file name of the backup of the previous archive, e.g. {@code mailer.bak}
+     * @param source downloaded archive, or exploded plugin directory, it is moved
+     * @throws IOException if the plugin cannot be staged
+     */
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    void prepare(String target, String backup, File source) throws IOException {
+        File staged;
+        if (pluginDir.getAbsoluteFile().equals(source.getAbsoluteFile().getParentFile())) {
+            // already staged in the plugin directory, e.g. exploded
+            staged = source;
+        } else {
+            staged = new File(pluginDir, "." + target + ".new");
+            FileUtils.deleteQuietly(staged);
+            Files.move(source.toPath(), staged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        entries.add(new Entry(target, backup, staged.getName(), PREVIOUS_NONE));
+    }
+
+    /**
+     * Deletes the staged plugins, when the installation is given up before {@link #commit()}
+     */
+    void abort() {
+        synchronized (entries) {
+            for (Entry entry : entries) {
+                FileUtils.deleteQuietly(file(entry.staged));
+            }
+            entries.clear();
+        }
+    }
+
+    /**
+     * Installs the staged plugins, or rolls back the plugin directory if one of them cannot be installed
+     *
+     * @throws IOException if the plugins cannot be installed, the plugin directory is rolled back then
+     */
+    void commit() throws IOException {
+        List<Entry> journal = new ArrayList<>();
+        synchronized (entries) {
+            for (Entry entry : entries) {
+                File target = file(entry.target);
+                String previous = target.isDirectory() ? PREVIOUS_DIRECTORY :
+                        target.exists() ? PREVIOUS_FILE : PREVIOUS_NONE;
+                journal.add(new Entry(entry.target, entry.backup, entry.staged, previous));
+            }
+        }
+        journal.sort(Comparator.comparing(entry -> entry.target));
+        writeJournal(journal);
+        try {
+            for (Entry entry : journal) {
+                if (entry.previous.equals(PREVIOUS_DIRECTORY)) {
+                    FileUtils.deleteQuietly(file(entry.setAside()));
+                    move(file(entry.target), file(entry.setAside()));
+                } else if (entry.previous.equals(PREVIOUS_FILE)) {
+                    move(file(entry.target), file(entry.backup));
+                }
+                move(file(entry.staged), file(entry.target));
+            }
+        } catch (IOException e) {
+            rollback(journal);
+            Files.deleteIfExists(file(JOURNAL).toPath());
+            throw e;
+        }
+        Files.delete(file(JOURNAL).toPath());
+        for (Entry entry : journal) {
+            if (entry.previous.equals(PREVIOUS_DIRECTORY)) {
+                FileUtils.deleteQuietly(file(entry.setAside()));
+            }
+        }
+    }
+
+    /**
+     * Rolls back an installation which was interrupted, e.g. because the process died
+     *
+     * @param pluginDir plugin directory
+     * @param logOutput log output
+     * @return {@code true} if an interrupted installation was found
+     */
+    static boolean recover(File pluginDir, LogOutput logOutput) {
+        InstallTransaction transaction = new InstallTransaction(pluginDir, logOutput);
+        File journalFile = transaction.file(JOURNAL);
+        if (!journalFile.isFile()) {
+            return false;
+        }
+        try {
+            List<Entry> journal = readJournal(journalFile);
+            transaction.rollback(journal);
+            logOutput.printMessage(String.format("Rolled back the interrupted installation of %d plugins in %s",
+                    journal.size(), pluginDir));
+        } catch (IOException | JSONException e) {
+            // the journal is written completely before the first plugin is installed
+            logOutput.printMessage("Discarding the incomplete installation journal " + journalFile);
+        }
+        FileUtils.deleteQuietly(journalFile);
+        return true;
+    }
+
+    private void rollback(List<Entry> journal) {
+        for (int i = journal.size() - 1; i >= 0; i--) {
+            Entry entry = journal.get(i);
+            File target = file(entry.target);
+            File staged = file(entry.staged);
+            try {
+                if (!staged.exists() && target.exists()) {
+                    // installed
+                    FileUtils.forceDelete(target);
+                }
+                if (!target.exists()) {
+                    if (entry.previous.equals(PREVIOUS_FILE) && file(entry.backup).exists()) {
+                        move(file(entry.backup), target);
+                    } else if (entry.previous.equals(PREVIOUS_DIRECTORY) && file(entry.setAside()).exists()) {
+                        move(file(entry.setAside()), target);
+                    }
+                }
+            } catch (IOException e) {
+                logOutput.printMessage("Unable to roll back " + entry.target + ": " + e.getMessage());
+            }
+            FileUtils.deleteQuietly(staged);
+        }
+    }
+
+    private void writeJournal(List<Entry> journal) throws IOException {
+        JSONArray json = new JSONArray();
+        for (Entry entry : journal) {
+            json.put(new JSONObject()
+                    .put("target", entry.target)
+                    .put("backup", entry.backup)
+                    .put("staged", entry.staged)
+                    .put("previous", entry.previous));
+        }
+        Files.write(file(JOURNAL).toPath(), json.toString().getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE,
+                StandardOpenOption.SYNC);
+    }
+
+    private static List<Entry> readJournal(File journalFile) throws IOException {
+        JSONArray json = new JSONArray(new String(Files.readAllBytes(journalFile.toPath()), StandardCharsets.UTF_8));
+        List<Entry> journal = new ArrayList<>(json.length());
+        for (int i = 0; i < json.length(); i++) {
+            JSONObject entry = json.getJSONObject(i);
+            journal.add(new Entry(entry.getString("target"), entry.getString("backup"), entry.getString("staged"),
+                    entry.getString("previous")));
+        }
+        return journal;
+    }
+
+    private static void move(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    private File file(String name) {
+        return new File(pluginDir, name);
+    }
+
+    private static final class Entry {
+        private final String target;
+        private final String backup;
+        private final String staged;
+        private final String previous;
+
+        private Entry(String target, String backup, String staged, String previous) {
+            this.target = target;
+            this.backup = backup;
+            this.staged = staged;
+            this.previous = previous;
+        }
+
+        // previous exploded directory, deleted once the installation is complete
+        String setAside() {
+            return "." + target + ".old";
+        }
+    }
+}
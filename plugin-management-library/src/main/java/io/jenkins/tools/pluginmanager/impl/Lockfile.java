@@ -0,0 +1,213 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.util.VersionNumber;
+import io.jenkins.tools.pluginmanager.config.HashFunction;
+import io.jenkins.tools.pluginmanager.config.PluginInputException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Exact versions, download URLs and checksums of a resolved plugin set, so the same plugins can be installed again
+ * without update center metadata and dependency resolution.
+ * <p>
+ * The lockfile is a JSON file:
+ * <pre>
+ * {
+ *   "lockfileVersion": 1,
+ *   "jenkinsVersion": "2.440.1",
+ *   "hashFunction": "sha256",
+ *   "plugins": [
+ *     {"name": "mailer", "version": "1.32", "url": "https://...", "checksum": "...", "requiredCore": "2.361.4"}
+ *   ]
+ * }
+ * </pre>
+ * {@code jenkinsVersion}, {@code url}, {@code checksum} and {@code requiredCore} are optional.
+ */
+public class Lockfile {
+
+    static final int LOCKFILE_VERSION = 1;
+
+    @CheckForNull
+    private final VersionNumber jenkinsVersion;
+    private final HashFunction hashFunction;
+    private final List<Entry> entries;
+
+    /**
+     * @param jenkinsVersion Jenkins version the plugins were resolved for, or {@code null} if unknown
+     * @param hashFunction hash function of the checksums
+     * @param entries locked plugins
+     */
+    public Lockfile(@CheckForNull VersionNumber jenkinsVersion, HashFunction hashFunction, List<Entry> entries) {
+        this.jenkinsVersion = jenkinsVersion;
+        this.hashFunction = hashFunction;
+        List<Entry> sorted = new ArrayList<>(entries);
+        sorted.sort(Comparator.comparing(Entry::getName));
+        this.entries = Collections.unmodifiableList(sorted);
+    }
+
+    @CheckForNull
+    public VersionNumber getJenkinsVersion() {
+        return jenkinsVersion;
+    }
+
+    public HashFunction getHashFunction() {
+        return hashFunction;
+    }
+
+    /**
+     * Gets the locked plugins
+     *
+     * @return locked plugins ordered by name
+     */
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Creates the plugins to download, with their download URL, checksum and required Jenkins version
+     *
+     * @return new plugin instances for the locked plugins
+     */
+    public List<Plugin> toPlugins() {
+        List<Plugin> plugins = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            plugins.add(entry.toPlugin());
+        }
+        return plugins;
+    }
+
+    public JSONObject toJson() {
+        JSONArray plugins = new JSONArray();
+        for (Entry entry : entries) {
+            plugins.put(new JSONObject()
+                    .put("name", entry.getName())
+                    .put("version", entry.getVersion())
+                    .putOpt("url", entry.getUrl())
+                    .putOpt("checksum", entry.getChecksum())
+                    .putOpt("requiredCore", entry.getRequiredCore()));
+        }
+        return new JSONObject()
+                .put("lockfileVersion", LOCKFILE_VERSION)
+                .putOpt("jenkinsVersion", jenkinsVersion != null ? jenkinsVersion.toString() : null)
+                .put("hashFunction", hashFunction.toString())
+                .put("plugins", plugins);
+    }
+
+    /**
+     * Writes the lockfile
+     *
+     * @param file file to write to, it is replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        Files.write(file.toPath(), toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads a lockfile
+     *
+     * @param file lockfile written by {@link #write(File)}
+     * @return the lockfile
+     * @throws PluginInputException if the file cannot be read or is not a valid lockfile
+     */
+    public static Lockfile read(File file) {
+        JSONObject json;
+        try {
+            json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new PluginInputException("Unable to read the lockfile " + file, e);
+        } catch (JSONException e) {
+            throw new PluginInputException("The lockfile " + file + " is not valid JSON", e);
+        }
+        try {
+            int lockfileVersion = json.getInt("lockfileVersion");
+            if (lockfileVersion != LOCKFILE_VERSION) {
+                throw new PluginInputException("Unsupported lockfile version " + lockfileVersion + " in " + file);
+            }
+            String jenkinsVersion = json.optString("jenkinsVersion", null);
+            HashFunction hashFunction = HashFunction.valueOf(json.getString("hashFunction").toUpperCase(Locale.ROOT));
+            JSONArray plugins = json.getJSONArray("plugins");
+            List<Entry> entries = new ArrayList<>(plugins.length());
+            for (int i = 0; i < plugins.length(); i++) {
+                JSONObject plugin = plugins.getJSONObject(i);
+                entries.add(new Entry(plugin.getString("name"), plugin.getString("version"),
+                        plugin.optString("url", null), plugin.optString("checksum", null),
+                        plugin.optString("requiredCore", null)));
+            }
+            return new Lockfile(jenkinsVersion != null ? new VersionNumber(jenkinsVersion) : null, hashFunction,
+                    entries);
+        } catch (JSONException | IllegalArgumentException e) {
+            throw new PluginInputException("Invalid lockfile " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Plugin locked to an exact version
+     */
+    public static class Entry {
+        private final String name;
+        private final String version;
+        @CheckForNull
+        private final String url;
+        @CheckForNull
+        private final String checksum;
+        @CheckForNull
+        private final String requiredCore;
+
+        public Entry(String name, String version, @CheckForNull String url, @CheckForNull String checksum,
+                     @CheckForNull String requiredCore) {
+            this.name = name;
+            this.version = version;
+            this.url = url;
+            this.checksum = checksum;
+            this.requiredCore = requiredCore;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        @CheckForNull
+        public String getUrl() {
+            return url;
+        }
+
+        @CheckForNull
+        public String getChecksum() {
+            return checksum;
+        }
+
+        @CheckForNull
+        public String getRequiredCore() {
+            return requiredCore;
+        }
+
+        Plugin toPlugin() {
+            Plugin plugin = new Plugin(name, version, url, null);
+            plugin.setChecksum(checksum);
+            if (requiredCore != null) {
+                plugin.setJenkinsVersion(requiredCore);
+            }
+            return plugin;
+        }
+    }
+}
@@ -13,7 +13,11 @@ import io.jenkins.tools.pluginmanager.parsers.StdOutPluginOutputConverter;
 import io.jenkins.tools.pluginmanager.parsers.TxtOutputConverter;
 import io.jenkins.tools.pluginmanager.parsers.YamlPluginOutputConverter;
 import io.jenkins.tools.pluginmanager.util.FileDownloadResponseHandler;
+import io.jenkins.tools.pluginmanager.util.JsonResponseHandler;
+import io.jenkins.tools.pluginmanager.util.ManifestStreamingResponseHandler;
 import io.jenkins.tools.pluginmanager.util.ManifestTools;
+import io.jenkins.tools.pluginmanager.util.PluginManifest;
+import io.jenkins.tools.pluginmanager.util.PluginManifestReader;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileFilter;
@@ -22,6 +26,7 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -36,25 +41,36 @@ import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.jar.JarFile;
-import java.util.regex.Matcher;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -63,6 +79,9 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.client.CredentialsProvider;
@@ -71,12 +90,11 @@ import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.config.CookieSpecs;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.protocol.HttpClientContext;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.json.JSONArray;
@@ -84,8 +102,8 @@ import org.json.JSONObject;
 
 import static io.jenkins.tools.pluginmanager.util.PluginManagerUtils.appendPathOntoUrl;
 import static io.jenkins.tools.pluginmanager.util.PluginManagerUtils.dirName;
+import static io.jenkins.tools.pluginmanager.util.PluginManagerUtils.explodePlugin;
 import static io.jenkins.tools.pluginmanager.util.PluginManagerUtils.removePath;
-import static io.jenkins.tools.pluginmanager.util.PluginManagerUtils.removePossibleWrapperText;
 
 public class PluginManager implements Closeable {
     private static final VersionNumber LATEST = new VersionNumber(Plugin.LATEST);
@@ -101,6 +119,8 @@ public class PluginManager implements Closeable {
     private Map<String, Plugin> installedPluginVersions;
     private Map<String, Plugin> bundledPluginVersions;
     private Map<String, List<SecurityWarning>> allSecurityWarnings;
+    @CheckForNull
+    private SecurityWarningIndex securityWarningIndex;
     private Map<String, Plugin> allPluginsAndDependencies;
     private Map<String, Plugin> effectivePlugins;
     private List<Plugin> pluginsToBeDownloaded;
@@ -110,6 +130,8 @@ public class PluginManager implements Closeable {
     private JSONObject pluginInfoJson;
     private JSONObject latestPlugins;
     private JSONObject experimentalPlugins;
+    @CheckForNull
+    private UpdateCenterMetadata updateCenterMetadata;
     private final boolean verbose;
     private final boolean useLatestSpecified;
     private final boolean useLatestAll;
@@ -117,9 +139,47 @@ public class PluginManager implements Closeable {
     private final boolean skipFailedPlugins;
     private CloseableHttpClient httpClient;
     private final CacheManager cm;
+    private final RetryPolicy retryPolicy = new RetryPolicy();
+    private final PluginManifestReader manifestReader = new PluginManifestReader(MANIFEST_CACHE_SIZE);
     private final LogOutput logOutput;
+    private final Set<String> refreshingCacheKeys = ConcurrentHashMap.newKeySet();
+    private final Map<File, CompletableFuture<PluginManifest>> streamedManifests = new ConcurrentHashMap<>();
+    // manifests read while exploding the downloaded plugins, see installDownloadedPlugins
+    private final Map<String, PluginManifest> explodedManifests = new ConcurrentHashMap<>();
+    // installed plugins which the reconciliation may keep, see reconcilePluginDir
+    @CheckForNull
+    private Map<String, Plugin> reusablePlugins;
+    // files of the plugin directory the reconciliation removes once the plugins are installed
+    private final Set<String> unreconciledFiles = new HashSet<>();
+    // checksums of the archives and backups in the plugin directory, see restoreFromLocalArchive
+    private final Map<File, byte[]> localArchiveChecksums = new ConcurrentHashMap<>();
+    @CheckForNull
+    private ExecutorService cacheRefreshExecutor;
+    @CheckForNull
+    private EarlyDownloads earlyDownloads;
+    @CheckForNull
+    private DownloadPlan downloadPlan;
+    // origins the downloads were redirected to, see warmUpConnections
+    private final Set<String> mirrorOrigins = ConcurrentHashMap.newKeySet();
+    // base URLs of the plugin downloads and of the mirror they are redirected to, see getMirrorUrl
+    private final Map<String, String> mirrorBases = new ConcurrentHashMap<>();
 
     private static final int DEFAULT_MAX_RETRIES = 3;
+    private static final long CACHE_REFRESH_TIMEOUT_SECONDS = 60;
+    private static final int MANIFEST_READ_PARALLELISM = 16;
+    private static final int INSTALL_PARALLELISM = 8;
+    private static final int DOWNLOAD_PARALLELISM = 64;
+    private static final int PLAN_PARALLELISM = 16;
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 8;
+    private static final int WARM_UP_PARALLELISM = 4;
+    private static final int WARM_UP_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_MIRROR_ORIGINS = 8;
+    private static final String MIRROR_ORIGINS_CACHE_KEY = "mirror-origins";
+    private static final Duration MIRROR_ORIGINS_TIME_TO_LIVE = Duration.ofDays(7);
+    private static final String MIRROR_BASES_CACHE_KEY = "mirror-bases";
+    // name, version and file name of a plugin download
+    private static final int MIRRORED_PATH_SEGMENTS = 3;
+    private static final int MANIFEST_CACHE_SIZE = 1024;
     private static final String MIRROR_FALLBACK_BASE_URL = "https://archives.jenkins.io/";
 
     @SuppressFBWarnings(value = "PATH_TRAVERSAL_IN", justification = "we want the user to be able to specify a path")
@@ -130,7 +190,7 @@ public class PluginManager implements Closeable {
         jenkinsVersion = cfg.getJenkinsVersion();
         final String warArg = cfg.getJenkinsWar();
         jenkinsWarFile = warArg != null ? new File(warArg) : null;
-        failedPlugins = new ArrayList<>();
+        failedPlugins = Collections.synchronizedList(new ArrayList<>());
         installedPluginVersions = new HashMap<>();
         bundledPluginVersions = new HashMap<>();
         allSecurityWarnings = new HashMap<>();
@@ -143,7 +203,8 @@ public class PluginManager implements Closeable {
         hashFunction = cfg.getHashFunction();
         httpClient = null;
         userAgentInformation = this.getUserAgentInformation();
-        cm = new CacheManager(cfg.getCachePath(), cfg.getLogOutput());
+        cm = new CacheManager(cfg.getCachePath(), cfg.getLogOutput(), cfg.getMaxCacheStaleness(),
+                cfg.isCompressCache());
     }
 
     private String getUserAgentInformation() {
@@ -164,16 +225,20 @@ public class PluginManager implements Closeable {
         return userAgentInformation;
     }
 
-    private HttpClient getHttpClient() {
+    private synchronized HttpClient getHttpClient() {
         if (httpClient == null) {
             RequestConfig globalConfig = RequestConfig.custom()
                 .setCookieSpec(CookieSpecs.STANDARD) // use modern cookie policy (RFC 6265)
                 .build();
+            // a single pool, with a single TLS context, for all the requests: the TLS sessions negotiated by the first
+            // connections to a host, e.g. by warmUpConnections, are resumed by the next ones
+            PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(DOWNLOAD_PARALLELISM);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
             httpClient = HttpClients.custom().useSystemProperties()
-                // there is a more complex retry handling in downloadToFile(...) on the whole flow
-                // this affects only the single request
-                .setRetryHandler(new DefaultHttpRequestRetryHandler(DEFAULT_MAX_RETRIES, true))
-                .setConnectionManager(new PoolingHttpClientConnectionManager())
+                // retries are decided by the retry policy, see getViaHttpWithResponseHandler
+                .disableAutomaticRetries()
+                .setConnectionManager(connectionManager)
                 .setUserAgent(userAgentInformation)
                 .setDefaultRequestConfig(globalConfig)
                 .build();
@@ -198,7 +263,8 @@ public class PluginManager implements Closeable {
      * @since TODO
      */
     public void start(boolean downloadUc) {
-        if (cfg.isCleanPluginDir() && pluginDir.exists()) {
+        // the reconciliation removes the files which are not part of the result once it is known
+        if (cfg.isCleanPluginDir() && !cfg.isReconcilePluginDir() && pluginDir.exists()) {
             try {
                 logVerbose("Cleaning up the target plugin directory: " + pluginDir);
                 File[] toBeDeleted = pluginDir.listFiles();
@@ -214,6 +280,10 @@ public class PluginManager implements Closeable {
         if (cfg.doDownload() && !pluginDir.exists()) {
             createPluginDir(cfg.isCleanPluginDir());
         }
+        if (cfg.doDownload()) {
+            // the installed plugins are scanned from a consistent plugin directory
+            recoverInterruptedInstallation();
+        }
 
         if (useLatestSpecified && useLatestAll) {
             throw new PluginDependencyStrategyException("Only one plugin dependency version strategy can be selected " +
@@ -221,20 +291,160 @@ public class PluginManager implements Closeable {
         }
 
         VersionNumber jenkinsVersion = getJenkinsVersion();
-        if (downloadUc) {
-            getUCJson(jenkinsVersion);
+        File lockfile = cfg.getLockfile();
+        if (lockfile != null) {
+            installFromLockfile(Lockfile.read(lockfile), jenkinsVersion);
+            logMessage("Done");
+            return;
+        }
+        // the installed and bundled plugins are scanned while the update center metadata is retrieved
+        ExecutorService scanExecutor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "plugin-manager-plugin-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<Map<String, Plugin>> bundledScan =
+                    CompletableFuture.supplyAsync(this::bundledPlugins, scanExecutor);
+            CompletableFuture<Map<String, Plugin>> installedScan =
+                    CompletableFuture.supplyAsync(this::installedPlugins, scanExecutor);
+            if (cfg.doDownload()) {
+                loadMirrorBases();
+            }
+            if (downloadUc && cfg.doDownload() && cfg.isWarmUpConnections()) {
+                warmUpConnections();
+            }
+            if (downloadUc) {
+                getUCJson(jenkinsVersion);
+            }
+            getSecurityWarnings();
+            showAllSecurityWarnings();
+            bundledPluginVersions = joinScan(bundledScan);
+            installedPluginVersions = joinScan(installedScan);
+        } finally {
+            scanExecutor.shutdown();
+        }
+        if (cfg.isReconcilePluginDir() && cfg.doDownload()) {
+            // resolved as for an empty plugin directory, see reconcilePluginDir
+            reusablePlugins = installedPluginVersions;
+            installedPluginVersions = new HashMap<>();
+        }
+        if (cfg.doDownload()) {
+            startEarlyDownloads(cfg.getPlugins());
+        }
+        try {
+            List<Exception> exceptions = new ArrayList<>();
+            allPluginsAndDependencies = findPluginsAndDependencies(cfg.getPlugins(), exceptions);
+            pluginsToBeDownloaded = findPluginsToDownload(allPluginsAndDependencies);
+            if (reusablePlugins != null) {
+                pluginsToBeDownloaded = reconcilePluginDir(pluginsToBeDownloaded, reusablePlugins);
+            }
+            effectivePlugins = findEffectivePlugins(pluginsToBeDownloaded);
+            if (cfg.doDownload() || cfg.isShowPluginsToBeDownloaded()) {
+                // probing delays the downloads, it is only worth it to list the expected download volume
+                downloadPlan = planDownloads(pluginsToBeDownloaded, cfg.isShowPluginsToBeDownloaded());
+            }
+
+            listPlugins();
+            showSpecificSecurityWarnings(pluginsToBeDownloaded);
+            checkVersionCompatibility(jenkinsVersion, pluginsToBeDownloaded, exceptions);
+            if (!exceptions.isEmpty()) {
+                throw new AggregatePluginPrerequisitesNotMetException(exceptions);
+            }
+            if (cfg.doDownload()) {
+                downloadPlugins(pluginsToBeDownloaded);
+                removeUnreconciledFiles(pluginsToBeDownloaded);
+            }
+            File lockfileOutput = cfg.getLockfileOutput();
+            if (lockfileOutput != null) {
+                try {
+                    createLockfile(jenkinsVersion).write(lockfileOutput);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to write the lockfile " + lockfileOutput, e);
+                }
+                logVerbose("Wrote the lockfile " + lockfileOutput);
+            }
+        } finally {
+            discardEarlyDownloads();
+            logVerbose("HTTP retries: " + retryPolicy.getCounters());
+            if (cfg.isWarmUpConnections()) {
+                saveMirrorOrigins();
+            }
+            saveMirrorBases();
+        }
+        logMessage("Done");
+    }
+
+    /**
+     * Creates the lockfile of the effective plugins, with their exact version, download URL, checksum and minimum
+     * Jenkins version. Installed and bundled plugins are included, so the lockfile describes the complete plugin set.
+     *
+     * @param jenkinsVersion Jenkins version the plugins were resolved for
+     * @return the lockfile
+     */
+    public Lockfile createLockfile(@CheckForNull VersionNumber jenkinsVersion) {
+        List<Lockfile.Entry> entries = new ArrayList<>();
+        for (Plugin plugin : effectivePlugins.values()) {
+            String version = plugin.getVersion().toString();
+            if (version.equals(Plugin.LATEST) || version.equals(Plugin.EXPERIMENTAL)) {
+                logMessage(String.format("Unable to lock %s to an exact version, the lockfile will contain %s",
+                        plugin.getName(), version));
+            }
+            VersionNumber requiredCore = plugin.getJenkinsVersion();
+            entries.add(new Lockfile.Entry(plugin.getName(), version, getPluginDownloadUrl(plugin),
+                    getLockedChecksum(plugin), requiredCore != null ? requiredCore.toString() : null));
+        }
+        return new Lockfile(jenkinsVersion, getHashFunction(), entries);
+    }
+
+    @CheckForNull
+    private String getLockedChecksum(Plugin plugin) {
+        if (plugin.getChecksum() != null) {
+            return plugin.getChecksum();
         }
-        getSecurityWarnings();
-        showAllSecurityWarnings();
+        if (StringUtils.isNotEmpty(plugin.getUrl()) || StringUtils.isNotEmpty(plugin.getGroupId())) {
+            // the update center checksums are not the ones of other archives
+            return null;
+        }
+        return getPluginVersionsChecksum(plugin.getName(), plugin.getVersion().toString());
+    }
+
+    /**
+     * Installs the plugins of a lockfile, without update center metadata and dependency resolution. Locked plugins
+     * which are already installed, or bundled in the WAR, with the locked version are kept, all others are downloaded
+     * in parallel and verified against the locked checksums.
+     *
+     * @param lockfile lockfile to install
+     * @param jenkinsVersion Jenkins version the plugins are installed for, to check the locked minimum versions
+     */
+    public void installFromLockfile(Lockfile lockfile, @CheckForNull VersionNumber jenkinsVersion) {
+        VersionNumber lockedJenkinsVersion = lockfile.getJenkinsVersion();
+        if (lockedJenkinsVersion != null && jenkinsVersion != null && !lockedJenkinsVersion.equals(jenkinsVersion)) {
+            logMessage(String.format("The lockfile was created for Jenkins %s, installing the plugins for Jenkins %s",
+                    lockedJenkinsVersion, jenkinsVersion));
+        }
+        hashFunction = lockfile.getHashFunction();
         bundledPluginVersions = bundledPlugins();
         installedPluginVersions = installedPlugins();
-        List<Exception> exceptions = new ArrayList<>();
-        allPluginsAndDependencies = findPluginsAndDependencies(cfg.getPlugins(), exceptions);
-        pluginsToBeDownloaded = findPluginsToDownload(allPluginsAndDependencies);
-        effectivePlugins = findEffectivePlugins(pluginsToBeDownloaded);
+
+        allPluginsAndDependencies = new HashMap<>();
+        pluginsToBeDownloaded = new ArrayList<>();
+        for (Plugin plugin : lockfile.toPlugins()) {
+            allPluginsAndDependencies.put(plugin.getName(), plugin);
+            Plugin present = installedPluginVersions.containsKey(plugin.getName()) ?
+                    installedPluginVersions.get(plugin.getName()) : bundledPluginVersions.get(plugin.getName());
+            if (present != null && present.getVersion().equals(plugin.getVersion())) {
+                logVerbose(String.format("%s %s is already installed", plugin.getName(), plugin.getVersion()));
+            } else {
+                pluginsToBeDownloaded.add(plugin);
+            }
+        }
+        // the locked versions replace the installed ones, even newer ones
+        effectivePlugins = findEffectivePlugins(Collections.emptyList());
+        effectivePlugins.putAll(allPluginsAndDependencies);
 
         listPlugins();
-        showSpecificSecurityWarnings(pluginsToBeDownloaded);
+        List<Exception> exceptions = new ArrayList<>();
         checkVersionCompatibility(jenkinsVersion, pluginsToBeDownloaded, exceptions);
         if (!exceptions.isEmpty()) {
             throw new AggregatePluginPrerequisitesNotMetException(exceptions);
@@ -242,7 +452,196 @@ public class PluginManager implements Closeable {
         if (cfg.doDownload()) {
             downloadPlugins(pluginsToBeDownloaded);
         }
-        logMessage("Done");
+    }
+
+    /**
+     * Starts downloading the requested plugins whose version cannot change during the dependency resolution, so they
+     * are downloaded while the rest is resolved. These are the plugins pinned to a version listed in the plugin
+     * versions metadata, without a URL or an incrementals group: dependencies never override a top level version.
+     * The plugins are only downloaded to the temporary download directory, {@link #downloadPlugins(List)} picks them
+     * up and moves them to the plugin directory after the compatibility checks passed.
+     *
+     * @param requestedPlugins plugins requested by the user
+     */
+    void startEarlyDownloads(List<Plugin> requestedPlugins) {
+        Map<String, Plugin> topLevelPlugins = new HashMap<>();
+        for (Plugin plugin : requestedPlugins) {
+            topLevelPlugins.put(plugin.getName(), plugin);
+        }
+        List<Plugin> pinnedPlugins = new ArrayList<>();
+        for (Plugin plugin : topLevelPlugins.values()) {
+            String checksum = getPinnedVersionChecksum(plugin);
+            if (checksum != null && !isInstalledOrBundled(plugin)) {
+                // the same checksum is set by the dependency resolution
+                plugin.setChecksum(checksum);
+                pinnedPlugins.add(plugin);
+            }
+        }
+        if (pinnedPlugins.isEmpty()) {
+            return;
+        }
+        File downloadsTmpDir;
+        try {
+            downloadsTmpDir = Files.createTempDirectory("plugin-installation-manager-downloads").toFile();
+        } catch (IOException e) {
+            logVerbose("Unable to create a temporary directory for early downloads, downloading after the resolution");
+            return;
+        }
+        EarlyDownloads downloads = new EarlyDownloads(downloadsTmpDir);
+        for (Plugin plugin : pinnedPlugins) {
+            File archive = getPluginArchive(downloadsTmpDir, plugin);
+            downloads.start(plugin, archive, () -> downloadEarly(plugin, archive));
+        }
+        logVerbose(String.format("Downloading %d plugins with pinned versions while resolving dependencies",
+                pinnedPlugins.size()));
+        earlyDownloads = downloads;
+    }
+
+    /**
+     * Downloads a plugin before the resolution ended. A failure is only reported if the resolution keeps this version
+     * of the plugin, see {@link EarlyDownloads#await(Plugin)}.
+     */
+    private boolean downloadEarly(Plugin plugin, File archive) {
+        boolean successful = downloadPlugin(plugin, archive);
+        if (!successful) {
+            failedPlugins.removeIf(failed -> failed == plugin);
+        }
+        return successful;
+    }
+
+    @CheckForNull
+    private String getPinnedVersionChecksum(Plugin plugin) {
+        String version = plugin.getVersion().toString();
+        if (StringUtils.isNotEmpty(plugin.getUrl()) || StringUtils.isNotEmpty(plugin.getGroupId()) ||
+                version.equals(Plugin.LATEST) || version.equals(Plugin.EXPERIMENTAL)) {
+            return null;
+        }
+        return getPluginVersionsChecksum(plugin.getName(), version);
+    }
+
+    @CheckForNull
+    private String getPluginVersionsChecksum(String pluginName, String version) {
+        if (pluginInfoJson == null || !pluginInfoJson.has("plugins")) {
+            return null;
+        }
+        JSONObject versions = pluginInfoJson.getJSONObject("plugins").optJSONObject(pluginName);
+        if (versions == null) {
+            return null;
+        }
+        JSONObject versionInfo = versions.optJSONObject(version);
+        return versionInfo != null ? versionInfo.optString(getHashFunction().toString(), null) : null;
+    }
+
+    private boolean isInstalledOrBundled(Plugin plugin) {
+        Plugin installed = installedPluginVersions.containsKey(plugin.getName()) ?
+                installedPluginVersions.get(plugin.getName()) : bundledPluginVersions.get(plugin.getName());
+        if (installed != null && !installed.getVersion().isOlderThan(plugin.getVersion())) {
+            return true;
+        }
+        // likely kept by the reconciliation
+        Plugin reusable = reusablePlugins != null ? reusablePlugins.get(plugin.getName()) : null;
+        return reusable != null && reusable.getVersion().equals(plugin.getVersion());
+    }
+
+    /**
+     * Makes the plugin directory contain what a clean installation of the plugins to download would: the installed
+     * plugins at the version to download, and at the expected checksum if it is known, are kept instead of
+     * downloaded, every other file of the plugin directory is removed by {@link #removeUnreconciledFiles(List)}
+     * once the plugins are installed.
+     *
+     * @param pluginsToDownload plugins to download, resolved for an empty plugin directory
+     * @param installed plugins installed in the plugin directory
+     * @return the plugins which still have to be downloaded
+     */
+    List<Plugin> reconcilePluginDir(List<Plugin> pluginsToDownload, Map<String, Plugin> installed) {
+        List<Plugin> remaining = new ArrayList<>();
+        Set<String> kept = new HashSet<>();
+        for (Plugin plugin : pluginsToDownload) {
+            Plugin installedPlugin = installed.get(plugin.getName());
+            File archive = getPluginArchive(pluginDir, plugin);
+            if (installedPlugin != null && installedPlugin.getVersion().equals(plugin.getVersion()) &&
+                    hasExpectedChecksum(plugin, archive)) {
+                logVerbose(String.format("Keeping %s %s", plugin.getName(), plugin.getVersion()));
+                installedPluginVersions.put(plugin.getName(), installedPlugin);
+                kept.add(archive.getName());
+            } else {
+                remaining.add(plugin);
+            }
+        }
+        String[] files = pluginDir.list();
+        if (files != null) {
+            for (String file : files) {
+                if (!kept.contains(file)) {
+                    unreconciledFiles.add(file);
+                }
+            }
+        }
+        logMessage(String.format("Kept %d of %d plugins in %s, %d plugins will be downloaded", kept.size(),
+                pluginsToDownload.size(), pluginDir, remaining.size()));
+        return remaining;
+    }
+
+    /**
+     * Removes the files of the plugin directory which the reconciliation did not keep. Until the plugins are
+     * installed they are left in place: the installation may restore plugins from them, see
+     * {@link #restoreFromLocalArchive(Plugin, File)}, and the plugin directory is unchanged if it fails.
+     *
+     * @param installedPlugins plugins which were installed into the plugin directory, the failed ones excepted
+     */
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    void removeUnreconciledFiles(List<Plugin> installedPlugins) {
+        Set<String> removals = new HashSet<>(unreconciledFiles);
+        unreconciledFiles.clear();
+        for (Plugin plugin : installedPlugins) {
+            if (!failedPlugins.contains(plugin) && removals.remove(plugin.getArchiveFileName())) {
+                // the replaced archive was moved to the backup, which a clean installation does not have
+                removals.add(plugin.getBackupFileName());
+            }
+        }
+        for (String name : removals) {
+            File file = new File(pluginDir, name);
+            if (!file.exists()) {
+                continue;
+            }
+            try {
+                FileUtils.forceDelete(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to delete: " + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    private boolean hasExpectedChecksum(Plugin plugin, File archive) {
+        if (archive.isDirectory()) {
+            // exploded plugins are identified by their version only
+            return true;
+        }
+        try {
+            verifyChecksum(plugin, archive);
+            return true;
+        } catch (PluginChecksumMismatchException | UncheckedIOException e) {
+            logVerbose(e.getMessage());
+            return false;
+        }
+    }
+
+    private void discardEarlyDownloads() {
+        EarlyDownloads downloads = earlyDownloads;
+        earlyDownloads = null;
+        if (downloads != null) {
+            downloads.close();
+        }
+    }
+
+    private static Map<String, Plugin> joinScan(CompletableFuture<Map<String, Plugin>> scan) {
+        try {
+            return scan.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     void createPluginDir(boolean failIfExists) {
@@ -345,6 +744,9 @@ public class PluginManager implements Closeable {
             logPlugins("Bundled plugins:", new ArrayList<>(bundledPluginVersions.values()));
             logPlugins("All requested plugins:", new ArrayList<>(allPluginsAndDependencies.values()));
             logPlugins("Plugins that will be downloaded:", pluginsToBeDownloaded);
+            if (downloadPlan != null) {
+                logMessage(downloadPlan.describe());
+            }
             outputPluginList(new ArrayList<>(effectivePlugins.values()), () -> new StdOutPluginOutputConverter("Resulting plugin list:"));
         }
     }
@@ -372,8 +774,9 @@ public class PluginManager implements Closeable {
      * Generate plugin list in the format requested by the user.
      * @param plugins plugins to include in the list
      * @param stdOutConverter if the output format is STDOUT, use the supplied converter.
+     * @return formatted plugin list
      */
-    private String formatPluginsList(@NonNull List<Plugin> plugins, @NonNull Supplier<PluginOutputConverter> stdOutConverter) {
+    public String formatPluginsList(@NonNull List<Plugin> plugins, @NonNull Supplier<PluginOutputConverter> stdOutConverter) {
         switch (cfg.getOutputFormat()) {
             case YAML:
                 return new YamlPluginOutputConverter().convert(plugins);
@@ -400,8 +803,16 @@ public class PluginManager implements Closeable {
             logMessage("update center json has no warnings: ignoring");
             return allSecurityWarnings;
         }
-        JSONArray warnings = latestUcJson.getJSONArray("warnings");
+        if (updateCenterMetadata != null) {
+            // already parsed when the shared metadata snapshot was loaded
+            return allSecurityWarnings;
+        }
+        parseSecurityWarnings(latestUcJson.getJSONArray("warnings"), allSecurityWarnings);
+        securityWarningIndex = SecurityWarningIndex.build(allSecurityWarnings);
+        return allSecurityWarnings;
+    }
 
+    private static void parseSecurityWarnings(JSONArray warnings, Map<String, List<SecurityWarning>> target) {
         for (int i = 0; i < warnings.length(); i++) {
             JSONObject warning = warnings.getJSONObject(i);
             String warningType = warning.getString("type");
@@ -429,9 +840,8 @@ public class PluginManager implements Closeable {
                 securityWarning.addSecurityVersion(firstVersion, lastVersion, pattern);
             }
 
-            allSecurityWarnings.computeIfAbsent(warningName, k -> new ArrayList<>()).add(securityWarning);
+            target.computeIfAbsent(warningName, k -> new ArrayList<>()).add(securityWarning);
         }
-        return allSecurityWarnings;
     }
 
     /**
@@ -459,21 +869,31 @@ public class PluginManager implements Closeable {
         // NOTE: By default, the plugin installation manager tool will show security warnings.
         // see: https://github.com/jenkinsci/plugin-installation-manager-tool/issues/258
         if (!cfg.isHideWarnings()) {
-            boolean headingDisplayed = false;
-            for (Plugin plugin : plugins) {
-                if (warningExists(plugin)) {
-                    if (!headingDisplayed) {
-                        logMessage("\nSecurity warnings:");
-                        headingDisplayed = true;
-                    }
-                    String pluginName = plugin.getName();
-                    logMessage(plugin.getSecurityWarnings().stream()
-                            .map(warning -> String.format("%s (%s): %s %s %s", pluginName,
-                                    plugin.getVersion(), warning.getId(), warning.getMessage(), warning.getUrl())).
-                                    collect(Collectors.joining("\n")));
+            List<String> warnings = describeSecurityWarnings(plugins);
+            if (!warnings.isEmpty()) {
+                logMessage("\nSecurity warnings:");
+                logMessage(String.join("\n", warnings));
+            }
+        }
+    }
+
+    /**
+     * Describes the security warnings affecting a list of plugins, one line per warning
+     *
+     * @param plugins plugins to check, at the versions they are installed with
+     * @return e.g. {@code workflow-api (2.30): SECURITY-1 Stored XSS https://jenkins.io/security/advisory/}
+     */
+    public List<String> describeSecurityWarnings(List<Plugin> plugins) {
+        List<String> warnings = new ArrayList<>();
+        for (Plugin plugin : plugins) {
+            if (warningExists(plugin)) {
+                for (SecurityWarning warning : plugin.getSecurityWarnings()) {
+                    warnings.add(String.format("%s (%s): %s %s %s", plugin.getName(), plugin.getVersion(),
+                            warning.getId(), warning.getMessage(), warning.getUrl()));
                 }
             }
         }
+        return warnings;
     }
 
     /**
@@ -530,18 +950,12 @@ public class PluginManager implements Closeable {
      * @return true if security warning for plugin exists, false otherwise
      */
     public boolean warningExists(Plugin plugin) {
-        String pluginName = plugin.getName();
-        List<SecurityWarning> securityWarnings = new ArrayList<>();
-        if (allSecurityWarnings.containsKey(pluginName)) {
-            for (SecurityWarning securityWarning : allSecurityWarnings.get(pluginName)) {
-                for (SecurityWarning.SecurityVersion effectedVersion : securityWarning.getSecurityVersions()) {
-                    Matcher m = effectedVersion.getPattern().matcher(plugin.getVersion().toString());
-                    if (m.matches()) {
-                        securityWarnings.add(securityWarning);
-                    }
-                }
-            }
+        SecurityWarningIndex index = securityWarningIndex;
+        if (index == null) {
+            index = SecurityWarningIndex.build(allSecurityWarnings);
+            securityWarningIndex = index;
         }
+        List<SecurityWarning> securityWarnings = index.find(plugin.getName(), plugin.getVersion());
         plugin.setSecurityWarnings(securityWarnings);
         return !securityWarnings.isEmpty();
     }
@@ -594,37 +1008,69 @@ public class PluginManager implements Closeable {
      */
     @SuppressFBWarnings("PATH_TRAVERSAL_IN")
     public void downloadPlugins(List<Plugin> plugins) {
+        // plugins with pinned versions may already be downloaded, see startEarlyDownloads
+        final EarlyDownloads downloads = earlyDownloads;
+        earlyDownloads = null;
         final File downloadsTmpDir;
-        try {
-            downloadsTmpDir = Files.createTempDirectory("plugin-installation-manager-downloads").toFile();
-        } catch (IOException ex) {
-            throw new DownloadPluginException("Cannot create a temporary directory for downloads", ex);
+        if (downloads != null) {
+            downloadsTmpDir = downloads.downloadsTmpDir;
+        } else {
+            try {
+                downloadsTmpDir = Files.createTempDirectory("plugin-installation-manager-downloads").toFile();
+            } catch (IOException ex) {
+                throw new DownloadPluginException("Cannot create a temporary directory for downloads", ex);
+            }
         }
 
-        // Download to a temporary dir
-        ForkJoinPool ioThreadPool = new ForkJoinPool(64);
+        final DownloadPlan plan = downloadPlan;
+        List<Plugin> scheduled = plugins;
+        if (plan != null) {
+            // fail fast instead of running out of space in the middle of the downloads
+            plan.checkFreeSpace(downloadsTmpDir, pluginDir);
+            scheduled = plan.order(plugins);
+        }
+
+        // Download to a temporary dir, the workers take the plugins in the planned order
+        Queue<Plugin> queue = new ConcurrentLinkedQueue<>(scheduled);
+        ForkJoinPool ioThreadPool = new ForkJoinPool(DOWNLOAD_PARALLELISM);
         try {
-            ioThreadPool.submit(() -> plugins.parallelStream().forEach(plugin -> {
-                boolean successfulDownload = downloadPlugin(plugin, getPluginArchive(downloadsTmpDir, plugin));
-                if (skipFailedPlugins) {
-                    logMessage("SKIP: Unable to download " + plugin.getName());
-                } else if (!successfulDownload) {
-                    throw new DownloadPluginException("Unable to download " + plugin.getName());
-                }
-            })).get();
+            List<ForkJoinTask<?>> workers = new ArrayList<>();
+            for (int i = 0; i < Math.min(DOWNLOAD_PARALLELISM, scheduled.size()); i++) {
+                workers.add(ioThreadPool.submit(() -> {
+                    for (Plugin plugin = queue.poll(); plugin != null; plugin = queue.poll()) {
+                        downloadScheduledPlugin(plugin, downloads, downloadsTmpDir);
+                    }
+                }));
+            }
+            for (ForkJoinTask<?> worker : workers) {
+                worker.get();
+            }
+            if (downloads != null) {
+                downloads.discardUnused();
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
         } catch (ExecutionException e) {
             if (e.getCause() instanceof DownloadPluginException) {
+                // the other workers finish their current plugin, which may be exploded into the plugin directory
+                queue.clear();
+                ioThreadPool.awaitQuiescence(1, TimeUnit.MINUTES);
+                discardExplodedPlugins(plugins);
                 throw (DownloadPluginException) e.getCause();
             } else {
                 e.printStackTrace();
             }
+        } finally {
+            ioThreadPool.shutdown();
+            if (downloads != null) {
+                downloads.close();
+            }
         }
 
         // Filter out failed plugins
         final List<Plugin> failedPlugins = getFailedPlugins();
         if (!skipFailedPlugins && failedPlugins.size() > 0) {
+            discardExplodedPlugins(plugins);
             throw new DownloadPluginException("Some plugin downloads failed: " +
                     failedPlugins.stream().map(Plugin::getName).collect(Collectors.joining(",")) +
                     ". See " + downloadsTmpDir.getAbsolutePath() + " for the temporary download directory");
@@ -632,35 +1078,221 @@ public class PluginManager implements Closeable {
         Set<String> failedPluginNames = new HashSet<>(failedPlugins.size());
         failedPlugins.forEach(plugin -> failedPluginNames.add(plugin.getName()));
 
-        // Copy files over to the destination directory
+        installDownloadedPlugins(plugins, downloadsTmpDir, failedPluginNames);
+    }
+
+    private void downloadScheduledPlugin(Plugin plugin, @CheckForNull EarlyDownloads downloads, File downloadsTmpDir) {
+        Boolean earlyDownload = downloads != null ? downloads.await(plugin) : null;
+        if (Boolean.FALSE.equals(earlyDownload)) {
+            failedPlugins.add(plugin);
+        }
+        boolean successfulDownload = earlyDownload != null ? earlyDownload :
+                downloadPlugin(plugin, getPluginArchive(downloadsTmpDir, plugin));
+        if (successfulDownload && cfg.isExplodePlugins()) {
+            // extracted while the other plugins are still downloading
+            explodeDownloadedPlugin(plugin, getPluginArchive(downloadsTmpDir, plugin));
+        }
+        if (skipFailedPlugins) {
+            logMessage("SKIP: Unable to download " + plugin.getName());
+        } else if (!successfulDownload) {
+            throw new DownloadPluginException("Unable to download " + plugin.getName());
+        }
+    }
+
+    /**
+     * Finds out the size and the source of the plugins to download before downloading them. The sizes are read from
+     * the update center metadata when it has them. If requested, the other plugins are requested with concurrent
+     * {@code HEAD} requests, which are not retried, except the plugins which are already being downloaded. A plugin
+     * whose size is not known is only downloaded last.
+     *
+     * @param plugins plugins to download
+     * @param probe {@code true} to probe the plugins whose size is not in the metadata
+     * @return the download plan
+     */
+    DownloadPlan planDownloads(List<Plugin> plugins, boolean probe) {
+        Map<String, DownloadPlan.Source> sources = new ConcurrentHashMap<>();
+        List<Plugin> toProbe = new ArrayList<>();
+        EarlyDownloads downloads = earlyDownloads;
         for (Plugin plugin : plugins) {
-            String archiveName = plugin.getArchiveFileName();
-            File downloadedPlugin = new File(downloadsTmpDir, archiveName);
+            long size = getMetadataSize(plugin);
+            if (size != DownloadPlan.UNKNOWN_SIZE) {
+                String host = getHost(getPluginDownloadUrl(plugin));
+                sources.put(plugin.getName(), new DownloadPlan.Source(host, size));
+            } else if (probe && (downloads == null || !downloads.contains(plugin))) {
+                toProbe.add(plugin);
+            }
+        }
+        if (!toProbe.isEmpty()) {
+            ForkJoinPool probeThreadPool = new ForkJoinPool(PLAN_PARALLELISM);
+            try {
+                probeThreadPool.submit(() -> toProbe.parallelStream().forEach(plugin ->
+                        sources.put(plugin.getName(), probeDownload(getPluginDownloadUrl(plugin))))).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DownloadPluginException("Interrupted while planning the downloads", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new DownloadPluginException("Unable to plan the downloads", e.getCause());
+            } finally {
+                probeThreadPool.shutdown();
+            }
+        }
+        DownloadPlan plan = new DownloadPlan(plugins, sources);
+        logVerbose(plan.describe());
+        return plan;
+    }
+
+    private long getMetadataSize(Plugin plugin) {
+        if (StringUtils.isNotEmpty(plugin.getUrl()) || StringUtils.isNotEmpty(plugin.getGroupId())) {
+            return DownloadPlan.UNKNOWN_SIZE;
+        }
+        String version = plugin.getVersion().toString();
+        JSONObject latest = latestPlugins != null ? latestPlugins.optJSONObject(plugin.getName()) : null;
+        if (latest != null && version.equals(latest.optString("version", null))) {
+            return latest.optLong("size", DownloadPlan.UNKNOWN_SIZE);
+        }
+        if (pluginInfoJson != null && pluginInfoJson.has("plugins")) {
+            JSONObject versions = pluginInfoJson.getJSONObject("plugins").optJSONObject(plugin.getName());
+            JSONObject versionInfo = versions != null ? versions.optJSONObject(version) : null;
+            if (versionInfo != null) {
+                return versionInfo.optLong("size", DownloadPlan.UNKNOWN_SIZE);
+            }
+        }
+        return DownloadPlan.UNKNOWN_SIZE;
+    }
+
+    /**
+     * Finds out the size of a plugin to download, and the host it is downloaded from after the redirects
+     *
+     * @param url download URL of the plugin
+     * @return where the plugin is downloaded from
+     */
+    @SuppressFBWarnings({"PATH_TRAVERSAL_IN", "HTTP_PARAMETER_POLLUTION"})
+    DownloadPlan.Source probeDownload(String url) {
+        if (url.startsWith("file://")) {
             try {
+                File file = new File(new URI(url));
+                return new DownloadPlan.Source(null, file.isFile() ? file.length() : DownloadPlan.UNKNOWN_SIZE);
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                return new DownloadPlan.Source(null, DownloadPlan.UNKNOWN_SIZE);
+            }
+        }
+        HttpHead httpHead = new HttpHead(url);
+        HttpClientContext context = HttpClientContext.create();
+        CredentialsProvider credentialsProvider = getCredentialsProvider();
+        if (credentialsProvider != null) {
+            context.setCredentialsProvider(credentialsProvider);
+        }
+        try {
+            return getHttpClient().execute(httpHead, response -> {
+                List<URI> locations = context.getRedirectLocations();
+                String host = locations != null && !locations.isEmpty() ?
+                        locations.get(locations.size() - 1).getHost() : httpHead.getURI().getHost();
+                Header length = response.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+                if (response.getStatusLine().getStatusCode() >= 300 || length == null) {
+                    return new DownloadPlan.Source(host, DownloadPlan.UNKNOWN_SIZE);
+                }
+                return new DownloadPlan.Source(host, Long.parseLong(length.getValue().trim()));
+            }, context);
+        } catch (IOException | NumberFormatException e) {
+            logVerbose("Unable to find out the size of " + url + ": " + e.getMessage());
+            return new DownloadPlan.Source(getHost(url), DownloadPlan.UNKNOWN_SIZE);
+        }
+    }
+
+    @CheckForNull
+    private static String getHost(String url) {
+        try {
+            return new URI(url).getHost();
+        } catch (URISyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Moves the downloaded plugins to the plugin directory in a single {@link InstallTransaction}: the plugins are
+     * staged in parallel, then installed with renames, and the plugin directory is rolled back if one of them cannot
+     * be installed.
+     */
+    private void installDownloadedPlugins(List<Plugin> plugins, File downloadsTmpDir, Set<String> failedPluginNames) {
+        recoverInterruptedInstallation();
+        InstallTransaction transaction = new InstallTransaction(pluginDir, logOutput);
+        Map<File, PluginManifest> installedManifests = new ConcurrentHashMap<>();
+        ForkJoinPool ioThreadPool = new ForkJoinPool(INSTALL_PARALLELISM);
+        boolean staged = false;
+        try {
+            ioThreadPool.submit(() -> plugins.parallelStream().forEach(plugin -> {
+                File downloadedPlugin = getPluginArchive(downloadsTmpDir, plugin);
                 if (failedPluginNames.contains(plugin.getName())) {
                     logMessage("Will skip the failed plugin download: " + plugin.getName() +
                             ". See " + downloadedPlugin.getAbsolutePath() + " for the downloaded file");
+                    return;
                 }
                 // We do not double-check overrides here, because findPluginsToDownload() has already done it
-                File finalPath = new File(pluginDir, archiveName);
-                File backupPath = new File(pluginDir, plugin.getBackupFileName());
-                if (finalPath.isDirectory()) {
-                    // Jenkins supports storing plugins as unzipped files with ".jpi" extension
-                    FileUtils.cleanDirectory(finalPath);
-                    Files.delete(finalPath.toPath());
-                }
-                if (finalPath.exists()) {
-                    Files.move(finalPath.toPath(), backupPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                }
-                Files.move(downloadedPlugin.toPath(), finalPath.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            } catch (IOException ex) {
-                if (skipFailedPlugins) {
-                    logMessage("SKIP: Unable to move " + plugin.getName() + " to the plugin directory");
-                } else {
-                    throw new DownloadPluginException("Unable to move " + plugin.getName() + " to the plugin directory", ex);
+                try {
+                    File explodedPlugin = getExplodedPluginStagingDir(plugin);
+                    if (explodedPlugin.isDirectory()) {
+                        transaction.prepare(plugin.getArchiveFileName(), plugin.getBackupFileName(), explodedPlugin);
+                        Files.deleteIfExists(downloadedPlugin.toPath());
+                        PluginManifest manifest = explodedManifests.remove(plugin.getName());
+                        if (manifest != null) {
+                            installedManifests.put(getPluginArchive(pluginDir, plugin), manifest);
+                        }
+                    } else {
+                        transaction.prepare(plugin.getArchiveFileName(), plugin.getBackupFileName(),
+                                downloadedPlugin);
+                    }
+                } catch (IOException ex) {
+                    if (skipFailedPlugins) {
+                        logMessage("SKIP: Unable to move " + plugin.getName() + " to the plugin directory");
+                    } else {
+                        throw new DownloadPluginException("Unable to move " + plugin.getName() + " to the plugin directory", ex);
+                    }
                 }
+            })).get();
+            staged = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadPluginException("Interrupted while moving the plugins to the plugin directory", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new DownloadPluginException("Unable to move the plugins to the plugin directory", e.getCause());
+        } finally {
+            ioThreadPool.shutdown();
+            if (!staged) {
+                // no journal exists yet, recover() would not find the staged plugins
+                ioThreadPool.awaitQuiescence(1, TimeUnit.MINUTES);
+                transaction.abort();
+                discardExplodedPlugins(plugins);
             }
         }
+        try {
+            transaction.commit();
+        } catch (IOException e) {
+            throw new DownloadPluginException("Unable to install the plugins, the plugin directory was rolled back", e);
+        }
+        // renaming the exploded plugins did not change their manifests, they need not be read again
+        installedManifests.forEach(manifestReader::put);
+    }
+
+    /**
+     * Deletes the plugins exploded into the plugin directory for an installation which does not take place
+     */
+    private void discardExplodedPlugins(List<Plugin> plugins) {
+        for (Plugin plugin : plugins) {
+            FileUtils.deleteQuietly(getExplodedPluginStagingDir(plugin));
+            explodedManifests.remove(plugin.getName());
+        }
+    }
+
+    private void recoverInterruptedInstallation() {
+        if (pluginDir != null && pluginDir.isDirectory()) {
+            InstallTransaction.recover(pluginDir, logOutput);
+        }
     }
 
     @SuppressFBWarnings("PATH_TRAVERSAL_IN")
@@ -668,6 +1300,33 @@ public class PluginManager implements Closeable {
         return new File(pluginDir, plugin.getArchiveFileName());
     }
 
+    // inside the plugin directory, so the exploded plugin can be renamed atomically to its final name
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    private File getExplodedPluginStagingDir(Plugin plugin) {
+        return new File(pluginDir, "." + plugin.getArchiveFileName() + ".tmp");
+    }
+
+    private void explodeDownloadedPlugin(Plugin plugin, File archive) {
+        File stagingDir = getExplodedPluginStagingDir(plugin);
+        try {
+            if (stagingDir.exists()) {
+                // left over by an interrupted run
+                FileUtils.deleteDirectory(stagingDir);
+            }
+            PluginManifest manifest = explodePlugin(archive, stagingDir, null);
+            if (manifest != null) {
+                explodedManifests.put(plugin.getName(), manifest);
+            }
+            logVerbose("Exploded " + plugin.getName());
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(stagingDir);
+            if (!skipFailedPlugins) {
+                throw new DownloadPluginException("Unable to explode " + plugin.getName(), e);
+            }
+            logMessage("SKIP: Unable to explode " + plugin.getName() + ", installing the archive instead");
+        }
+    }
+
     /**
      * Given a list of plugins, finds the recursive set of all dependent plugins. If multiple plugins rely on different
      * versions of the same plugin, the higher version required will replace the lower version dependency
@@ -694,11 +1353,23 @@ public class PluginManager implements Closeable {
             topLevelDependencies.put(requestedPlugin.getName(), requestedPlugin);
         }
         Map<String, Plugin> allPluginDependencies = new HashMap<>(topLevelDependencies);
+        IncrementalResolution incrementalResolution = cfg.isIncrementalResolution() ?
+                IncrementalResolution.load(getResolutionFile(), getResolutionKey(), requestedPlugins) : null;
 
         for (Plugin requestedPlugin : requestedPlugins) {
             calculateChecksum(requestedPlugin);
             //for each requested plugin, find all the dependent plugins that will be downloaded (including requested plugin)
-            Map<String, Plugin> dependencies = resolveRecursiveDependencies(requestedPlugin, topLevelDependencies, exceptions);
+            Map<String, Plugin> dependencies = incrementalResolution != null ?
+                    incrementalResolution.reuse(requestedPlugin) : null;
+            if (dependencies != null) {
+                logVerbose("Reusing the previous dependency resolution of " + requestedPlugin.getName());
+            } else {
+                int failures = exceptions != null ? exceptions.size() : 0;
+                dependencies = resolveRecursiveDependencies(requestedPlugin, topLevelDependencies, exceptions);
+                if (incrementalResolution != null && (exceptions == null || exceptions.size() == failures)) {
+                    incrementalResolution.record(requestedPlugin, dependencies);
+                }
+            }
 
             for (Plugin dependentPlugin : dependencies.values()) {
                 String dependencyName = dependentPlugin.getName();
@@ -713,7 +1384,57 @@ public class PluginManager implements Closeable {
                 }
             }
         }
-        return removeOptional(allPluginDependencies);
+        Map<String, Plugin> resolved = removeOptional(allPluginDependencies);
+        if (incrementalResolution != null) {
+            completeIncrementalResolution(incrementalResolution, requestedPlugins.size(), resolved);
+        }
+        return resolved;
+    }
+
+    private void completeIncrementalResolution(IncrementalResolution incrementalResolution, int requested,
+                                               Map<String, Plugin> resolved) {
+        logVerbose(String.format("Reused the previous dependency resolution of %d of %d requested plugins",
+                incrementalResolution.getReused(), requested));
+        if (incrementalResolution.hasPrevious()) {
+            List<String> changes = incrementalResolution.describeChanges(resolved);
+            if (changes.isEmpty()) {
+                logMessage("No changes since the previous resolution");
+            } else {
+                logMessage("Changes since the previous resolution:");
+                for (String change : changes) {
+                    logMessage("  " + change);
+                }
+            }
+        }
+        File resolutionFile = getResolutionFile();
+        try {
+            incrementalResolution.save(resolved);
+        } catch (IOException e) {
+            logMessage("Unable to save the dependency resolution to " + resolutionFile + ": " + e.getMessage());
+        }
+    }
+
+    // one resolution per plugin directory, as different directories usually hold different plugin sets
+    private File getResolutionFile() {
+        String pluginDir = cfg.getPluginDir() != null ? cfg.getPluginDir().getAbsolutePath() : "";
+        return new File(cfg.getCachePath().toFile(),
+                "resolution-" + DigestUtils.sha256Hex(pluginDir).substring(0, 16) + ".json");
+    }
+
+    /**
+     * Identifies everything the dependency resolution depends on besides the requested plugins: the update center
+     * metadata, the Jenkins version, the version strategy and the hash function of the checksums.
+     */
+    @CheckForNull
+    private String getResolutionKey() {
+        if (latestUcJson == null || !latestUcJson.has("generationTimestamp")) {
+            return null;
+        }
+        VersionNumber jenkinsVersion = getJenkinsVersion();
+        return String.join(" ", jenkinsUcLatest, latestUcJson.getString("generationTimestamp"),
+                pluginInfoJson != null ? pluginInfoJson.optString("generationTimestamp") : "",
+                String.valueOf(jenkinsVersion), String.valueOf(useLatestSpecified), String.valueOf(useLatestAll),
+                getHashFunction().toString());
     }
 
     private Map<String, Plugin> removeOptional(Map<String, Plugin> plugins) {
@@ -822,27 +1543,66 @@ public class PluginManager implements Closeable {
         } else {
             logVerbose("Cache miss for: " + cacheKey);
         }
-        final String response;
+        if (cacheKey != null) {
+            JSONObject staleJsonObject = cm.retrieveStaleFromCache(cacheKey);
+            if (staleJsonObject != null) {
+                logVerbose("Returning stale cached value for: " + cacheKey + ", refreshing it in the background");
+                refreshInBackground(url, cacheKey);
+                return staleJsonObject;
+            }
+        }
+        return fetchJson(url, cacheKey);
+    }
+
+    private JSONObject fetchJson(URL url, String cacheKey) {
+        if (cacheKey == null) {
+            return downloadJson(url, null);
+        }
+        // only one thread or process downloads a given key, the others wait for it and read its result
+        return cm.retrieveFromCacheOrLoad(cacheKey, () -> downloadJson(url, cacheKey));
+    }
+
+    private JSONObject downloadJson(URL url, String cacheKey) {
         try {
             if (url.getProtocol().equalsIgnoreCase("http") || url.getProtocol().equalsIgnoreCase("https")) {
-                response = getViaHttpWithResponseHandler(
+                return getViaHttpWithResponseHandler(
                   url.toString(),
-                  new BasicResponseHandler(),
+                  new JsonResponseHandler(),
                   cacheKey,
                   e -> String.format("Unable to retrieve JSON from %s: %s", url, e.getMessage()),
-                  3);
-            } else {
-                response = IOUtils.toString(url, StandardCharsets.UTF_8);
+                  DEFAULT_MAX_RETRIES);
+            }
+            try (InputStream stream = url.openStream()) {
+                return JsonResponseHandler.parse(stream, StandardCharsets.UTF_8);
             }
-            String result = removePossibleWrapperText(response);
-            JSONObject json = new JSONObject(result);
-            cm.addToCache(cacheKey, json);
-            return json;
         } catch (IOException e) {
             throw new UpdateCenterInfoRetrievalException("Error getting update center json", e);
         }
     }
 
+    private synchronized void refreshInBackground(URL url, String cacheKey) {
+        if (!refreshingCacheKeys.add(cacheKey)) {
+            return;
+        }
+        if (cacheRefreshExecutor == null) {
+            cacheRefreshExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "cache-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        cacheRefreshExecutor.execute(() -> {
+            try {
+                fetchJson(url, cacheKey);
+                logVerbose("Refreshed cache entry: " + cacheKey);
+            } catch (RuntimeException e) {
+                logMessage("Unable to refresh cache entry " + cacheKey + ": " + e.getMessage());
+            } finally {
+                refreshingCacheKeys.remove(cacheKey);
+            }
+        });
+    }
+
     /**
      * Gets update center json, which is later used to determine plugin dependencies and security warnings
      * @param jenkinsVersion the version of Jenkins to use
@@ -872,6 +1632,48 @@ public class PluginManager implements Closeable {
         pluginInfoJson = getJson(cfg.getJenkinsPluginInfo(), "plugin-versions");
     }
 
+    /**
+     * Loads the update center, plugin versions and security warnings once and returns them as an immutable snapshot.
+     * The snapshot can be shared between many {@link PluginManager} instances, see
+     * {@link #setUpdateCenterMetadata(UpdateCenterMetadata)} and {@link BatchResolver}.
+     *
+     * @param includeExperimental {@code true} to also load the experimental update center
+     * @return the loaded metadata
+     */
+    public UpdateCenterMetadata loadUpdateCenterMetadata(boolean includeExperimental) {
+        VersionNumber jenkinsVersion = getJenkinsVersion();
+        getUCJson(jenkinsVersion);
+        if (includeExperimental) {
+            resolveExperimentalUcIfRequired();
+        }
+        Map<String, List<SecurityWarning>> securityWarnings = new HashMap<>();
+        if (latestUcJson.has("warnings")) {
+            parseSecurityWarnings(latestUcJson.getJSONArray("warnings"), securityWarnings);
+        }
+        return new UpdateCenterMetadata(jenkinsVersion, latestUcJson, pluginInfoJson,
+                includeExperimental ? experimentalUcJson : null, securityWarnings);
+    }
+
+    /**
+     * Uses a previously loaded metadata snapshot instead of downloading the update center metadata.
+     * Call {@link #start(boolean)} with {@code false} afterwards.
+     *
+     * @param metadata shared update center metadata
+     */
+    public void setUpdateCenterMetadata(UpdateCenterMetadata metadata) {
+        this.updateCenterMetadata = metadata;
+        latestUcJson = metadata.getUpdateCenter();
+        latestPlugins = latestUcJson.getJSONObject("plugins");
+        pluginInfoJson = metadata.getPluginVersions();
+        JSONObject experimental = metadata.getExperimentalUpdateCenter();
+        if (experimental != null) {
+            experimentalUcJson = experimental;
+            experimentalPlugins = experimental.getJSONObject("plugins");
+        }
+        allSecurityWarnings = metadata.getSecurityWarnings();
+        securityWarningIndex = metadata.getSecurityWarningIndex();
+    }
+
     private static String getCacheSuffix(VersionNumber jenkinsVersion) {
         return jenkinsVersion != null ? "-" + jenkinsVersion : "";
     }
@@ -944,52 +1746,32 @@ public class PluginManager implements Closeable {
      * @return list of dependencies that were parsed from the plugin's manifest file
      */
     public List<Plugin> resolveDependenciesFromManifest(Plugin plugin) {
-        // TODO(oleg_nenashev): refactor to use ManifestTools. This logic not only resolves dependencies, but also modifies the plugin's metadata
+        // This logic not only resolves dependencies, but also modifies the plugin's metadata
         List<Plugin> dependentPlugins = new ArrayList<>();
         try {
-            File tempFile = Files.createTempFile(FilenameUtils.getName(plugin.getName()), ".jpi").toFile();
-            logVerbose(
-                    String.format("%nResolving dependencies of %s by downloading plugin to temp file %s and parsing " +
-                            "MANIFEST.MF", plugin.getName(), tempFile.toString()));
-            if (!downloadPlugin(plugin, tempFile)) {
-                Files.deleteIfExists(tempFile.toPath());
-                throw new DownloadPluginException("Unable to resolve dependencies for " + plugin.getName());
+            PluginManifest manifest = cfg.doDownload() ? streamPluginManifest(plugin) : null;
+            if (manifest == null) {
+                manifest = downloadPluginManifest(plugin);
             }
-
             if (plugin.getVersion().toString().equals(Plugin.LATEST) ||
                     plugin.getVersion().toString().equals(Plugin.EXPERIMENTAL)) {
-                String version = getAttributeFromManifest(tempFile, "Plugin-Version");
+                String version = manifest.getPluginVersion();
                 if (!StringUtils.isEmpty(version)) {
                     plugin.setVersion(new VersionNumber(version));
                 }
             }
-            String minimumJenkinsVersion = getAttributeFromManifest(tempFile, "Jenkins-Version");
-            if (minimumJenkinsVersion == null) {
-                minimumJenkinsVersion = getAttributeFromManifest(tempFile, "Hudson-Version");
-            }
+            String minimumJenkinsVersion = manifest.getRequiredCoreVersion();
             if (minimumJenkinsVersion == null) {
                 throw new PluginDependencyException(plugin, "does not contain a Jenkins-Version attribute in the MANIFEST.MF");
             }
             plugin.setJenkinsVersion(minimumJenkinsVersion);
 
-            String dependencyString = getAttributeFromManifest(tempFile, "Plugin-Dependencies");
-
             //not all plugin Manifests contain the Plugin-Dependencies field
-            if (StringUtils.isEmpty(dependencyString)) {
+            if (StringUtils.isEmpty(manifest.getPluginDependencies())) {
                 logVerbose("\n" + plugin.getName() + " has no dependencies");
                 return dependentPlugins;
             }
-            String[] dependencies = dependencyString.split(",");
-
-            for (String dependency : dependencies) {
-                String[] pluginInfo = dependency
-                        .replace(";resolution:=optional", "")
-                        .split(":");
-                String pluginName = pluginInfo[0];
-                String pluginVersion = pluginInfo[1];
-                Plugin dependentPlugin = new Plugin(pluginName, pluginVersion, null, null);
-                dependentPlugin.setOptional(dependency.contains("resolution:=optional"));
-
+            for (Plugin dependentPlugin : manifest.getDependencies()) {
                 dependentPlugins.add(dependentPlugin);
                 dependentPlugin.setParent(plugin);
             }
@@ -998,8 +1780,6 @@ public class PluginManager implements Closeable {
                             dependentPlugins.stream()
                                     .map(p -> p.getName() + " " + p.getVersion())
                                     .collect(Collectors.joining("\n")));
-
-            Files.delete(tempFile.toPath());
             return dependentPlugins;
         } catch (IOException e) {
             logMessage(String.format("Unable to resolve dependencies for %s", plugin.getName()));
@@ -1008,6 +1788,90 @@ public class PluginManager implements Closeable {
         }
     }
 
+    private PluginManifest downloadPluginManifest(Plugin plugin) throws IOException {
+        File tempFile = Files.createTempFile(FilenameUtils.getName(plugin.getName()), ".jpi").toFile();
+        logVerbose(
+                String.format("%nResolving dependencies of %s by downloading plugin to temp file %s and parsing " +
+                        "MANIFEST.MF", plugin.getName(), tempFile.toString()));
+        try {
+            if (!downloadPlugin(plugin, tempFile)) {
+                throw new DownloadPluginException("Unable to resolve dependencies for " + plugin.getName());
+            }
+            PluginManifest manifest = readPluginManifest(tempFile);
+            if (manifest == null) {
+                throw new DownloadPluginException("Unable to read the manifest of " + plugin.getName());
+            }
+            return manifest;
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Downloads the plugin into the temporary download directory and returns its manifest as soon as it streamed
+     * past, so the dependency resolution continues while the rest of the archive is still downloaded. The download is
+     * registered like the ones of {@link #startEarlyDownloads(List)}, so {@link #downloadPlugins(List)} reuses the
+     * archive once it is complete and validated.
+     *
+     * @param plugin plugin to resolve the dependencies of
+     * @return the plugin manifest, or {@code null} if the plugin cannot be downloaded to the temporary download
+     *         directory and has to be downloaded to a temporary file instead
+     */
+    @CheckForNull
+    private PluginManifest streamPluginManifest(Plugin plugin) {
+        EarlyDownloads downloads = earlyDownloads;
+        if (downloads == null) {
+            try {
+                downloads = new EarlyDownloads(
+                        Files.createTempDirectory("plugin-installation-manager-downloads").toFile());
+            } catch (IOException e) {
+                logVerbose("Unable to create a temporary directory for early downloads, downloading to a temp file");
+                return null;
+            }
+            earlyDownloads = downloads;
+        } else if (downloads.contains(plugin)) {
+            // another version of the plugin is already being written to the archive
+            return null;
+        }
+        File archive = getPluginArchive(downloads.downloadsTmpDir, plugin);
+        logVerbose(String.format("%nResolving dependencies of %s by parsing MANIFEST.MF while downloading the plugin " +
+                "to %s", plugin.getName(), archive));
+        CompletableFuture<PluginManifest> manifest = new CompletableFuture<>();
+        streamedManifests.put(archive, manifest);
+        downloads.start(plugin, archive, () -> {
+            try {
+                boolean successful = downloadEarly(plugin, archive);
+                if (!successful) {
+                    manifest.completeExceptionally(
+                            new DownloadPluginException("Unable to resolve dependencies for " + plugin.getName()));
+                } else if (!manifest.isDone()) {
+                    // not downloaded via HTTP, or the manifest could not be found in the stream
+                    manifest.complete(readPluginManifest(archive));
+                }
+                return successful;
+            } catch (RuntimeException e) {
+                manifest.completeExceptionally(e);
+                throw e;
+            } finally {
+                streamedManifests.remove(archive);
+            }
+        });
+
+        PluginManifest result;
+        try {
+            result = manifest.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        if (result == null) {
+            throw new DownloadPluginException("Unable to read the manifest of " + plugin.getName());
+        }
+        return result;
+    }
+
     /**
      * Given a plugin and json that contains plugin information, determines the dependencies and returns the list of
      * dependencies.
@@ -1212,6 +2076,12 @@ public class PluginManager implements Closeable {
             logVerbose(pluginName + " already installed, skipping");
             return true;
         }
+        if (restoreFromLocalArchive(plugin, location != null ? location : getPluginArchive(pluginDir, plugin))) {
+            if (location == null) {
+                installedPluginVersions.put(plugin.getName(), plugin);
+            }
+            return true;
+        }
         String pluginDownloadUrl = getPluginDownloadUrl(plugin);
         boolean successfulDownload = downloadToFile(pluginDownloadUrl, plugin, location);
         if (successfulDownload && location == null) {
@@ -1221,6 +2091,73 @@ public class PluginManager implements Closeable {
         return successfulDownload;
     }
 
+    /**
+     * Copies a plugin from an archive or backup in the plugin directory which has the expected checksum instead of
+     * downloading it, e.g. when rolling back to the version of the backup. Candidates are the archives and backups
+     * named after the plugin, including versioned copies like {@code mailer-1.32.hpi}. Their checksums are computed
+     * once per run.
+     *
+     * @param plugin plugin to install, nothing is restored if its checksum is unknown
+     * @param target file to copy the plugin to
+     * @return {@code true} if the plugin was restored
+     */
+    boolean restoreFromLocalArchive(Plugin plugin, File target) {
+        String expectedChecksum = plugin.getChecksum();
+        if (expectedChecksum == null || pluginDir == null) {
+            return false;
+        }
+        byte[] expectedChecksumDigest;
+        try {
+            expectedChecksumDigest = Base64.getDecoder().decode(expectedChecksum);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        File[] candidates = pluginDir.listFiles((dir, name) -> isLocalArchiveOf(plugin.getName(), name));
+        if (candidates == null) {
+            return false;
+        }
+        Arrays.sort(candidates);
+        for (File candidate : candidates) {
+            if (!candidate.isFile() || candidate.getAbsoluteFile().equals(target.getAbsoluteFile())) {
+                continue;
+            }
+            byte[] checksum;
+            try {
+                checksum = localArchiveChecksums.computeIfAbsent(candidate, this::calculateChecksum);
+            } catch (UncheckedIOException e) {
+                logVerbose("Unable to compute the checksum of " + candidate + ": " + e.getMessage());
+                continue;
+            }
+            if (MessageDigest.isEqual(checksum, expectedChecksumDigest)) {
+                try {
+                    Files.copy(candidate.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException e) {
+                    logVerbose("Unable to restore " + plugin.getName() + " from " + candidate + ": " + e.getMessage());
+                    return false;
+                }
+                plugin.setFile(target);
+                logMessage(String.format("%s restored from %s without downloading it", plugin.getName(),
+                        candidate.getName()));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isLocalArchiveOf(String pluginName, String fileName) {
+        if (!fileName.startsWith(pluginName) ||
+                !(fileName.endsWith(".jpi") || fileName.endsWith(".hpi") || fileName.endsWith(".bak"))) {
+            return false;
+        }
+        String rest = fileName.substring(pluginName.length());
+        if (rest.length() > 1 && rest.charAt(0) == '-' && Character.isDigit(rest.charAt(1))) {
+            // versioned copy
+            return true;
+        }
+        return rest.equals(".jpi") || rest.equals(".hpi") || rest.equals(".bak") ||
+                rest.equals(".jpi.bak") || rest.equals(".hpi.bak");
+    }
+
     /**
      * Determines the plugin download url. If a url is specified from the CLI or plugins file, that url will be used
      * and the plugin verison and Jenkins version will be ignored. If no url is specified, the url will be
@@ -1303,7 +2240,16 @@ public class PluginManager implements Closeable {
         boolean success = true;
 
         if(urlString.startsWith("http://") || urlString.startsWith("https://")){
-            success = downloadHttpToFile(urlString, plugin, pluginFile, maxRetries);
+            // skips the redirects to the mirror
+            String mirrorUrl = getMirrorUrl(urlString);
+            success = mirrorUrl != null && downloadHttpToFile(mirrorUrl, plugin, pluginFile, 1);
+            if (mirrorUrl != null && !success) {
+                logVerbose("Downloading from the mirror failed, downloading from " + urlString);
+                forgetMirrorBase(mirrorUrl);
+            }
+            if (!success) {
+                success = downloadHttpToFile(urlString, plugin, pluginFile, maxRetries);
+            }
 
             if (!success && !urlString.startsWith(MIRROR_FALLBACK_BASE_URL)) {
                 logMessage("Downloading from mirrors failed, falling back to " + MIRROR_FALLBACK_BASE_URL);
@@ -1348,7 +2294,12 @@ public class PluginManager implements Closeable {
      */
     protected boolean downloadHttpToFile(String pluginUrl, Plugin plugin, File pluginFile, int maxRetries){
         try {
-            getViaHttpWithResponseHandler(pluginUrl, new FileDownloadResponseHandler(pluginFile), plugin.getName(),
+            // the dependency resolution may wait for the manifest, see streamPluginManifest
+            CompletableFuture<PluginManifest> manifest = streamedManifests.get(pluginFile);
+            ResponseHandler<File> responseHandler = manifest != null ?
+                    new ManifestStreamingResponseHandler(pluginFile, manifest) :
+                    new FileDownloadResponseHandler(pluginFile);
+            getViaHttpWithResponseHandler(pluginUrl, responseHandler, plugin.getName(),
                     e -> String.format("Unable to resolve plugin URL %s, or download plugin %s to file: %s", pluginUrl,
                             plugin.getName(), e.getMessage()),
                     maxRetries);
@@ -1377,16 +2328,26 @@ public class PluginManager implements Closeable {
             context.setCredentialsProvider(credentialsProvider);
         }
         HttpGet httpGet = new HttpGet(url);
+        String host = httpGet.getURI().getHost();
         boolean success = false;
-        // TODO: retry logic should rather be implemented via DefaultHttpRequestRetruHandler, there is no need for an additional retry
-        for (int i = 0; i < maxRetries; i++) {
+        for (int i = 0; ; i++) {
+            retryPolicy.beforeRequest(host);
+            // the Retry-After header is read from the response of this attempt only
+            context.removeAttribute(HttpClientContext.HTTP_RESPONSE);
             try {
                 T response = httpClient.execute(httpGet, responseHandler, context);
+                retryPolicy.recordSuccess(host);
                 success = true;
                 return response;
             } catch (IOException e) {
+                // a failing mirror must not open the circuit of the host redirecting to it
+                String failedHost = getFinalHost(context, host);
+                if (!failedHost.equals(host)) {
+                    retryPolicy.recordSuccess(host);
+                }
+                retryPolicy.recordFailure(failedHost, e);
                 String message = ioExceptionMessageSupplier.apply(e);
-                if (i < maxRetries - 1) {
+                if (i < maxRetries - 1 && retryPolicy.awaitRetry(failedHost, e, i + 1, getRetryAfter(context))) {
                     logMessage(message);
                 } else {
                     throw new IOException(message, e);
@@ -1395,6 +2356,15 @@ public class PluginManager implements Closeable {
                 // get final URI (after all redirects)
                 List<URI> locations = context.getRedirectLocations();
                 if (locations != null) {
+                    if (success && mirrorOrigins.size() < MAX_MIRROR_ORIGINS) {
+                        String origin = getOrigin(locations.get(locations.size() - 1));
+                        if (origin != null) {
+                            mirrorOrigins.add(origin);
+                        }
+                    }
+                    if (success) {
+                        learnMirrorBase(url, locations.get(locations.size() - 1));
+                    }
                     String message = String.format("%s %s from %s (attempt %d of %d)",
                             success ? "Downloaded" : "Tried downloading", resourceName,
                             locations.get(locations.size() - 1), i + 1, maxRetries);
@@ -1406,7 +2376,237 @@ public class PluginManager implements Closeable {
                 }
             }
         }
-        throw new IllegalStateException("Reached maximum number of retries without triggering IOException");
+    }
+
+    /**
+     * Gets the host a request ended on
+     *
+     * @param context context of the request
+     * @param host host of the request
+     * @return the host of the last redirect location, or the host of the request if it was not redirected
+     */
+    private static String getFinalHost(HttpClientContext context, String host) {
+        List<URI> locations = context.getRedirectLocations();
+        if (locations == null || locations.isEmpty()) {
+            return host;
+        }
+        String finalHost = locations.get(locations.size() - 1).getHost();
+        return finalHost != null ? finalHost : host;
+    }
+
+    /**
+     * Resolves and opens pooled connections to the plugin download hosts and to the mirrors of the previous runs in
+     * the background, so the plugin downloads do not wait for the DNS, TCP and TLS handshakes. The connections are
+     * opened with {@code HEAD} requests which are not redirected, and failures are ignored.
+     */
+    void warmUpConnections() {
+        Set<String> origins = getWarmUpOrigins();
+        if (origins.isEmpty()) {
+            return;
+        }
+        logVerbose("Warming up the connections to " + String.join(", ", origins));
+        ExecutorService warmUpExecutor = Executors.newFixedThreadPool(Math.min(WARM_UP_PARALLELISM, origins.size()),
+                r -> {
+                    Thread thread = new Thread(r, "plugin-manager-connection-warm-up");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        for (String origin : origins) {
+            warmUpExecutor.execute(() -> warmUpConnection(origin));
+        }
+        // the submitted warm-ups still run
+        warmUpExecutor.shutdown();
+    }
+
+    Set<String> getWarmUpOrigins() {
+        Set<String> origins = new LinkedHashSet<>();
+        List<String> downloadBases = new ArrayList<>();
+        if (cfg.getJenkinsUcDownloadUrl() != null) {
+            downloadBases.add(cfg.getJenkinsUcDownloadUrl().toString());
+        }
+        String jenkinsUcDownload = System.getenv("JENKINS_UC_DOWNLOAD");
+        if (StringUtils.isNotEmpty(jenkinsUcDownload)) {
+            downloadBases.add(jenkinsUcDownload);
+        }
+        downloadBases.add(cfg.getJenkinsUc().toString());
+        for (String downloadBase : downloadBases) {
+            try {
+                String origin = getOrigin(new URI(downloadBase));
+                if (origin != null) {
+                    origins.add(origin);
+                }
+            } catch (URISyntaxException e) {
+                logVerbose("Not warming up the connections to " + downloadBase + ": " + e.getMessage());
+            }
+        }
+        JSONObject cached = cm.retrieveFromCache(MIRROR_ORIGINS_CACHE_KEY, MIRROR_ORIGINS_TIME_TO_LIVE);
+        JSONArray mirrors = cached != null ? cached.optJSONArray("origins") : null;
+        if (mirrors != null) {
+            for (int i = 0; i < mirrors.length() && i < MAX_MIRROR_ORIGINS; i++) {
+                String origin = mirrors.optString(i, null);
+                if (origin != null && (origin.startsWith("https://") || origin.startsWith("http://"))) {
+                    origins.add(origin);
+                }
+            }
+        }
+        for (String mirrorBase : mirrorBases.values()) {
+            String origin = getOrigin(URI.create(mirrorBase));
+            if (origin != null) {
+                origins.add(origin);
+            }
+        }
+        return origins;
+    }
+
+    private void warmUpConnection(String origin) {
+        try {
+            HttpHead httpHead = new HttpHead(origin + "/");
+            // resolved by the JVM DNS cache for the next requests
+            InetAddress.getAllByName(httpHead.getURI().getHost());
+            httpHead.setConfig(RequestConfig.custom()
+                    .setRedirectsEnabled(false)
+                    .setConnectTimeout(WARM_UP_TIMEOUT_MILLIS)
+                    .setConnectionRequestTimeout(WARM_UP_TIMEOUT_MILLIS)
+                    .setSocketTimeout(WARM_UP_TIMEOUT_MILLIS)
+                    .build());
+            // the connection is released to the pool once the response is handled
+            getHttpClient().execute(httpHead, response -> null);
+            logVerbose("Warmed up the connection to " + origin);
+        } catch (IOException | RuntimeException e) {
+            logVerbose("Unable to warm up the connection to " + origin + ": " + e.getMessage());
+        }
+    }
+
+    private void saveMirrorOrigins() {
+        if (mirrorOrigins.isEmpty()) {
+            return;
+        }
+        try {
+            cm.createCache();
+            List<String> origins = new ArrayList<>(mirrorOrigins);
+            Collections.sort(origins);
+            cm.addToCache(MIRROR_ORIGINS_CACHE_KEY, new JSONObject().put("origins", new JSONArray(origins)));
+        } catch (UncheckedIOException e) {
+            logVerbose("Unable to remember the mirrors: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Learns the mirror a download was redirected to, so the next downloads below the same base URL go to the mirror
+     * directly. The base URLs are what remains of the requested and of the final URL without their common path
+     * suffix, e.g. {@code https://updates.jenkins.io/download/plugins} and {@code https://mirror/jenkins/plugins} for
+     * the suffix {@code /mailer/1.32/mailer.hpi}. The first mirror learned for a base URL is kept for the run.
+     *
+     * @param requested requested URL
+     * @param resolved final URL after the redirects
+     */
+    void learnMirrorBase(String requested, URI resolved) {
+        URI requestedUri;
+        try {
+            requestedUri = new URI(requested);
+        } catch (URISyntaxException e) {
+            return;
+        }
+        if (requestedUri.getRawQuery() != null || resolved.getRawQuery() != null || resolved.getRawPath() == null ||
+                requestedUri.getRawPath() == null || getOrigin(resolved) == null) {
+            // e.g. signed URLs, which cannot be reused for other files
+            return;
+        }
+        String[] requestedSegments = requestedUri.getRawPath().split("/", -1);
+        String[] resolvedSegments = resolved.getRawPath().split("/", -1);
+        int common = 0;
+        while (common < requestedSegments.length - 1 && common < resolvedSegments.length - 1 &&
+                requestedSegments[requestedSegments.length - 1 - common]
+                        .equals(resolvedSegments[resolvedSegments.length - 1 - common])) {
+            common++;
+        }
+        if (common < MIRRORED_PATH_SEGMENTS) {
+            return;
+        }
+        String suffix = String.join("/", Arrays.copyOfRange(requestedSegments,
+                requestedSegments.length - MIRRORED_PATH_SEGMENTS, requestedSegments.length));
+        String requestedString = requestedUri.toString();
+        String resolvedString = resolved.toString();
+        String requestedBase = requestedString.substring(0, requestedString.length() - suffix.length() - 1);
+        String mirrorBase = resolvedString.substring(0, resolvedString.length() - suffix.length() - 1);
+        if (!requestedBase.equals(mirrorBase) && mirrorBases.putIfAbsent(requestedBase, mirrorBase) == null) {
+            logVerbose("Downloading the plugins below " + requestedBase + " from the mirror " + mirrorBase);
+        }
+    }
+
+    /**
+     * Gets the URL on the learned mirror of a download URL
+     *
+     * @param url download URL
+     * @return the URL of the same file on the mirror, or {@code null} if no mirror is known for the URL
+     */
+    @CheckForNull
+    String getMirrorUrl(String url) {
+        for (Map.Entry<String, String> mirrorBase : mirrorBases.entrySet()) {
+            if (url.startsWith(mirrorBase.getKey() + "/")) {
+                return mirrorBase.getValue() + url.substring(mirrorBase.getKey().length());
+            }
+        }
+        return null;
+    }
+
+    private void forgetMirrorBase(String mirrorUrl) {
+        mirrorBases.entrySet().removeIf(mirrorBase -> mirrorUrl.startsWith(mirrorBase.getValue() + "/"));
+    }
+
+    void loadMirrorBases() {
+        Duration ttl = cfg.getMirrorCacheTtl();
+        if (ttl.isZero() || ttl.isNegative()) {
+            return;
+        }
+        JSONObject cached = cm.retrieveFromCache(MIRROR_BASES_CACHE_KEY, ttl);
+        if (cached == null) {
+            return;
+        }
+        for (String requestedBase : cached.keySet()) {
+            String mirrorBase = cached.optString(requestedBase, null);
+            if (mirrorBase != null && (mirrorBase.startsWith("https://") || mirrorBase.startsWith("http://"))) {
+                mirrorBases.putIfAbsent(requestedBase, mirrorBase);
+            }
+        }
+    }
+
+    void saveMirrorBases() {
+        Duration ttl = cfg.getMirrorCacheTtl();
+        if (ttl.isZero() || ttl.isNegative() || mirrorBases.isEmpty()) {
+            return;
+        }
+        try {
+            cm.createCache();
+            cm.addToCache(MIRROR_BASES_CACHE_KEY, new JSONObject(mirrorBases));
+        } catch (UncheckedIOException e) {
+            logVerbose("Unable to remember the mirror: " + e.getMessage());
+        }
+    }
+
+    @CheckForNull
+    static String getOrigin(URI uri) {
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return null;
+        }
+        return uri.getScheme().toLowerCase(Locale.ROOT) + "://" + uri.getHost() +
+                (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+    }
+
+    @CheckForNull
+    private static String getRetryAfter(HttpClientContext context) {
+        HttpResponse response = context.getResponse();
+        Header retryAfter = response != null ? response.getFirstHeader(HttpHeaders.RETRY_AFTER) : null;
+        return retryAfter != null ? retryAfter.getValue() : null;
+    }
+
+    /**
+     * Gets the counters of the HTTP requests and retries of this run
+     *
+     * @return counter names and values
+     */
+    public Map<String, Long> getRetryCounters() {
+        return retryPolicy.getCounters();
     }
 
     /**
@@ -1540,7 +2740,8 @@ public class PluginManager implements Closeable {
      * @return plugin version
      */
     public String getPluginVersion(File file) {
-        String version = getAttributeFromManifest(file, "Plugin-Version");
+        PluginManifest manifest = readPluginManifest(file);
+        String version = manifest != null ? manifest.getPluginVersion() : null;
         if (StringUtils.isEmpty(version)) {
             logMessage("Unable to get plugin version from " + file);
             return "";
@@ -1548,6 +2749,24 @@ public class PluginManager implements Closeable {
         return version;
     }
 
+    /**
+     * Reads the manifest of a plugin archive or of an exploded plugin directory, archives which did not change since
+     * they were last read are not opened again
+     *
+     * @param file plugin .hpi or .jpi, or exploded plugin directory
+     * @return the plugin manifest, or {@code null} if it cannot be read
+     */
+    @CheckForNull
+    public PluginManifest readPluginManifest(File file) {
+        try {
+            return manifestReader.read(file);
+        } catch (IOException e) {
+            logMessage("Unable to open " + file);
+            logOutput.printVerboseStacktrace(e);
+            return null;
+        }
+    }
+
     /**
      * @param file plugin .hpi or .jpi of which to get the version
      * @param key index key used to find the attribute in file
@@ -1565,20 +2784,41 @@ public class PluginManager implements Closeable {
      * @return list of names of plugins that are installed in the plugin directory
      */
     public Map<String, Plugin> installedPlugins() {
-        Map<String, Plugin> installedPlugins = new HashMap<>();
         FileFilter fileFilter = new WildcardFileFilter("*.jpi");
 
         // Only lists files in same directory, does not list files recursively
         File[] files = pluginDir.listFiles(fileFilter);
 
-        if (files != null) {
-            for (File file : files) {
-                String pluginName = FilenameUtils.getBaseName(file.getName());
-                installedPlugins.put(pluginName, new Plugin(pluginName, getPluginVersion(file), null, null));
-            }
+        if (files == null) {
+            return new HashMap<>();
         }
+        return readManifestsInParallel(Arrays.asList(files), file -> {
+            String pluginName = FilenameUtils.getBaseName(file.getName());
+            return new Plugin(pluginName, getPluginVersion(file), null, null);
+        });
+    }
 
-        return installedPlugins;
+    /**
+     * Reads the plugin archives on a bounded pool, the manifest reads are dominated by I/O latency on network volumes
+     */
+    private <T> Map<String, Plugin> readManifestsInParallel(List<T> archives, Function<T, Plugin> reader) {
+        ForkJoinPool ioThreadPool = new ForkJoinPool(MANIFEST_READ_PARALLELISM);
+        try {
+            return ioThreadPool.submit(() -> archives.parallelStream()
+                    .map(reader)
+                    .collect(Collectors.toMap(Plugin::getName, Function.identity(), (first, second) -> second,
+                            HashMap::new))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading plugin manifests", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Unable to read plugin manifests", e.getCause());
+        } finally {
+            ioThreadPool.shutdown();
+        }
     }
 
     /**
@@ -1605,33 +2845,17 @@ public class PluginManager implements Closeable {
                 throw new WarBundledPluginException("Unable to open war file to extract bundled plugin information", e);
             }
 
-            // Walk through war contents and find bundled plugins
+            // Walk through war contents and find bundled plugins, their manifests are then read in parallel
             try (FileSystem warFS = FileSystems.newFileSystem(jenkinsWarUri, Collections.emptyMap())) {
                 Path warPath = warFS.getPath("/").getRoot();
                 PathMatcher matcher = warFS.getPathMatcher("regex:.*[^detached-]plugins.*\\.\\w+pi");
-                Stream<Path> walk = Files.walk(warPath);
-                for (Iterator<Path> it = walk.iterator(); it.hasNext(); ) {
-                    Path file = it.next();
-                    if (matcher.matches(file)) {
-                        Path fileName = file.getFileName();
-                        if (fileName != null) {
-                            // Because can't convert a ZipPath to a file with file.toFile()
-                            InputStream in = Files.newInputStream(file);
-                            final Path tempFile = Files.createTempFile("PREFIX", "SUFFIX");
-                            try (FileOutputStream out = new FileOutputStream(tempFile.toFile())) {
-                                IOUtils.copy(in, out);
-                            }
-
-                            String pluginVersion = getPluginVersion(tempFile.toFile());
-
-                            Files.delete(tempFile);
-                            String pluginName = FilenameUtils.getBaseName(fileName.toString());
-                            bundledPlugins
-                                    .put(pluginName, new Plugin(pluginName, pluginVersion, null, null));
-                        }
-                    }
+                List<Path> archives;
+                try (Stream<Path> walk = Files.walk(warPath)) {
+                    archives = walk.filter(file -> matcher.matches(file) && file.getFileName() != null)
+                            .collect(Collectors.toList());
                 }
-            } catch (IOException e) {
+                bundledPlugins = readManifestsInParallel(archives, this::readBundledPlugin);
+            } catch (IOException | UncheckedIOException e) {
                 throw new WarBundledPluginException("Unable to open war file to extract bundled plugin information", e);
             }
         } else {
@@ -1641,6 +2865,32 @@ public class PluginManager implements Closeable {
     }
 
 
+    private Plugin readBundledPlugin(Path file) {
+        String pluginName = FilenameUtils.getBaseName(String.valueOf(file.getFileName()));
+        try {
+            // the manifest is at the beginning of the archive, only that part is read
+            try (InputStream in = Files.newInputStream(file)) {
+                PluginManifest manifest = PluginManifestReader.readFromStream(in);
+                if (manifest != null && !StringUtils.isEmpty(manifest.getPluginVersion())) {
+                    return new Plugin(pluginName, manifest.getPluginVersion(), null, null);
+                }
+            }
+            // Because can't convert a ZipPath to a file with file.toFile()
+            final Path tempFile = Files.createTempFile("PREFIX", "SUFFIX");
+            try {
+                try (InputStream in = Files.newInputStream(file);
+                     FileOutputStream out = new FileOutputStream(tempFile.toFile())) {
+                    IOUtils.copy(in, out);
+                }
+                return new Plugin(pluginName, getPluginVersion(tempFile.toFile()), null, null);
+            } finally {
+                Files.delete(tempFile);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     /**
      * Gets the hash function used for the update center
      *
@@ -1711,6 +2961,26 @@ public class PluginManager implements Closeable {
         this.effectivePlugins = effectivePlugins;
     }
 
+    /**
+     * Gets the effective plugin set computed by {@link #start(boolean)}
+     *
+     * @return map of plugin name - plugin pairs, or {@code null} if the plugins have not been resolved yet
+     */
+    @CheckForNull
+    public Map<String, Plugin> getEffectivePlugins() {
+        return effectivePlugins;
+    }
+
+    /**
+     * Gets the list of plugins to be downloaded computed by {@link #start(boolean)}
+     *
+     * @return list of plugins, or {@code null} if the plugins have not been resolved yet
+     */
+    @CheckForNull
+    public List<Plugin> getPluginsToBeDownloaded() {
+        return pluginsToBeDownloaded;
+    }
+
     /**
      * Sets the list of plugins to be downloaded
      *
@@ -1779,6 +3049,7 @@ public class PluginManager implements Closeable {
      */
     public void setAllSecurityWarnings(Map<String, List<SecurityWarning>> securityWarnings) {
         allSecurityWarnings = securityWarnings;
+        securityWarningIndex = null;
     }
 
     /**
@@ -1801,9 +3072,125 @@ public class PluginManager implements Closeable {
 
     @Override
     public void close() throws IOException {
+        discardEarlyDownloads();
+        ExecutorService refreshExecutor;
+        synchronized (this) {
+            refreshExecutor = cacheRefreshExecutor;
+        }
+        if (refreshExecutor != null) {
+            // let pending cache refreshes finish, so the next run finds fresh metadata
+            refreshExecutor.shutdown();
+            try {
+                if (!refreshExecutor.awaitTermination(CACHE_REFRESH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logVerbose("Cache refresh did not finish in time, abandoning it");
+                    refreshExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
         if (httpClient != null) {
             httpClient.close();
         }
     }
 
+    /**
+     * Downloads started before the dependency resolution completed, into the temporary download directory
+     */
+    private static final class EarlyDownloads {
+        private static final int PARALLELISM = 16;
+
+        private final File downloadsTmpDir;
+        private final ForkJoinPool ioThreadPool = new ForkJoinPool(PARALLELISM);
+        private final Map<String, Plugin> plugins = new HashMap<>();
+        private final Map<String, File> archives = new HashMap<>();
+        private final Map<String, CompletableFuture<Boolean>> downloads = new HashMap<>();
+        private final Set<String> awaited = ConcurrentHashMap.newKeySet();
+
+        EarlyDownloads(File downloadsTmpDir) {
+            this.downloadsTmpDir = downloadsTmpDir;
+        }
+
+        boolean contains(Plugin plugin) {
+            return downloads.containsKey(plugin.getName());
+        }
+
+        /**
+         * Starts the early download of a plugin
+         *
+         * @param plugin plugin to download
+         * @param archive archive the plugin is downloaded to
+         * @param download downloads the plugin, failures are not reported to the failed plugins
+         */
+        void start(Plugin plugin, File archive, Supplier<Boolean> download) {
+            plugins.put(plugin.getName(), plugin);
+            archives.put(plugin.getName(), archive);
+            downloads.put(plugin.getName(), CompletableFuture.supplyAsync(download, ioThreadPool));
+        }
+
+        /**
+         * Waits for the early download of a plugin
+         *
+         * @param plugin plugin to download
+         * @return outcome of the early download, or {@code null} if the plugin still has to be downloaded
+         */
+        @CheckForNull
+        Boolean await(Plugin plugin) {
+            CompletableFuture<Boolean> download = downloads.get(plugin.getName());
+            if (download == null) {
+                return null;
+            }
+            awaited.add(plugin.getName());
+            Plugin downloaded = plugins.get(plugin.getName());
+            boolean sameArchive = downloaded.getVersion().equals(plugin.getVersion()) &&
+                    downloaded.getArchiveFileName().equals(plugin.getArchiveFileName());
+            Boolean successful;
+            try {
+                successful = download.join();
+            } catch (CompletionException e) {
+                if (!sameArchive) {
+                    discard(plugin.getName());
+                    return null;
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            if (!sameArchive) {
+                // any other version is downloaded again, after the early download stopped writing the archive
+                discard(plugin.getName());
+                return null;
+            }
+            return successful;
+        }
+
+        /**
+         * Waits for the early downloads of plugins the resolution did not keep, and deletes their archives
+         */
+        void discardUnused() {
+            for (String name : downloads.keySet()) {
+                if (!awaited.contains(name)) {
+                    try {
+                        downloads.get(name).join();
+                    } catch (CompletionException e) {
+                        // not installed, the failure does not matter
+                    }
+                    discard(name);
+                }
+            }
+        }
+
+        private void discard(String name) {
+            try {
+                Files.deleteIfExists(archives.get(name).toPath());
+            } catch (IOException e) {
+                // left in the temporary download directory
+            }
+        }
+
+        void close() {
+            ioThreadPool.shutdown();
+        }
+    }
 }
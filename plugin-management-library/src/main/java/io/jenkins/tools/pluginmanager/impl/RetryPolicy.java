@@ -0,0 +1,266 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+
+/**
+ * Decides whether and when a failed HTTP request is retried, for all the requests of a run.
+ * <p>
+ * Retries wait for an exponential backoff with jitter, or for the {@code Retry-After} delay of the response if it is
+ * longer. A run has a budget of retries shared by all the requests, so an unavailable mirror does not multiply the
+ * duration of the run by the number of plugins. After consecutive failures a host is not requested any more for a
+ * while (the circuit is open), then a single request is let through to probe it.
+ * <p>
+ * Only failures which may be transient are retried: I/O errors, {@code 429 Too Many Requests} and server errors.
+ */
+class RetryPolicy {
+
+    static final Duration DEFAULT_BASE_DELAY = Duration.ofMillis(500);
+    static final Duration DEFAULT_MAX_DELAY = Duration.ofSeconds(10);
+    static final Duration MAX_RETRY_AFTER = Duration.ofSeconds(60);
+    static final int DEFAULT_RETRY_BUDGET = 50;
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final Duration DEFAULT_OPEN_DURATION = Duration.ofSeconds(30);
+
+    private final Clock clock;
+    private final Sleeper sleeper;
+    @CheckForNull
+    private final Random random;
+    private final Duration baseDelay;
+    private final Duration maxDelay;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final AtomicInteger remainingRetries;
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong backoffMillis = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong circuitsOpened = new AtomicLong();
+
+    RetryPolicy() {
+        this(Clock.systemUTC(), Thread::sleep, null, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY, DEFAULT_RETRY_BUDGET,
+                DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    /**
+     * @param clock clock of the circuit breakers and of the {@code Retry-After} dates
+     * @param sleeper waits before a retry
+     * @param random source of the jitter, or {@code null} for a thread local one
+     * @param baseDelay delay before the first retry, doubled for each further retry
+     * @param maxDelay maximum backoff delay
+     * @param retryBudget maximum number of retries in the run
+     * @param failureThreshold consecutive failures opening the circuit of a host
+     * @param openDuration time during which a host is not requested once its circuit is open
+     */
+    RetryPolicy(Clock clock, Sleeper sleeper, @CheckForNull Random random, Duration baseDelay, Duration maxDelay,
+                int retryBudget, int failureThreshold, Duration openDuration) {
+        this.clock = clock;
+        this.sleeper = sleeper;
+        this.random = random;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.remainingRetries = new AtomicInteger(retryBudget);
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Called before every request
+     *
+     * @param host host of the request
+     * @throws IOException if the circuit of the host is open
+     */
+    void beforeRequest(String host) throws IOException {
+        requests.incrementAndGet();
+        if (!circuit(host).tryAcquire(clock.millis())) {
+            rejected.incrementAndGet();
+            throw new IOException("Not requesting " + host + " after " + failureThreshold +
+                    " consecutive failures, retrying it later");
+        }
+    }
+
+    void recordSuccess(String host) {
+        circuit(host).success();
+    }
+
+    /**
+     * Records a failed request
+     *
+     * @param host host of the request
+     * @param failure why the request failed
+     */
+    void recordFailure(String host, IOException failure) {
+        failures.incrementAndGet();
+        if (isRetryable(failure) && circuit(host).failure(clock.millis())) {
+            circuitsOpened.incrementAndGet();
+        }
+    }
+
+    /**
+     * Waits before retrying a failed request, if it can be retried
+     *
+     * @param host host of the request
+     * @param failure why the request failed
+     * @param attempt number of the failed attempt, starting at 1
+     * @param retryAfter {@code Retry-After} header of the response, if any
+     * @return {@code true} once it is time to retry, {@code false} if the request must not be retried
+     * @throws InterruptedIOException if interrupted while waiting
+     */
+    boolean awaitRetry(String host, IOException failure, int attempt, @CheckForNull String retryAfter)
+            throws InterruptedIOException {
+        if (!isRetryable(failure) || circuit(host).isOpen(clock.millis())) {
+            return false;
+        }
+        long delay = backoff(attempt);
+        Duration requested = parseRetryAfter(retryAfter);
+        if (requested != null) {
+            if (requested.compareTo(MAX_RETRY_AFTER) > 0) {
+                // retrying earlier than requested is pointless
+                return false;
+            }
+            delay = Math.max(delay, requested.toMillis());
+        }
+        if (remainingRetries.getAndUpdate(remaining -> Math.max(remaining - 1, 0)) == 0) {
+            budgetExhausted.incrementAndGet();
+            return false;
+        }
+        retries.incrementAndGet();
+        backoffMillis.addAndGet(delay);
+        try {
+            sleeper.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry a request to " + host);
+        }
+        return true;
+    }
+
+    /**
+     * Exponential backoff with "equal jitter": half of the delay is fixed, the other half random.
+     */
+    long backoff(int attempt) {
+        long ceiling = baseDelay.toMillis() << Math.min(attempt - 1, 30);
+        if (ceiling <= 0 || ceiling > maxDelay.toMillis()) {
+            ceiling = maxDelay.toMillis();
+        }
+        long half = ceiling / 2;
+        Random jitter = random != null ? random : ThreadLocalRandom.current();
+        return half + (half > 0 ? (long) (jitter.nextDouble() * (ceiling - half + 1)) : 0);
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, either a number of seconds or an HTTP date
+     *
+     * @return the delay, or {@code null} if there is none
+     */
+    @CheckForNull
+    Duration parseRetryAfter(@CheckForNull String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return null;
+        }
+        String value = retryAfter.trim();
+        try {
+            return Duration.ofSeconds(Math.max(Long.parseLong(value), 0));
+        } catch (NumberFormatException e) {
+            Date date = DateUtils.parseDate(value);
+            if (date == null) {
+                return null;
+            }
+            return Duration.ofMillis(Math.max(date.getTime() - clock.millis(), 0));
+        }
+    }
+
+    static boolean isRetryable(IOException failure) {
+        if (failure instanceof HttpResponseException) {
+            int status = ((HttpResponseException) failure).getStatusCode();
+            return status == 429 || status >= HttpStatus.SC_INTERNAL_SERVER_ERROR;
+        }
+        // timeouts are subclasses, they are retried
+        return failure.getClass() != InterruptedIOException.class;
+    }
+
+    /**
+     * Gets the counters of the run, for reporting
+     *
+     * @return counter names and values, in a stable order
+     */
+    Map<String, Long> getCounters() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("requests", requests.get());
+        counters.put("failures", failures.get());
+        counters.put("retries", retries.get());
+        counters.put("backoffMillis", backoffMillis.get());
+        counters.put("retryBudgetExhausted", budgetExhausted.get());
+        counters.put("circuitsOpened", circuitsOpened.get());
+        counters.put("rejectedByOpenCircuit", rejected.get());
+        return counters;
+    }
+
+    private Circuit circuit(@CheckForNull String host) {
+        return circuits.computeIfAbsent(host != null ? host : "", h -> new Circuit());
+    }
+
+    @FunctionalInterface
+    interface Sleeper {
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    private final class Circuit {
+        private int consecutiveFailures;
+        private long openUntil;
+        private boolean probing;
+
+        synchronized boolean tryAcquire(long now) {
+            if (consecutiveFailures < failureThreshold) {
+                return true;
+            }
+            if (now < openUntil || probing) {
+                return false;
+            }
+            // half open, a single request probes the host
+            probing = true;
+            return true;
+        }
+
+        synchronized boolean isOpen(long now) {
+            return consecutiveFailures >= failureThreshold && now < openUntil;
+        }
+
+        synchronized void success() {
+            consecutiveFailures = 0;
+            probing = false;
+        }
+
+        /**
+         * @return {@code true} if the circuit opens
+         */
+        synchronized boolean failure(long now) {
+            consecutiveFailures++;
+            probing = false;
+            if (consecutiveFailures >= failureThreshold) {
+                openUntil = now + openDuration.toMillis();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import io.jenkins.tools.pluginmanager.config.Config;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Audits existing plugin directories and the plugins bundled in a Jenkins WAR against the security warnings of a
+ * single, already loaded {@link UpdateCenterMetadata} snapshot.
+ * <p>
+ * Every directory and the WAR are scanned in parallel, the installed plugin versions are read from the plugin
+ * manifests the same way {@link PluginManager#installedPlugins()} and {@link PluginManager#bundledPlugins()} do.
+ * A failure to scan one source does not affect the other results.
+ */
+public class SecurityAuditor {
+
+    private static final int DEFAULT_PARALLELISM = 8;
+
+    private final Config config;
+    private final UpdateCenterMetadata metadata;
+    private final int parallelism;
+
+    public SecurityAuditor(Config config, UpdateCenterMetadata metadata) {
+        this(config, metadata, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * @param config base configuration, its plugin directory and WAR are replaced by the audited sources
+     * @param metadata metadata with the security warnings
+     * @param parallelism number of sources scanned at the same time
+     */
+    public SecurityAuditor(Config config, UpdateCenterMetadata metadata, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be a positive number, was: " + parallelism);
+        }
+        this.config = config;
+        this.metadata = metadata;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Audits plugin directories and the plugins bundled in a WAR
+     *
+     * @param pluginDirs plugin directories to audit
+     * @param jenkinsWar WAR of which the bundled plugins are audited, or {@code null} to only audit the directories
+     * @return the audit report
+     */
+    public Report audit(List<File> pluginDirs, @CheckForNull File jenkinsWar) {
+        List<Source> sources = new ArrayList<>();
+        for (File pluginDir : pluginDirs) {
+            sources.add(new Source(pluginDir, false));
+        }
+        if (jenkinsWar != null) {
+            sources.add(new Source(jenkinsWar, true));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        List<SourceResult> results;
+        try {
+            results = pool.submit(() -> sources.parallelStream()
+                    .map(this::audit)
+                    .collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while auditing plugins", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to audit plugins", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Finding> findings = new ArrayList<>();
+        List<Failure> failures = new ArrayList<>();
+        int scannedPlugins = 0;
+        for (SourceResult result : results) {
+            findings.addAll(result.findings);
+            scannedPlugins += result.scannedPlugins;
+            if (result.failure != null) {
+                failures.add(result.failure);
+            }
+        }
+        return new Report(sources.size(), scannedPlugins, findings, failures);
+    }
+
+    private SourceResult audit(Source source) {
+        String sourcePath = source.file.getPath();
+        if (source.war ? !source.file.isFile() : !source.file.isDirectory()) {
+            return SourceResult.failed(new Failure(sourcePath, (source.war ? "WAR file" : "Plugin directory") +
+                    " not found"));
+        }
+        Config sourceConfig = config.toBuilder()
+                .withPluginDir(source.war ? config.getPluginDir() : source.file)
+                .withJenkinsWar(source.war ? source.file.getPath() : null)
+                .build();
+        Map<String, Plugin> plugins;
+        try (PluginManager pm = new PluginManager(sourceConfig)) {
+            plugins = source.war ? pm.bundledPlugins() : pm.installedPlugins();
+        } catch (RuntimeException | IOException e) {
+            return SourceResult.failed(new Failure(sourcePath, e.getMessage()));
+        }
+
+        SecurityWarningIndex index = metadata.getSecurityWarningIndex();
+        List<Finding> findings = new ArrayList<>();
+        plugins.values().stream()
+                .sorted(Comparator.comparing(Plugin::getName))
+                .forEach(plugin -> {
+                    for (SecurityWarning warning : index.find(plugin.getName(), plugin.getVersion())) {
+                        findings.add(new Finding(sourcePath, plugin.getName(), plugin.getVersion().toString(),
+                                warning));
+                    }
+                });
+        return new SourceResult(plugins.size(), findings, null);
+    }
+
+    private static final class Source {
+        private final File file;
+        private final boolean war;
+
+        Source(File file, boolean war) {
+            this.file = file;
+            this.war = war;
+        }
+    }
+
+    private static final class SourceResult {
+        private final int scannedPlugins;
+        private final List<Finding> findings;
+        @CheckForNull
+        private final Failure failure;
+
+        SourceResult(int scannedPlugins, List<Finding> findings, @CheckForNull Failure failure) {
+            this.scannedPlugins = scannedPlugins;
+            this.findings = findings;
+            this.failure = failure;
+        }
+
+        static SourceResult failed(Failure failure) {
+            return new SourceResult(0, Collections.emptyList(), failure);
+        }
+    }
+
+    /**
+     * Outcome of an audit
+     */
+    public static class Report {
+        private final int scannedSources;
+        private final int scannedPlugins;
+        private final List<Finding> findings;
+        private final List<Failure> failures;
+
+        Report(int scannedSources, int scannedPlugins, List<Finding> findings, List<Failure> failures) {
+            this.scannedSources = scannedSources;
+            this.scannedPlugins = scannedPlugins;
+            this.findings = Collections.unmodifiableList(findings);
+            this.failures = Collections.unmodifiableList(failures);
+        }
+
+        public int getScannedSources() {
+            return scannedSources;
+        }
+
+        public int getScannedPlugins() {
+            return scannedPlugins;
+        }
+
+        /**
+         * Gets the plugins affected by security warnings
+         *
+         * @return findings ordered by source and plugin name
+         */
+        public List<Finding> getFindings() {
+            return findings;
+        }
+
+        /**
+         * Gets the sources which could not be scanned
+         *
+         * @return failures in the order of the sources
+         */
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Converts the report to JSON, for consumption by other tools
+         *
+         * @return JSON representation of the report
+         */
+        public JSONObject toJson() {
+            JSONArray findingsJson = new JSONArray();
+            for (Finding finding : findings) {
+                findingsJson.put(new JSONObject()
+                        .put("source", finding.getSource())
+                        .put("plugin", finding.getPluginName())
+                        .put("version", finding.getVersion())
+                        .put("id", finding.getWarning().getId())
+                        .put("message", finding.getWarning().getMessage())
+                        .put("url", finding.getWarning().getUrl()));
+            }
+            JSONArray failuresJson = new JSONArray();
+            for (Failure failure : failures) {
+                failuresJson.put(new JSONObject()
+                        .put("source", failure.getSource())
+                        .put("message", failure.getMessage()));
+            }
+            return new JSONObject()
+                    .put("scannedSources", scannedSources)
+                    .put("scannedPlugins", scannedPlugins)
+                    .put("findings", findingsJson)
+                    .put("failures", failuresJson);
+        }
+    }
+
+    /**
+     * Plugin installed in a source which is affected by a security warning
+     */
+    public static class Finding {
+        private final String source;
+        private final String pluginName;
+        private final String version;
+        private final SecurityWarning warning;
+
+        Finding(String source, String pluginName, String version, SecurityWarning warning) {
+            this.source = source;
+            this.pluginName = pluginName;
+            this.version = version;
+            this.warning = warning;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getPluginName() {
+            return pluginName;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public SecurityWarning getWarning() {
+            return warning;
+        }
+    }
+
+    /**
+     * Source which could not be scanned
+     */
+    public static class Failure {
+        private final String source;
+        private final String message;
+
+        Failure(String source, String message) {
+            this.source = source;
+            this.message = message;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
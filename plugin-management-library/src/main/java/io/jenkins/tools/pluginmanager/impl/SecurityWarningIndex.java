@@ -0,0 +1,170 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.util.VersionNumber;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of the security warnings by plugin name, built once per set of warnings.
+ * <p>
+ * The affected versions of a warning are turned into version intervals from {@code firstVersion} (inclusive, open if
+ * missing) to {@code lastVersion} (inclusive), sorted by their lower bound, so a lookup only compares version numbers.
+ * The regular expression of the update center is used as the fallback: when the warning has no {@code lastVersion},
+ * and for versions which extend the {@code lastVersion}, e.g. {@code 1.14.1} for a last affected version
+ * {@code 1.14}, since the patterns usually cover those too.
+ */
+class SecurityWarningIndex {
+
+    private static final Comparator<Interval> BY_LOWER_BOUND = Comparator.comparing(interval -> interval.first,
+            Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final Map<String, PluginWarnings> warningsByPlugin;
+
+    private SecurityWarningIndex(Map<String, PluginWarnings> warningsByPlugin) {
+        this.warningsByPlugin = warningsByPlugin;
+    }
+
+    /**
+     * Builds the index
+     *
+     * @param securityWarnings map of plugin name to its security warnings
+     * @return the index
+     */
+    static SecurityWarningIndex build(Map<String, List<SecurityWarning>> securityWarnings) {
+        Map<String, PluginWarnings> warningsByPlugin = new HashMap<>();
+        for (Map.Entry<String, List<SecurityWarning>> entry : securityWarnings.entrySet()) {
+            warningsByPlugin.put(entry.getKey(), new PluginWarnings(entry.getValue()));
+        }
+        return new SecurityWarningIndex(warningsByPlugin);
+    }
+
+    /**
+     * Finds the security warnings affecting a plugin version
+     *
+     * @param pluginName name of the plugin
+     * @param version version of the plugin
+     * @return the warnings affecting the version, in the order they were provided
+     */
+    List<SecurityWarning> find(String pluginName, VersionNumber version) {
+        PluginWarnings pluginWarnings = warningsByPlugin.get(pluginName);
+        if (pluginWarnings == null) {
+            return Collections.emptyList();
+        }
+        return pluginWarnings.find(version);
+    }
+
+    private static final class PluginWarnings {
+        private final List<SecurityWarning> warnings;
+        /**
+         * Sorted by {@link #BY_LOWER_BOUND}
+         */
+        private final Interval[] intervals;
+        private final List<Interval> patternsOnly = new ArrayList<>();
+
+        PluginWarnings(List<SecurityWarning> warnings) {
+            this.warnings = new ArrayList<>(warnings);
+            List<Interval> sorted = new ArrayList<>();
+            for (int i = 0; i < warnings.size(); i++) {
+                for (SecurityWarning.SecurityVersion securityVersion : warnings.get(i).getSecurityVersions()) {
+                    Interval interval = new Interval(i, securityVersion);
+                    if (interval.last == null) {
+                        patternsOnly.add(interval);
+                    } else {
+                        sorted.add(interval);
+                    }
+                }
+            }
+            sorted.sort(BY_LOWER_BOUND);
+            intervals = sorted.toArray(new Interval[0]);
+        }
+
+        List<SecurityWarning> find(VersionNumber version) {
+            String versionString = version.toString();
+            BitSet matches = new BitSet(warnings.size());
+            int end = upperBoundIndex(version);
+            for (int i = 0; i < end; i++) {
+                Interval interval = intervals[i];
+                if (!matches.get(interval.warning) && interval.contains(version, versionString)) {
+                    matches.set(interval.warning);
+                }
+            }
+            for (Interval interval : patternsOnly) {
+                if (!matches.get(interval.warning) && interval.matchesPattern(versionString)) {
+                    matches.set(interval.warning);
+                }
+            }
+            if (matches.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<SecurityWarning> result = new ArrayList<>(matches.cardinality());
+            for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1)) {
+                result.add(warnings.get(i));
+            }
+            return result;
+        }
+
+        /**
+         * @return number of intervals with a lower bound not greater than the version
+         */
+        private int upperBoundIndex(VersionNumber version) {
+            int low = 0;
+            int high = intervals.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                VersionNumber first = intervals[mid].first;
+                if (first == null || first.compareTo(version) <= 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+
+    private static final class Interval {
+        private final int warning;
+        @CheckForNull
+        private final VersionNumber first;
+        @CheckForNull
+        private final VersionNumber last;
+        private final String lastString;
+        private final SecurityWarning.SecurityVersion securityVersion;
+
+        Interval(int warning, SecurityWarning.SecurityVersion securityVersion) {
+            this.warning = warning;
+            this.securityVersion = securityVersion;
+            this.first = parse(securityVersion.getFirstVersion());
+            this.lastString = securityVersion.getLastVersion() != null ? securityVersion.getLastVersion() : "";
+            this.last = parse(lastString);
+        }
+
+        boolean contains(VersionNumber version, String versionString) {
+            if (version.compareTo(last) <= 0) {
+                return true;
+            }
+            // e.g. 1.14.1 or 1.14-beta for the last affected version 1.14, let the pattern decide
+            return versionString.length() > lastString.length() && versionString.startsWith(lastString) &&
+                    (versionString.charAt(lastString.length()) == '.' || versionString.charAt(lastString.length()) == '-') &&
+                    matchesPattern(versionString);
+        }
+
+        boolean matchesPattern(String versionString) {
+            return securityVersion.getPattern().matcher(versionString).matches();
+        }
+
+        @CheckForNull
+        private static VersionNumber parse(@CheckForNull String version) {
+            if (version == null || version.isEmpty()) {
+                return null;
+            }
+            return new VersionNumber(version);
+        }
+    }
+}
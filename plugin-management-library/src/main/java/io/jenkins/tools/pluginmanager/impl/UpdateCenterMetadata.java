@@ -0,0 +1,81 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import hudson.util.VersionNumber;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONObject;
+
+/**
+ * Snapshot of the update center metadata: update center, plugin versions, optionally the experimental update center
+ * and the parsed security warnings.
+ * <p>
+ * The snapshot is loaded once with {@link PluginManager#loadUpdateCenterMetadata(boolean)} and can then be shared
+ * between many {@link PluginManager} instances running in parallel, see {@link BatchResolver}.
+ * The JSON documents are only read after loading, so they must not be modified by the callers.
+ */
+public final class UpdateCenterMetadata {
+
+    @CheckForNull
+    private final VersionNumber jenkinsVersion;
+    private final JSONObject updateCenter;
+    private final JSONObject pluginVersions;
+    @CheckForNull
+    private final JSONObject experimentalUpdateCenter;
+    private final Map<String, List<SecurityWarning>> securityWarnings;
+    private final SecurityWarningIndex securityWarningIndex;
+
+    UpdateCenterMetadata(@CheckForNull VersionNumber jenkinsVersion, JSONObject updateCenter, JSONObject pluginVersions,
+                         @CheckForNull JSONObject experimentalUpdateCenter,
+                         Map<String, List<SecurityWarning>> securityWarnings) {
+        this.jenkinsVersion = jenkinsVersion;
+        this.updateCenter = updateCenter;
+        this.pluginVersions = pluginVersions;
+        this.experimentalUpdateCenter = experimentalUpdateCenter;
+        Map<String, List<SecurityWarning>> warnings = new HashMap<>();
+        for (Map.Entry<String, List<SecurityWarning>> entry : securityWarnings.entrySet()) {
+            warnings.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<>(entry.getValue())));
+        }
+        this.securityWarnings = Collections.unmodifiableMap(warnings);
+        this.securityWarningIndex = SecurityWarningIndex.build(this.securityWarnings);
+    }
+
+    /**
+     * Gets the Jenkins version the update center metadata was requested for
+     *
+     * @return Jenkins version, or {@code null} if the generic update center was used
+     */
+    @CheckForNull
+    public VersionNumber getJenkinsVersion() {
+        return jenkinsVersion;
+    }
+
+    public JSONObject getUpdateCenter() {
+        return updateCenter;
+    }
+
+    public JSONObject getPluginVersions() {
+        return pluginVersions;
+    }
+
+    @CheckForNull
+    public JSONObject getExperimentalUpdateCenter() {
+        return experimentalUpdateCenter;
+    }
+
+    /**
+     * Gets the security warnings parsed from the update center
+     *
+     * @return unmodifiable map of the plugin name to the list of security warnings for that plugin
+     */
+    public Map<String, List<SecurityWarning>> getSecurityWarnings() {
+        return securityWarnings;
+    }
+
+    SecurityWarningIndex getSecurityWarningIndex() {
+        return securityWarningIndex;
+    }
+}
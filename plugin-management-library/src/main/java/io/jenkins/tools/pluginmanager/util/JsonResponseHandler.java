@@ -0,0 +1,46 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.AbstractResponseHandler;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Parses the JSON response while it is streamed, without buffering the whole document in a {@link String}.
+ * <p>
+ * The HTTP client negotiates {@code gzip} and {@code deflate} transfer encodings and decompresses the entity on the
+ * fly, so the compressed body is parsed as it arrives.
+ */
+public class JsonResponseHandler extends AbstractResponseHandler<JSONObject> {
+
+    @Override
+    public JSONObject handleEntity(HttpEntity entity) throws IOException {
+        ContentType contentType = ContentType.get(entity);
+        Charset charset = contentType != null && contentType.getCharset() != null ?
+                contentType.getCharset() : StandardCharsets.UTF_8;
+        try (InputStream source = entity.getContent()) {
+            return parse(source, charset);
+        }
+    }
+
+    /**
+     * Parses a JSON document, which may be wrapped in the update center JSONP wrapper. The wrapper is removed while
+     * the document is parsed.
+     *
+     * @param source stream with the document, it is not closed
+     * @param charset charset of the document
+     * @return the parsed JSON
+     * @throws IOException if the document cannot be read
+     */
+    public static JSONObject parse(InputStream source, Charset charset) throws IOException {
+        return new JSONObject(new JSONTokener(new BufferedReader(
+                new UpdateCenterWrapperReader(new InputStreamReader(source, charset)))));
+    }
+}
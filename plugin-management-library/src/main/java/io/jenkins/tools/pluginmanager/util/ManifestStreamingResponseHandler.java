@@ -0,0 +1,55 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.http.HttpEntity;
+import org.apache.http.impl.client.AbstractResponseHandler;
+
+/**
+ * Downloads a plugin archive to a file like {@link FileDownloadResponseHandler}, and publishes the plugin manifest
+ * as soon as it streamed past, while the rest of the body is still being written to the file.
+ * <p>
+ * The manifest future is only completed when the manifest is found in the stream, it is left to the caller to read
+ * the manifest from the complete file otherwise.
+ */
+public class ManifestStreamingResponseHandler extends AbstractResponseHandler<File> {
+
+    private final File target;
+    private final CompletableFuture<PluginManifest> manifest;
+
+    /**
+     * @param target file to download the archive to
+     * @param manifest completed with the manifest of the archive once it is read from the stream
+     */
+    public ManifestStreamingResponseHandler(File target, CompletableFuture<PluginManifest> manifest) {
+        this.target = target;
+        this.manifest = manifest;
+    }
+
+    @Override
+    public File handleEntity(HttpEntity entity) throws IOException {
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        try (InputStream source = entity.getContent();
+             OutputStream out = new BufferedOutputStream(Files.newOutputStream(target.toPath()))) {
+            if (!manifest.isDone()) {
+                // every byte read while scanning is written to the file as well
+                PluginManifest found = PluginManifestReader.scanStream(new TeeInputStream(source, out));
+                if (found != null) {
+                    manifest.complete(found);
+                }
+            }
+            IOUtils.copy(source, out);
+        }
+        return target;
+    }
+}
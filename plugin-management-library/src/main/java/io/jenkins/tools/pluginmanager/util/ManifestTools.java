@@ -19,29 +19,21 @@ public class ManifestTools {
     public static Plugin readPluginFromFile(File file) throws IOException {
         Plugin plugin = new Plugin(file.getName(), "undefined", null, null);
 
-
-        // TODO: refactor code so that we read the manifest only once
-        String version = getAttributeFromManifest(file, "Plugin-Version");
+        PluginManifest manifest = PluginManifest.read(file);
+        String version = manifest.getPluginVersion();
         if (!StringUtils.isEmpty(version)) {
             plugin.setVersion(new VersionNumber(version));
         }
-        plugin.setJenkinsVersion(getAttributeFromManifest(file, "Jenkins-Version"));
-
+        plugin.setJenkinsVersion(manifest.getJenkinsVersion());
 
-        String dependencyString = getAttributeFromManifest(file, "Plugin-Dependencies");
-        if (StringUtils.isEmpty(dependencyString)) {
+        if (StringUtils.isEmpty(manifest.getPluginDependencies())) {
             // not all plugin Manifests contain the Plugin-Dependencies field
             return plugin;
         }
 
-        String[] dependencies = dependencyString.split(",");
         List<Plugin> dependentPlugins = new ArrayList<>();
-        for (String dependency : dependencies) {
-            if (!dependency.contains("resolution:=optional")) {
-                String[] pluginInfo = dependency.split(":");
-                String pluginName = pluginInfo[0];
-                String pluginVersion = pluginInfo[1];
-                Plugin dependentPlugin = new Plugin(pluginName, pluginVersion, null, null);
+        for (Plugin dependentPlugin : manifest.getDependencies()) {
+            if (!dependentPlugin.getOptional()) {
                 dependentPlugins.add(dependentPlugin);
                 dependentPlugin.setParent(plugin);
             }
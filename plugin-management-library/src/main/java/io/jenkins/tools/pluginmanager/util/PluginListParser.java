@@ -9,15 +9,26 @@ import io.jenkins.tools.pluginmanager.config.PluginInputException;
 import io.jenkins.tools.pluginmanager.impl.Plugin;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
 import static java.util.stream.Collectors.toList;
@@ -28,6 +39,18 @@ public class PluginListParser {
             .setSerializationInclusion(JsonInclude.Include.NON_NULL)
             .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
 
+    /**
+     * Files larger than this are read at once and their lines are parsed in parallel
+     */
+    static final long PARALLEL_PARSE_THRESHOLD_BYTES = 256 * 1024;
+
+    private static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * Protocols with a handler in every JVM, see {@link URL#URL(String, String, int, String)}
+     */
+    private static final Set<String> URL_PROTOCOLS = Set.of("file", "ftp", "http", "https", "jar", "jrt", "mailto");
+
     private final boolean verbose;
 
     public PluginListParser(boolean verbose) {
@@ -53,17 +76,18 @@ public class PluginListParser {
     public List<Plugin> parsePluginTxtFile(File pluginTxtFile) {
         List<Plugin> pluginsFromTxt = new ArrayList<>();
         if (fileExists(pluginTxtFile)) {
-            try (BufferedReader bufferedReader = Files.newBufferedReader(pluginTxtFile.toPath(),
-                    StandardCharsets.UTF_8)) {
-                List<Plugin> pluginsFromFile = bufferedReader.lines()
-                        .map(line -> line.replaceAll("\\s#+.*", ""))
-                        .map(line -> line.replaceAll("\\s", ""))
-                        .filter(line -> !line.startsWith("#"))
-                        .filter(line -> line.length() > 0)
-                        .map(this::parsePluginLine)
-                        .collect(toList());
-                pluginsFromTxt.addAll(pluginsFromFile);
-            } catch (IOException e) {
+            try {
+                if (!isGzipped(pluginTxtFile) && pluginTxtFile.length() > PARALLEL_PARSE_THRESHOLD_BYTES) {
+                    // the order of the lines is kept, later lines still override earlier ones
+                    pluginsFromTxt.addAll(parsePluginTxtLines(
+                            Files.readAllLines(pluginTxtFile.toPath(), StandardCharsets.UTF_8).parallelStream()));
+                } else {
+                    try (BufferedReader bufferedReader = new BufferedReader(
+                            new InputStreamReader(openPluginFile(pluginTxtFile), StandardCharsets.UTF_8))) {
+                        pluginsFromTxt.addAll(parsePluginTxtLines(bufferedReader.lines()));
+                    }
+                }
+            } catch (IOException | UncheckedIOException e) {
                 System.err.println("Unable to open " + pluginTxtFile);
             }
         }
@@ -71,6 +95,192 @@ public class PluginListParser {
         return pluginsFromTxt;
     }
 
+    /**
+     * Parses plugins files and directories of plugins file fragments, e.g. one fragment per team. Directories are not
+     * searched recursively, their fragments are taken in the order of their names. Every file may be a plugins.txt or
+     * a plugins.yaml file, optionally gzipped with a {@code .gz} suffix.
+     * <p>
+     * The files are parsed in parallel and merged in their order as soon as they are parsed. A plugin listed several
+     * times, in one file or in several ones, is merged with the same rule:
+     * <ul>
+     *     <li>identical requirements are listed once</li>
+     *     <li>of two released versions, the higher one is kept, like the dependency resolution combines the
+     *     dependencies on a plugin</li>
+     *     <li>any other pair of requirements is a conflict, e.g. {@code latest} or {@code experimental} and a released
+     *     version, or a requirement with a URL or an incrementals version and another requirement</li>
+     * </ul>
+     *
+     * @param pluginFiles plugins files and directories of fragments
+     * @return merged plugins, in the order they were first listed
+     * @throws PluginInputException if a file does not exist or is not a plugins file, or if a plugin is listed with
+     *                              conflicting requirements
+     */
+    public List<Plugin> parsePluginFiles(List<File> pluginFiles) {
+        List<File> fragments = new ArrayList<>();
+        for (File pluginFile : pluginFiles) {
+            if (pluginFile.isDirectory()) {
+                File[] files = pluginFile.listFiles(file -> file.isFile() && isPluginFile(file));
+                if (files != null) {
+                    Arrays.sort(files);
+                    fragments.addAll(Arrays.asList(files));
+                }
+            } else if (!pluginFile.exists()) {
+                throw new PluginInputException("File containing list of plugins does not exist " + pluginFile);
+            } else if (!isPluginFile(pluginFile)) {
+                throw new PluginInputException("Unknown file type, file must have .yaml/.yml or .txt extension, " +
+                        "optionally followed by .gz: " + pluginFile);
+            } else {
+                fragments.add(pluginFile);
+            }
+        }
+
+        List<CompletableFuture<List<Plugin>>> parsedFragments = fragments.stream()
+                .map(fragment -> CompletableFuture.supplyAsync(() -> parsePluginFile(fragment)))
+                .collect(toList());
+        // plugin names are interned by the parser, so duplicates are detected by identity
+        Map<String, Integer> positions = new IdentityHashMap<>();
+        List<Plugin> merged = new ArrayList<>();
+        List<File> sources = new ArrayList<>();
+        for (int i = 0; i < parsedFragments.size(); i++) {
+            List<Plugin> plugins;
+            try {
+                plugins = parsedFragments.get(i).join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+            File fragment = fragments.get(i);
+            for (Plugin plugin : plugins) {
+                Integer position = positions.putIfAbsent(plugin.getName(), merged.size());
+                if (position == null) {
+                    merged.add(plugin);
+                    sources.add(fragment);
+                } else {
+                    Plugin kept = merge(merged.get(position), sources.get(position), plugin, fragment);
+                    if (kept != merged.get(position)) {
+                        merged.set(position, kept);
+                        sources.set(position, fragment);
+                    }
+                }
+            }
+        }
+        return merged;
+    }
+
+    private List<Plugin> parsePluginFile(File pluginFile) {
+        String extension = FilenameUtils.getExtension(stripGzipSuffix(pluginFile.getName()));
+        return extension.equals("txt") ? parsePluginTxtFile(pluginFile) : parsePluginYamlFile(pluginFile);
+    }
+
+    private static boolean isPluginFile(File file) {
+        String extension = FilenameUtils.getExtension(stripGzipSuffix(file.getName()));
+        return extension.equals("txt") || extension.equals("yaml") || extension.equals("yml");
+    }
+
+    private static boolean isGzipped(File file) {
+        return file.getName().endsWith(GZIP_SUFFIX);
+    }
+
+    private static String stripGzipSuffix(String fileName) {
+        return fileName.endsWith(GZIP_SUFFIX) ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length()) :
+                fileName;
+    }
+
+    private static InputStream openPluginFile(File pluginFile) throws IOException {
+        InputStream in = Files.newInputStream(pluginFile.toPath());
+        if (!isGzipped(pluginFile)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Merges two requirements of the same plugin, see {@link #parsePluginFiles(List)}
+     *
+     * @return the requirement to keep
+     * @throws PluginInputException if the requirements conflict
+     */
+    private static Plugin merge(Plugin first, File firstSource, Plugin second, File secondSource) {
+        if (first.equals(second)) {
+            return first;
+        }
+        if (isReleasedVersion(first) && isReleasedVersion(second)) {
+            return first.getVersion().isOlderThan(second.getVersion()) ? second : first;
+        }
+        throw new PluginInputException(String.format("Conflicting requirements for plugin %s: %s in %s and %s in %s",
+                first.getName(), describeRequirement(first), firstSource, describeRequirement(second),
+                secondSource));
+    }
+
+    private static boolean isReleasedVersion(Plugin plugin) {
+        String version = plugin.getVersion().toString();
+        return StringUtils.isEmpty(plugin.getUrl()) && StringUtils.isEmpty(plugin.getGroupId()) &&
+                !version.equals(Plugin.LATEST) && !version.equals(Plugin.EXPERIMENTAL);
+    }
+
+    /**
+     * @return the requirement in the plugins.txt format
+     */
+    private static String describeRequirement(Plugin plugin) {
+        String version = StringUtils.isEmpty(plugin.getGroupId()) ? plugin.getVersion().toString() :
+                "incrementals;" + plugin.getGroupId() + ";" + plugin.getVersion();
+        return plugin.getName() + ":" + version + (StringUtils.isEmpty(plugin.getUrl()) ? "" : ":" + plugin.getUrl());
+    }
+
+    private List<Plugin> parsePluginTxtLines(Stream<String> lines) {
+        return lines
+                .map(PluginListParser::stripCommentAndWhitespace)
+                .filter(line -> !line.isEmpty() && line.charAt(0) != '#')
+                .map(this::parsePluginLine)
+                .collect(toList());
+    }
+
+    /**
+     * Removes the comment, which starts at a {@code #} following whitespace, and all whitespace of a plugins.txt
+     * line, without regular expressions. The line is returned as is if there is nothing to remove.
+     *
+     * @param line line of a plugins.txt file
+     * @return the line without comment and whitespace
+     */
+    static String stripCommentAndWhitespace(String line) {
+        int end = line.length();
+        boolean hasWhitespace = false;
+        for (int i = 0; i < end; i++) {
+            if (isWhitespace(line.charAt(i))) {
+                if (i + 1 < end && line.charAt(i + 1) == '#') {
+                    end = i;
+                    break;
+                }
+                hasWhitespace = true;
+            }
+        }
+        if (!hasWhitespace) {
+            return end == line.length() ? line : line.substring(0, end);
+        }
+        StringBuilder stripped = new StringBuilder(end);
+        for (int i = 0; i < end; i++) {
+            char c = line.charAt(i);
+            if (!isWhitespace(c)) {
+                stripped.append(c);
+            }
+        }
+        return stripped.toString();
+    }
+
+    /**
+     * Same characters as {@code \\s} in regular expressions
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
     /**
      * Given a Jenkins yaml file with a plugins root element, will parse the yaml file and create a list of requested
      * plugins
@@ -81,13 +291,14 @@ public class PluginListParser {
     public List<Plugin> parsePluginYamlFile(File pluginYamlFile) {
         List<Plugin> pluginsFromYaml = new ArrayList<>();
         if (fileExists(pluginYamlFile)) {
-            try (InputStream inputStream = new FileInputStream(pluginYamlFile)) {
+            try (InputStream inputStream = openPluginFile(pluginYamlFile)) {
                 Plugins plugins = MAPPER.readValue(inputStream, Plugins.class);
                 for (PluginInfo pluginInfo : plugins.getPlugins()) {
                     String name = pluginInfo.getArtifactId();
                     if (StringUtils.isEmpty(name)) {
                         throw new PluginInputException("ArtifactId is required");
                     }
+                    name = name.intern();
                     String groupId = pluginInfo.getGroupId();
                     Source pluginSource = pluginInfo.getSource();
                     Plugin plugin;
@@ -147,38 +358,65 @@ public class PluginListParser {
      * @return plugin object containing name, version, and/or url
      */
     private Plugin parsePluginLine(String pluginLine) {
-        String[] pluginInfo = pluginLine.split(":", 3);
-        String pluginName = pluginInfo[0];
+        // same tokens as pluginLine.split(":", 3)
+        int versionStart = pluginLine.indexOf(':');
+        String pluginName = versionStart < 0 ? pluginLine : pluginLine.substring(0, versionStart);
         String pluginVersion = "latest";
         String pluginUrl = null;
         String groupId = null;
 
         // "http, https, ftp" are valid
 
-        if (pluginInfo.length >= 2) {
-            pluginVersion = pluginInfo[1];
+        if (versionStart >= 0) {
+            int urlStart = pluginLine.indexOf(':', versionStart + 1);
+            pluginVersion = urlStart < 0 ? pluginLine.substring(versionStart + 1) :
+                    pluginLine.substring(versionStart + 1, urlStart);
             if (pluginVersion.contains("incrementals")) {
                 String[] incrementalsVersionInfo = pluginVersion.split(";");
                 groupId = incrementalsVersionInfo[1];
                 pluginVersion = incrementalsVersionInfo[2];
             }
-        }
-
-        if (pluginInfo.length >= 3) {
-            if (isURL(pluginInfo[2])) {
-                pluginUrl = pluginInfo[2];
-            } else {
-                System.err.println("Invalid URL " + pluginInfo[2] + " , will ignore");
+            if (urlStart >= 0) {
+                String url = pluginLine.substring(urlStart + 1);
+                if (isURL(url)) {
+                    pluginUrl = url;
+                } else {
+                    System.err.println("Invalid URL " + url + " , will ignore");
+                }
             }
         }
-        return new Plugin(pluginName, pluginVersion, pluginUrl, groupId);
+        // interned, plugins of many files are merged by name
+        return new Plugin(pluginName.intern(), pluginVersion, pluginUrl, groupId);
     }
 
+    /**
+     * Checks if a string is a URL the JVM can handle. Strings without a known protocol are rejected without creating
+     * and catching an exception, only strings with a known protocol are parsed.
+     *
+     * @param url string to check
+     * @return true if the string is a valid URL
+     */
     public static boolean isURL(String url) {
+        if (url == null) {
+            return false;
+        }
+        int colon = url.indexOf(':');
+        if (colon < 1 || !Character.isLetter(url.charAt(0))) {
+            return false;
+        }
+        for (int i = 1; i < colon; i++) {
+            char c = url.charAt(i);
+            if (!Character.isLetterOrDigit(c) && c != '+' && c != '-' && c != '.') {
+                return false;
+            }
+        }
+        if (!URL_PROTOCOLS.contains(url.substring(0, colon).toLowerCase(Locale.ROOT))) {
+            return false;
+        }
         try {
             new URL(url);
             return true;
-        } catch (Exception e) {
+        } catch (MalformedURLException e) {
             return false;
         }
     }
@@ -1,22 +1,38 @@
 package io.jenkins.tools.pluginmanager.util;
 
+import edu.umd.cs.findbugs.annotations.CheckForNull;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
-import java.util.Enumeration;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.apache.commons.io.IOUtils;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
 
 public final class PluginManagerUtils {
 
+    /**
+     * Archives with more file entries than this are extracted in parallel
+     */
+    static final int PARALLEL_EXPLODE_THRESHOLD = 64;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // extraction buffers are reused by the threads exploding the plugins
+    private static final ThreadLocal<byte[]> COPY_BUFFER = ThreadLocal.withInitial(() -> new byte[COPY_BUFFER_SIZE]);
+
     private PluginManagerUtils() {
     }
 
@@ -70,11 +86,10 @@ public final class PluginManagerUtils {
      * @return the supplied text with any present wrapper removed
      */
     public static String removePossibleWrapperText(String urlText) {
-        if (urlText != null && urlText.startsWith("updateCenter.post(")) {
-            Pattern pattern = Pattern.compile("updateCenter.post\\((.*)\\);", Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(urlText);
-            if (matcher.find()) {
-                return matcher.group(1);
+        if (urlText != null && urlText.startsWith(UpdateCenterWrapperReader.PREFIX)) {
+            int end = urlText.lastIndexOf(");");
+            if (end >= UpdateCenterWrapperReader.PREFIX.length()) {
+                return urlText.substring(UpdateCenterWrapperReader.PREFIX.length(), end);
             }
         }
         return urlText;
@@ -152,27 +167,81 @@ public final class PluginManagerUtils {
      * @return the directory of the exploded plugin
      * @throws IOException on input / output error
      */
-    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
     public static File explodePlugin(File source, File destDir) throws IOException {
+        explodePlugin(source, destDir, null);
+        return destDir;
+    }
+
+    /**
+     * Explodes the plugin archive and returns its manifest, read from the archive opened for the extraction.
+     * The directories are created first, then the files are extracted, in parallel for large archives.
+     * @param source Source file
+     * @param destDir Destination
+     * @param manifestReader reader which caches the manifest for the exploded directory, may be {@code null}
+     * @return the manifest of the plugin, or {@code null} if the archive has none
+     * @throws IOException on input / output error
+     */
+    @CheckForNull
+    @SuppressFBWarnings("PATH_TRAVERSAL_IN")
+    public static PluginManifest explodePlugin(File source, File destDir,
+                                               @CheckForNull PluginManifestReader manifestReader) throws IOException {
         try (JarFile jarfile = new JarFile(source)) {
-            Enumeration<JarEntry> entries = jarfile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry je = entries.nextElement();
-                File file = new File(destDir, je.getName());
-                if (!file.exists()) {
-                    Files.createDirectories(file.getParentFile().toPath());
-                    file = new File(destDir, je.getName());
-                }
+            Manifest jarManifest = jarfile.getManifest();
+            PluginManifest manifest = jarManifest != null ?
+                    PluginManifest.fromAttributes(jarManifest.getMainAttributes()) : null;
+            Path target = destDir.toPath().toAbsolutePath().normalize();
+            List<JarEntry> files = new ArrayList<>();
+            Set<Path> directories = new TreeSet<>();
+            directories.add(target);
+            for (JarEntry je : Collections.list(jarfile.entries())) {
+                Path path = entryPath(target, je);
                 if (je.isDirectory()) {
-                    continue;
+                    directories.add(path);
+                } else {
+                    directories.add(path.getParent());
+                    files.add(je);
                 }
+            }
+            // parents sort before their children
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            Stream<JarEntry> extraction = files.size() > PARALLEL_EXPLODE_THRESHOLD ?
+                    files.parallelStream() : files.stream();
+            try {
+                extraction.forEach(je -> {
+                    try {
+                        extractEntry(jarfile, je, entryPath(target, je));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (manifestReader != null && manifest != null) {
+                manifestReader.put(destDir, manifest);
+            }
+            return manifest;
+        }
+    }
 
-                try (InputStream is = jarfile.getInputStream(je);
-                     FileOutputStream fo = new FileOutputStream(file)) {
-                    IOUtils.copy(is, fo);
-                }
+    private static Path entryPath(Path target, JarEntry je) throws IOException {
+        Path path = target.resolve(je.getName()).normalize();
+        if (!path.startsWith(target)) {
+            throw new IOException("Entry " + je.getName() + " is outside of the target directory " + target);
+        }
+        return path;
+    }
+
+    private static void extractEntry(JarFile jarfile, JarEntry je, Path file) throws IOException {
+        byte[] buffer = COPY_BUFFER.get();
+        try (InputStream is = jarfile.getInputStream(je);
+             OutputStream out = Files.newOutputStream(file)) {
+            int n;
+            while ((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
             }
-            return destDir;
         }
     }
 
@@ -0,0 +1,107 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import io.jenkins.tools.pluginmanager.impl.Plugin;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Plugin attributes of the {@code MANIFEST.MF} of a plugin archive, read at once.
+ */
+public final class PluginManifest {
+
+    private static final String OPTIONAL_RESOLUTION = ";resolution:=optional";
+
+    @CheckForNull
+    private final String pluginVersion;
+    @CheckForNull
+    private final String jenkinsVersion;
+    @CheckForNull
+    private final String hudsonVersion;
+    @CheckForNull
+    private final String pluginDependencies;
+
+    private PluginManifest(@CheckForNull String pluginVersion, @CheckForNull String jenkinsVersion,
+                           @CheckForNull String hudsonVersion, @CheckForNull String pluginDependencies) {
+        this.pluginVersion = pluginVersion;
+        this.jenkinsVersion = jenkinsVersion;
+        this.hudsonVersion = hudsonVersion;
+        this.pluginDependencies = pluginDependencies;
+    }
+
+    /**
+     * Reads the manifest of a plugin archive or of an exploded plugin directory
+     *
+     * @param file plugin archive or exploded plugin directory
+     * @return the plugin manifest
+     * @throws IOException if the manifest cannot be read
+     */
+    public static PluginManifest read(File file) throws IOException {
+        return fromAttributes(ManifestTools.getAttributesFromManifest(file));
+    }
+
+    /**
+     * Creates the descriptor from the main attributes of a manifest
+     *
+     * @param attributes main attributes of the manifest
+     * @return the plugin manifest
+     */
+    public static PluginManifest fromAttributes(Attributes attributes) {
+        return new PluginManifest(attributes.getValue("Plugin-Version"), attributes.getValue("Jenkins-Version"),
+                attributes.getValue("Hudson-Version"), attributes.getValue("Plugin-Dependencies"));
+    }
+
+    @CheckForNull
+    public String getPluginVersion() {
+        return pluginVersion;
+    }
+
+    @CheckForNull
+    public String getJenkinsVersion() {
+        return jenkinsVersion;
+    }
+
+    @CheckForNull
+    public String getHudsonVersion() {
+        return hudsonVersion;
+    }
+
+    /**
+     * Gets the minimum Jenkins version, plugins built for old cores only declare the {@code Hudson-Version}
+     *
+     * @return the minimum Jenkins version, or {@code null} if the manifest defines none
+     */
+    @CheckForNull
+    public String getRequiredCoreVersion() {
+        return jenkinsVersion != null ? jenkinsVersion : hudsonVersion;
+    }
+
+    @CheckForNull
+    public String getPluginDependencies() {
+        return pluginDependencies;
+    }
+
+    /**
+     * Parses the {@code Plugin-Dependencies} attribute
+     *
+     * @return new plugin instances for the dependencies, optional ones included and marked as such
+     */
+    public List<Plugin> getDependencies() {
+        List<Plugin> dependencies = new ArrayList<>();
+        if (StringUtils.isEmpty(pluginDependencies)) {
+            // not all plugin Manifests contain the Plugin-Dependencies field
+            return dependencies;
+        }
+        for (String dependency : pluginDependencies.split(",")) {
+            String[] pluginInfo = dependency.replace(OPTIONAL_RESOLUTION, "").split(":");
+            Plugin dependentPlugin = new Plugin(pluginInfo[0], pluginInfo[1], null, null);
+            dependentPlugin.setOptional(dependency.contains(OPTIONAL_RESOLUTION));
+            dependencies.add(dependentPlugin);
+        }
+        return dependencies;
+    }
+}
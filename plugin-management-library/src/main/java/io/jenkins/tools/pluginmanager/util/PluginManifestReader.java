@@ -0,0 +1,169 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import edu.umd.cs.findbugs.annotations.CheckForNull;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads {@link PluginManifest}s, optionally caching them by archive path, size and modification time so an archive
+ * which did not change is not opened again.
+ * <p>
+ * Exploded plugin directories are identified by their {@code META-INF/MANIFEST.MF} file.
+ * The reader can be used from many threads.
+ */
+public class PluginManifestReader {
+
+    private final int cacheSize;
+    @CheckForNull
+    private final Map<Key, PluginManifest> cache;
+
+    /**
+     * Creates a reader without cache
+     */
+    public PluginManifestReader() {
+        this(0);
+    }
+
+    /**
+     * @param cacheSize maximum number of cached manifests, the least recently used ones are evicted first.
+     *                  {@code 0} disables the cache.
+     */
+    public PluginManifestReader(int cacheSize) {
+        if (cacheSize < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative, was: " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+        this.cache = cacheSize > 0 ? new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PluginManifest> eldest) {
+                return size() > PluginManifestReader.this.cacheSize;
+            }
+        } : null;
+    }
+
+    /**
+     * Reads the manifest of a plugin archive or of an exploded plugin directory
+     *
+     * @param file plugin archive or exploded plugin directory
+     * @return the plugin manifest
+     * @throws IOException if the manifest cannot be read
+     */
+    public PluginManifest read(File file) throws IOException {
+        if (cache == null) {
+            return PluginManifest.read(file);
+        }
+        Key key = Key.of(file);
+        PluginManifest manifest;
+        synchronized (cache) {
+            manifest = cache.get(key);
+        }
+        if (manifest == null) {
+            manifest = PluginManifest.read(file);
+            synchronized (cache) {
+                cache.put(key, manifest);
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * Reads the manifest from the beginning of a plugin archive stream, without reading the whole archive. Archives
+     * built by the usual tools start with the manifest.
+     *
+     * @param archive stream of the plugin archive, it is not closed
+     * @return the plugin manifest, or {@code null} if the archive does not start with the manifest
+     * @throws IOException if the archive cannot be read
+     */
+    @CheckForNull
+    public static PluginManifest readFromStream(InputStream archive) throws IOException {
+        JarInputStream jar = new JarInputStream(archive);
+        Manifest manifest = jar.getManifest();
+        return manifest != null ? PluginManifest.fromAttributes(manifest.getMainAttributes()) : null;
+    }
+
+    /**
+     * Scans a plugin archive stream for the local header of {@code META-INF/MANIFEST.MF} and reads the manifest as
+     * soon as it streamed past, without waiting for the end of the archive. The entries before the manifest are
+     * skipped, the stream is left positioned after the manifest entry.
+     *
+     * @param archive stream of the plugin archive, it is not closed
+     * @return the plugin manifest, or {@code null} if the archive has no manifest or cannot be read as a stream, e.g.
+     *         because of stored entries with data descriptors
+     * @throws IOException if reading the stream fails
+     */
+    @CheckForNull
+    public static PluginManifest scanStream(InputStream archive) throws IOException {
+        ZipInputStream zip = new ZipInputStream(archive);
+        try {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (JarFile.MANIFEST_NAME.equalsIgnoreCase(entry.getName())) {
+                    return PluginManifest.fromAttributes(new Manifest(zip).getMainAttributes());
+                }
+            }
+        } catch (ZipException e) {
+            // only the complete archive can be read
+        }
+        return null;
+    }
+
+    /**
+     * Records a manifest which was read by other means, e.g. while exploding the archive
+     *
+     * @param file plugin archive or exploded plugin directory
+     * @param manifest its manifest
+     */
+    public void put(File file, PluginManifest manifest) {
+        if (cache == null) {
+            return;
+        }
+        Key key = Key.of(file);
+        synchronized (cache) {
+            cache.put(key, manifest);
+        }
+    }
+
+    private static final class Key {
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        private Key(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        static Key of(File file) {
+            File manifestFile = file.isDirectory() ? new File(file, "META-INF/MANIFEST.MF") : file;
+            return new Key(file.getAbsolutePath(), manifestFile.length(), manifestFile.lastModified());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return size == key.size && lastModified == key.lastModified && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+    }
+}
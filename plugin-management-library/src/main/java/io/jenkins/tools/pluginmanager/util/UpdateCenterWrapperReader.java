@@ -0,0 +1,161 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.Reader;
+
+/**
+ * Removes the {@code updateCenter.post( ... );} wrapper of the update center metadata while it is read, so the JSON
+ * content can be parsed from the stream without loading the document in memory first.
+ * <p>
+ * The wrapper is only recognised at the very beginning of the document, other documents are passed through
+ * unchanged. The closing parenthesis, semicolon and whitespace ending a wrapped document are held back until more
+ * content follows, and dropped at the end of the document.
+ *
+ * @see PluginManagerUtils#removePossibleWrapperText(String)
+ */
+public class UpdateCenterWrapperReader extends FilterReader {
+
+    static final String PREFIX = "updateCenter.post(";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private boolean started;
+    private boolean wrapped;
+    private boolean eof;
+    private char[] buffer;
+    // content ready to be returned
+    private final StringBuilder ready = new StringBuilder();
+    private int readyPosition;
+    // trailing characters which may belong to the wrapper suffix
+    private final StringBuilder held = new StringBuilder();
+
+    /**
+     * @param in reader of the update center metadata
+     */
+    public UpdateCenterWrapperReader(Reader in) {
+        super(new PushbackReader(in, PREFIX.length()));
+    }
+
+    @Override
+    public int read() throws IOException {
+        char[] c = new char[1];
+        int n;
+        do {
+            n = read(c, 0, 1);
+        } while (n == 0);
+        return n == -1 ? -1 : c[0];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (!started) {
+            started = true;
+            wrapped = skipPrefix();
+        }
+        if (!wrapped) {
+            return in.read(cbuf, off, len);
+        }
+        if (len == 0) {
+            return 0;
+        }
+        while (readyPosition == ready.length()) {
+            if (eof) {
+                return -1;
+            }
+            fill();
+        }
+        int count = Math.min(len, ready.length() - readyPosition);
+        ready.getChars(readyPosition, readyPosition + count, cbuf, off);
+        readyPosition += count;
+        return count;
+    }
+
+    private void fill() throws IOException {
+        ready.setLength(0);
+        readyPosition = 0;
+        int n = in.read(buffer, 0, buffer.length);
+        if (n == -1) {
+            // what was held back is the wrapper suffix
+            eof = true;
+            held.setLength(0);
+            return;
+        }
+        int end = n;
+        while (end > 0 && isSuffix(buffer[end - 1])) {
+            end--;
+        }
+        if (end == 0) {
+            held.append(buffer, 0, n);
+            return;
+        }
+        ready.append(held).append(buffer, 0, end);
+        held.setLength(0);
+        held.append(buffer, end, n - end);
+    }
+
+    private boolean skipPrefix() throws IOException {
+        char[] prefix = new char[PREFIX.length()];
+        int length = 0;
+        while (length < prefix.length) {
+            int n = in.read(prefix, length, prefix.length - length);
+            if (n == -1) {
+                break;
+            }
+            length += n;
+        }
+        if (length == prefix.length && PREFIX.equals(new String(prefix))) {
+            buffer = new char[BUFFER_SIZE];
+            return true;
+        }
+        if (length > 0) {
+            ((PushbackReader) in).unread(prefix, 0, length);
+        }
+        return false;
+    }
+
+    private static boolean isSuffix(char c) {
+        return c == ')' || c == ';' || Character.isWhitespace(c);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("Skip value must not be negative: " + n);
+        }
+        char[] skipped = new char[(int) Math.min(n, BUFFER_SIZE)];
+        long remaining = n;
+        while (remaining > 0) {
+            int count = read(skipped, 0, (int) Math.min(remaining, skipped.length));
+            if (count == -1) {
+                break;
+            }
+            remaining -= count;
+        }
+        return n - remaining;
+    }
+
+    @Override
+    public boolean ready() throws IOException {
+        if (!started) {
+            return in.ready();
+        }
+        return wrapped ? readyPosition < ready.length() : in.ready();
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+}
@@ -0,0 +1,104 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import io.jenkins.tools.pluginmanager.config.Config;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchResolverTest {
+
+    @TempDir
+    private File tmpDir;
+
+    private UpdateCenterMetadata metadata;
+
+    @BeforeEach
+    void before() {
+        JSONObject updateCenter = new JSONObject("""
+                {
+                  "plugins": {
+                    "workflow-job": {
+                      "name": "workflow-job", "version": "2.40", "requiredCore": "2.222.1", "sha256": "abc",
+                      "dependencies": [ { "name": "workflow-api", "version": "2.41", "optional": false } ]
+                    },
+                    "workflow-api": {
+                      "name": "workflow-api", "version": "2.41", "requiredCore": "2.222.1", "sha256": "abc",
+                      "dependencies": []
+                    },
+                    "mailer": {
+                      "name": "mailer", "version": "1.32.1", "requiredCore": "2.222.1", "sha256": "abc",
+                      "dependencies": []
+                    }
+                  }
+                }
+                """);
+        JSONObject pluginVersions = new JSONObject("""
+                {
+                  "plugins": {
+                    "workflow-api": {
+                      "2.41": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] }
+                    },
+                    "mailer": {
+                      "1.30": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] }
+                    }
+                  }
+                }
+                """);
+        metadata = new UpdateCenterMetadata(null, updateCenter, pluginVersions, null, Collections.emptyMap());
+    }
+
+    @Test
+    void resolvesEveryConfigAgainstSharedMetadata() {
+        Config first = config(Collections.singletonList(new Plugin("workflow-job", "latest", null, null)));
+        Config second = config(Collections.singletonList(new Plugin("mailer", "1.30", null, null)));
+
+        List<BatchResolver.Result> results = new BatchResolver(metadata, 2).resolve(Arrays.asList(first, second));
+
+        assertThat(results).hasSize(2);
+        assertThat(results.get(0).isSuccessful()).isTrue();
+        assertThat(results.get(0).getConfig()).isSameAs(first);
+        assertThat(results.get(0).getEffectivePlugins()).containsOnlyKeys("workflow-job", "workflow-api");
+        assertThat(results.get(1).isSuccessful()).isTrue();
+        assertThat(results.get(1).getConfig()).isSameAs(second);
+        assertThat(results.get(1).getPluginsToBeDownloaded())
+                .extracting(plugin -> plugin.getName() + ":" + plugin.getVersion())
+                .containsExactly("mailer:1.30");
+    }
+
+    @Test
+    void failureOfOneConfigDoesNotAffectOthers() {
+        Config failing = Config.builder()
+                .withPluginDir(new File(tmpDir, "failing"))
+                .withJenkinsWar(new File(tmpDir, "missing.war").getAbsolutePath())
+                .withDoDownload(false)
+                .withUseLatestAll(true)
+                .withUseLatestSpecified(true)
+                .withPlugins(Collections.singletonList(new Plugin("mailer", "latest", null, null)))
+                .build();
+        Config passing = config(Collections.singletonList(new Plugin("mailer", "latest", null, null)));
+
+        List<BatchResolver.Result> results = new BatchResolver(metadata).resolve(Arrays.asList(failing, passing));
+
+        assertThat(results.get(0).isSuccessful()).isFalse();
+        assertThat(results.get(0).getFailure()).isInstanceOf(PluginDependencyStrategyException.class);
+        assertThat(results.get(0).getEffectivePlugins()).isEmpty();
+        assertThat(results.get(1).isSuccessful()).isTrue();
+        assertThat(results.get(1).getEffectivePlugins()).containsOnlyKeys("mailer");
+    }
+
+    private Config config(List<Plugin> plugins) {
+        return Config.builder()
+                .withPluginDir(new File(tmpDir, "plugins"))
+                .withJenkinsWar(new File(tmpDir, "missing.war").getAbsolutePath())
+                .withDoDownload(false)
+                .withPlugins(plugins)
+                .build();
+    }
+}
@@ -2,15 +2,32 @@ package io.jenkins.tools.pluginmanager.impl;
 
 import io.jenkins.tools.pluginmanager.config.LogOutput;
 import java.io.File;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.CleanupMode;
 import org.junit.jupiter.api.io.TempDir;
 
 import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrNormalized;
+import static java.nio.file.Files.list;
+import static java.nio.file.Files.newInputStream;
 import static java.nio.file.Files.setPosixFilePermissions;
 import static java.nio.file.Files.write;
 import static java.time.Clock.systemDefaultZone;
@@ -96,6 +113,164 @@ class CacheManagerTest {
         assertThat(jsonObject).isNull();
     }
 
+    @Test
+    void entriesWithATimeToLiveExpireAfterIt() {
+        CacheManager manager = cacheManager(inTheFuture(120));
+
+        manager.addToCache("the-cache-key", new JSONObject().put("value", 123));
+
+        assertThat(manager.retrieveFromCache("the-cache-key", Duration.ofHours(3))).isNotNull();
+        assertThat(manager.retrieveFromCache("the-cache-key", Duration.ofMinutes(90))).isNull();
+    }
+
+    @Test
+    void staleCacheReturnsExpiredJsonWithinMaxStaleness() {
+        CacheManager manager = cacheManager(inTheFuture(61), Duration.ofMinutes(30));
+
+        manager.addToCache("the-cache-key", new JSONObject().put("value", 123));
+
+        assertThat(manager.retrieveFromCache("the-cache-key")).isNull();
+        assertThat(manager.retrieveStaleFromCache("the-cache-key").toMap())
+                .isEqualTo(singletonMap("value", 123));
+    }
+
+    @Test
+    void staleCacheReturnsNullWhenJsonIsOlderThanMaxStaleness() {
+        CacheManager manager = cacheManager(inTheFuture(91), Duration.ofMinutes(30));
+
+        manager.addToCache("the-cache-key", new JSONObject());
+
+        assertThat(manager.retrieveStaleFromCache("the-cache-key")).isNull();
+    }
+
+    @Test
+    void staleCacheReturnsNullWithoutMaxStaleness() {
+        CacheManager manager = cacheManagerWithExpiredEntries();
+
+        manager.addToCache("the-cache-key", new JSONObject());
+
+        assertThat(manager.retrieveStaleFromCache("the-cache-key")).isNull();
+    }
+
+    @Test
+    void cacheDoesNotLeaveTemporaryFilesBehind() throws Exception {
+        CacheManager manager = cacheManager();
+
+        manager.addToCache("the-cache-key", new JSONObject().put("value", 123));
+
+        try (Stream<Path> files = list(cacheFolder())) {
+            assertThat(files).extracting(path -> path.getFileName().toString())
+                    .containsExactly("the-cache-key.json");
+        }
+    }
+
+    @Test
+    void compressedCacheStoresGzippedEntries() throws Exception {
+        Path cacheFolder = cacheFolder();
+        CacheManager manager = new CacheManager(cacheFolder, new LogOutput(!VERBOSE), Duration.ZERO, true);
+        manager.createCache();
+
+        manager.addToCache("the-cache-key", new JSONObject().put("value", 123));
+
+        try (InputStream stream = new GZIPInputStream(newInputStream(cacheFolder.resolve("the-cache-key.json.gz")))) {
+            assertThat(new JSONObject(new JSONTokener(stream)).toMap()).isEqualTo(singletonMap("value", 123));
+        }
+        assertThat(manager.retrieveFromCache("the-cache-key").toMap())
+                .isEqualTo(singletonMap("value", 123));
+    }
+
+    @Test
+    void cacheReadsEntriesWrittenWithOtherCompressionSetting() {
+        CacheManager plainManager = cacheManager();
+        CacheManager compressingManager = new CacheManager(cacheFolder(), new LogOutput(!VERBOSE), Duration.ZERO, true);
+
+        compressingManager.addToCache("compressed-key", new JSONObject().put("value", 123));
+        plainManager.addToCache("plain-key", new JSONObject().put("value", 456));
+
+        assertThat(plainManager.retrieveFromCache("compressed-key").toMap())
+                .isEqualTo(singletonMap("value", 123));
+        assertThat(compressingManager.retrieveFromCache("plain-key").toMap())
+                .isEqualTo(singletonMap("value", 456));
+    }
+
+    @Test
+    void concurrentRetrievalsOfSameKeyLoadOnlyOnce() throws Exception {
+        CacheManager cacheManager = cacheManager();
+        CacheManager anotherCacheManager = new CacheManager(cacheFolder(), new LogOutput(!VERBOSE));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<JSONObject> first = executor.submit(() -> cacheManager.retrieveFromCacheOrLoad("the-cache-key", () -> {
+                loads.incrementAndGet();
+                loading.countDown();
+                awaitQuietly(release);
+                return new JSONObject().put("value", 123);
+            }));
+            loading.await();
+            List<Future<JSONObject>> others = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                CacheManager manager = i % 2 == 0 ? cacheManager : anotherCacheManager;
+                others.add(executor.submit(() -> manager.retrieveFromCacheOrLoad("the-cache-key", () -> {
+                    loads.incrementAndGet();
+                    return new JSONObject().put("value", 456);
+                })));
+            }
+            release.countDown();
+
+            assertThat(first.get().toMap()).isEqualTo(singletonMap("value", 123));
+            for (Future<JSONObject> other : others) {
+                assertThat(other.get().toMap()).isEqualTo(singletonMap("value", 123));
+            }
+            assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void retrieveFromCacheOrLoadReturnsValueCachedByAnotherProcess() {
+        CacheManager cacheManager = cacheManager();
+        new CacheManager(cacheFolder(), new LogOutput(!VERBOSE))
+                .addToCache("the-cache-key", new JSONObject().put("value", 123));
+
+        JSONObject jsonObject = cacheManager.retrieveFromCacheOrLoad("the-cache-key", () -> {
+            throw new AssertionError("should not load a cached value");
+        });
+
+        assertThat(jsonObject.toMap()).isEqualTo(singletonMap("value", 123));
+    }
+
+    @Test
+    void retrieveFromCacheOrLoadStopsWaitingForAStuckLock() throws Exception {
+        CacheManager cacheManager = cacheManager();
+        cacheManager.setLockTimeout(Duration.ofMillis(300));
+
+        try (FileChannel channel = FileChannel.open(cacheFolder().resolve("the-cache-key.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock stuck = channel.lock()) {
+            long start = System.nanoTime();
+
+            JSONObject jsonObject = cacheManager.retrieveFromCacheOrLoad("the-cache-key",
+                    () -> new JSONObject().put("value", 123));
+
+            assertThat(jsonObject.toMap()).isEqualTo(singletonMap("value", 123));
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(Duration.ofMillis(300));
+            assertThat(stuck.isValid()).isTrue();
+        }
+    }
+
+    @Test
+    void retrieveFromCacheOrLoadCachesLoadedValue() {
+        CacheManager cacheManager = cacheManager();
+
+        cacheManager.retrieveFromCacheOrLoad("the-cache-key", () -> new JSONObject().put("value", 123));
+
+        assertThat(cacheManager.retrieveFromCache("the-cache-key").toMap())
+                .isEqualTo(singletonMap("value", 123));
+    }
+
     @Test
     void messageThatCacheFolderIsCreatedIsWrittenToSystemErrWhenItDidNotExist() throws Exception {
         String out = tapSystemErrNormalized(this::cacheManager);
@@ -162,6 +337,14 @@ class CacheManagerTest {
                         + "java.nio.file.AccessDeniedException:");
     }
 
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     private void skipOnWindows() {
         assumeFalse(IS_OS_WINDOWS);
     }
@@ -178,9 +361,17 @@ class CacheManagerTest {
                 oneHourAndOneMinuteInTheFuture);
     }
 
+    private static Clock inTheFuture(long minutes) {
+        return Clock.fixed(systemUTC().instant().plus(minutes, MINUTES), ZoneId.systemDefault());
+    }
+
     private CacheManager cacheManager(Clock clock) {
+        return cacheManager(clock, Duration.ZERO);
+    }
+
+    private CacheManager cacheManager(Clock clock, Duration maxStaleness) {
         Path cacheFolder = cacheFolder();
-        CacheManager manager = new CacheManager(cacheFolder, new LogOutput(VERBOSE), clock, true);
+        CacheManager manager = new CacheManager(cacheFolder, new LogOutput(VERBOSE), clock, true, maxStaleness, false);
         manager.createCache();
         return manager;
     }
@@ -0,0 +1,56 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+class DownloadPlanTest {
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void largestPluginsAreDownloadedFirst() {
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        Plugin git = new Plugin("git", "4.0", null, null);
+        Plugin junit = new Plugin("junit", "1.30", null, null);
+        Plugin custom = new Plugin("custom", "1.0", "https://example.com/custom.hpi", null);
+        Map<String, DownloadPlan.Source> sources = new HashMap<>();
+        sources.put("mailer", new DownloadPlan.Source("mirror-a.example.com", 100_000));
+        sources.put("git", new DownloadPlan.Source("mirror-b.example.com", 3_000_000));
+        sources.put("junit", new DownloadPlan.Source("mirror-a.example.com", 2_000_000));
+        sources.put("custom", new DownloadPlan.Source("example.com", DownloadPlan.UNKNOWN_SIZE));
+
+        DownloadPlan plan = new DownloadPlan(Arrays.asList(mailer, custom, junit, git), sources);
+
+        assertThat(plan.getPlugins()).containsExactly(git, junit, mailer, custom);
+        assertThat(plan.getTotalBytes()).isEqualTo(5_100_000);
+        assertThat(plan.getUnknownSizes()).isOne();
+        assertThat(plan.getBytesPerHost()).containsExactly(
+                entry("mirror-a.example.com", 2_100_000L), entry("mirror-b.example.com", 3_000_000L));
+        assertThat(plan.describe()).startsWith("Expected download volume: 4 MB for 4 plugins, 1 of unknown size (");
+    }
+
+    @Test
+    void missingFreeSpaceFailsBeforeTheDownloads() {
+        List<Plugin> plugins = Arrays.asList(new Plugin("mailer", "1.32", null, null));
+        Map<String, DownloadPlan.Source> sources = new HashMap<>();
+        sources.put("mailer", new DownloadPlan.Source("mirror.example.com", 100_000));
+        new DownloadPlan(plugins, sources).checkFreeSpace(folder, new File(folder, "plugins"));
+
+        sources.put("mailer", new DownloadPlan.Source("mirror.example.com", Long.MAX_VALUE / 2));
+        DownloadPlan plan = new DownloadPlan(plugins, sources);
+
+        assertThatThrownBy(() -> plan.checkFreeSpace(folder, new File(folder, "plugins")))
+                .isInstanceOf(DownloadPluginException.class)
+                .hasMessageContaining("Not enough free space in " + folder);
+    }
+}
@@ -0,0 +1,70 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IncrementalResolutionTest {
+
+    @TempDir
+    private File folder;
+
+    private File file;
+
+    @BeforeEach
+    void saveResolution() throws IOException {
+        file = new File(folder, "resolution.json");
+        Plugin git = new Plugin("git", "4.0", null, null);
+        Plugin scmApi = new Plugin("scm-api", "2.6", null, null);
+        git.setDependencies(Collections.singletonList(new Plugin("scm-api", "2.6", null, null)));
+        scmApi.setDependencies(Collections.emptyList());
+        Plugin mailer = new Plugin("mailer", "1.32", null, null).withoutDependencies();
+
+        IncrementalResolution resolution = IncrementalResolution.load(file, "key", Arrays.asList(git, mailer));
+        resolution.record(git, graph(git, scmApi));
+        resolution.record(mailer, graph(mailer));
+        resolution.save(graph(git, scmApi, mailer));
+    }
+
+    @Test
+    void graphsContainingChangedRequirementsAreResolvedAgain() {
+        Plugin git = new Plugin("git", "4.0", null, null);
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        List<Plugin> requested = Arrays.asList(git, mailer, new Plugin("scm-api", "2.7", null, null));
+
+        IncrementalResolution resolution = IncrementalResolution.load(file, "key", requested);
+
+        assertThat(resolution.reuse(git)).isNull();
+        assertThat(resolution.reuse(mailer)).containsOnlyKeys("mailer");
+        assertThat(resolution.getReused()).isOne();
+    }
+
+    @Test
+    void nothingIsReusedForOtherMetadataButChangesAreDescribed() {
+        Plugin git = new Plugin("git", "4.0", null, null);
+
+        IncrementalResolution resolution = IncrementalResolution.load(file, "other", Collections.singletonList(git));
+
+        assertThat(resolution.reuse(git)).isNull();
+        assertThat(resolution.hasPrevious()).isTrue();
+        assertThat(resolution.describeChanges(graph(git, new Plugin("scm-api", "2.5", null, null))))
+                .containsExactly("removed mailer 1.32", "downgraded scm-api 2.6 -> 2.5");
+    }
+
+    private static Map<String, Plugin> graph(Plugin... plugins) {
+        Map<String, Plugin> graph = new LinkedHashMap<>();
+        for (Plugin plugin : plugins) {
+            graph.put(plugin.getName(), plugin);
+        }
+        return graph;
+    }
+}
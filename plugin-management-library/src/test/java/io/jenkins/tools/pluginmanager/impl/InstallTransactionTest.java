@@ -0,0 +1,108 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import io.jenkins.tools.pluginmanager.config.LogOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InstallTransactionTest {
+
+    @TempDir
+    private File folder;
+
+    private File pluginDir;
+    private File downloads;
+    private final LogOutput logOutput = new LogOutput(false);
+
+    @BeforeEach
+    void createDirectories() throws IOException {
+        pluginDir = new File(folder, "plugins");
+        downloads = new File(folder, "downloads");
+        Files.createDirectories(pluginDir.toPath());
+        Files.createDirectories(downloads.toPath());
+        write(new File(pluginDir, "mailer.jpi"), "mailer 1.32");
+        File exploded = new File(pluginDir, "git.jpi");
+        Files.createDirectories(exploded.toPath());
+        write(new File(exploded, "index.jelly"), "git 4.0");
+    }
+
+    @Test
+    void installsEveryPluginAndBacksUpThePreviousArchives() throws IOException {
+        InstallTransaction transaction = new InstallTransaction(pluginDir, logOutput);
+        transaction.prepare("mailer.jpi", "mailer.bak", write(new File(downloads, "mailer.jpi"), "mailer 1.33"));
+        transaction.prepare("git.jpi", "git.bak", write(new File(downloads, "git.jpi"), "git 4.1"));
+        transaction.prepare("structs.jpi", "structs.bak", write(new File(downloads, "structs.jpi"), "structs 1.7"));
+
+        transaction.commit();
+
+        assertThat(new File(pluginDir, "mailer.jpi")).hasContent("mailer 1.33");
+        assertThat(new File(pluginDir, "mailer.bak")).hasContent("mailer 1.32");
+        assertThat(new File(pluginDir, "git.jpi")).hasContent("git 4.1");
+        assertThat(new File(pluginDir, "structs.jpi")).hasContent("structs 1.7");
+        assertThat(pluginDir.list()).containsExactlyInAnyOrder("mailer.jpi", "mailer.bak", "git.jpi", "structs.jpi");
+    }
+
+    @Test
+    void rollsBackWhenAPluginCannotBeInstalled() throws IOException {
+        InstallTransaction transaction = new InstallTransaction(pluginDir, logOutput);
+        transaction.prepare("git.jpi", "git.bak", write(new File(downloads, "git.jpi"), "git 4.1"));
+        transaction.prepare("mailer.jpi", "mailer.bak", write(new File(downloads, "mailer.jpi"), "mailer 1.33"));
+        // the staged plugin disappears
+        Files.delete(new File(pluginDir, ".mailer.jpi.new").toPath());
+
+        assertThatThrownBy(transaction::commit).isInstanceOf(IOException.class);
+
+        assertThat(new File(pluginDir, "mailer.jpi")).hasContent("mailer 1.32");
+        assertThat(new File(pluginDir, "git.jpi/index.jelly")).hasContent("git 4.0");
+        assertThat(pluginDir.list()).containsExactlyInAnyOrder("mailer.jpi", "git.jpi");
+    }
+
+    @Test
+    void abortDeletesThePluginsStagedBeforeAFailure() throws IOException {
+        InstallTransaction transaction = new InstallTransaction(pluginDir, logOutput);
+        transaction.prepare("mailer.jpi", "mailer.bak", write(new File(downloads, "mailer.jpi"), "mailer 1.33"));
+        File exploded = new File(pluginDir, ".structs.jpi.tmp");
+        Files.createDirectories(exploded.toPath());
+        transaction.prepare("structs.jpi", "structs.bak", exploded);
+
+        assertThatThrownBy(() -> transaction.prepare("junit.jpi", "junit.bak", new File(downloads, "missing.jpi")))
+                .isInstanceOf(IOException.class);
+        transaction.abort();
+
+        assertThat(pluginDir.list()).containsExactlyInAnyOrder("mailer.jpi", "git.jpi");
+        assertThat(new File(pluginDir, "mailer.jpi")).hasContent("mailer 1.32");
+    }
+
+    @Test
+    void recoversAnInterruptedInstallation() throws IOException {
+        // the process died after mailer.jpi was backed up and git.jpi was installed
+        Files.move(new File(pluginDir, "mailer.jpi").toPath(), new File(pluginDir, "mailer.bak").toPath());
+        write(new File(pluginDir, ".mailer.jpi.new"), "mailer 1.33");
+        Files.move(new File(pluginDir, "git.jpi").toPath(), new File(pluginDir, ".git.jpi.old").toPath());
+        write(new File(pluginDir, "git.jpi"), "git 4.1");
+        write(new File(pluginDir, InstallTransaction.JOURNAL), "[" +
+                "{\"target\": \"git.jpi\", \"backup\": \"git.bak\", \"staged\": \".git.jpi.new\", " +
+                "\"previous\": \"directory\"}," +
+                "{\"target\": \"mailer.jpi\", \"backup\": \"mailer.bak\", \"staged\": \".mailer.jpi.new\", " +
+                "\"previous\": \"file\"}]");
+
+        assertThat(InstallTransaction.recover(pluginDir, logOutput)).isTrue();
+
+        assertThat(new File(pluginDir, "mailer.jpi")).hasContent("mailer 1.32");
+        assertThat(new File(pluginDir, "git.jpi/index.jelly")).hasContent("git 4.0");
+        assertThat(pluginDir.list()).containsExactlyInAnyOrder("mailer.jpi", "git.jpi");
+        assertThat(InstallTransaction.recover(pluginDir, logOutput)).isFalse();
+    }
+
+    private static File write(File file, String content) throws IOException {
+        Files.write(file.toPath(), singletonList(content));
+        return file;
+    }
+}
@@ -0,0 +1,60 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import hudson.util.VersionNumber;
+import io.jenkins.tools.pluginmanager.config.HashFunction;
+import io.jenkins.tools.pluginmanager.config.PluginInputException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LockfileTest {
+
+    @TempDir
+    private File folder;
+
+    @Test
+    void writesAndReadsLockedPlugins() throws IOException {
+        Lockfile lockfile = new Lockfile(new VersionNumber("2.440.1"), HashFunction.SHA512, Arrays.asList(
+                new Lockfile.Entry("mailer", "1.32", "https://updates.jenkins.io/download/plugins/mailer/1.32/mailer.hpi",
+                        "abc", "2.361.4"),
+                new Lockfile.Entry("custom", "1.0", "https://example.com/custom.hpi", null, null)));
+        File file = new File(folder, "locks/plugins-lock.json");
+
+        lockfile.write(file);
+        Lockfile read = Lockfile.read(file);
+
+        assertThat(read.getJenkinsVersion()).isEqualTo(new VersionNumber("2.440.1"));
+        assertThat(read.getHashFunction()).isEqualTo(HashFunction.SHA512);
+        List<Plugin> plugins = read.toPlugins();
+        assertThat(plugins).extracting(Plugin::getName).containsExactly("custom", "mailer");
+        assertThat(plugins.get(0).getChecksum()).isNull();
+        assertThat(plugins.get(0).getUrl()).isEqualTo("https://example.com/custom.hpi");
+        assertThat(plugins.get(1).getVersion()).hasToString("1.32");
+        assertThat(plugins.get(1).getChecksum()).isEqualTo("abc");
+        assertThat(plugins.get(1).getJenkinsVersion()).hasToString("2.361.4");
+    }
+
+    @Test
+    void rejectsInvalidLockfiles() throws IOException {
+        File notJson = new File(folder, "not-json.json");
+        Files.write(notJson.toPath(), "mailer:1.32".getBytes(StandardCharsets.UTF_8));
+        File unsupported = new File(folder, "unsupported.json");
+        Files.write(unsupported.toPath(), "{\"lockfileVersion\": 99, \"hashFunction\": \"sha256\", \"plugins\": []}"
+                .getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> Lockfile.read(notJson)).isInstanceOf(PluginInputException.class);
+        assertThatThrownBy(() -> Lockfile.read(unsupported))
+                .isInstanceOf(PluginInputException.class)
+                .hasMessageContaining("Unsupported lockfile version 99");
+        assertThatThrownBy(() -> Lockfile.read(new File(folder, "missing.json")))
+                .isInstanceOf(PluginInputException.class);
+    }
+}
@@ -2,19 +2,33 @@ package io.jenkins.tools.pluginmanager.impl;
 
 import hudson.util.VersionNumber;
 import io.jenkins.tools.pluginmanager.config.Config;
+import io.jenkins.tools.pluginmanager.config.LogOutput;
 import io.jenkins.tools.pluginmanager.config.OutputFormat;
 import io.jenkins.tools.pluginmanager.config.Settings;
 import io.jenkins.tools.pluginmanager.parsers.StdOutPluginOutputConverter;
 import io.jenkins.tools.pluginmanager.util.ManifestTools;
+import io.jenkins.tools.pluginmanager.util.PluginManifest;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.json.JSONArray;
@@ -27,7 +41,9 @@ import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemErrNor
 import static com.github.stefanbirkner.systemlambda.SystemLambda.tapSystemOutNormalized;
 import static io.jenkins.tools.pluginmanager.util.PluginManagerUtils.dirName;
 import static java.nio.file.Files.createDirectory;
+import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
+import static java.util.Collections.singletonMap;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertAll;
@@ -36,16 +52,20 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.AdditionalMatchers.not;
 import static org.mockito.ArgumentMatchers.nullable;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.timeout;
 
 class PluginManagerTest {
 
@@ -110,6 +130,52 @@ class PluginManagerTest {
         pluginManagerSpy.start();
     }
 
+    @Test
+    void startScansPluginsWhileRetrievingUpdateCenter() {
+        Config config = Config.builder()
+                .withPluginDir(new File(folder, "plugins"))
+                .withJenkinsWar(Settings.DEFAULT_WAR)
+                .withJenkinsUc(Settings.DEFAULT_UPDATE_CENTER)
+                .withPlugins(new ArrayList<>())
+                .withDoDownload(false)
+                .build();
+        PluginManager pluginManagerSpy = spy(new PluginManager(config));
+        VersionNumber versionNumber = new VersionNumber("2.182");
+        doReturn(versionNumber).when(pluginManagerSpy).getJenkinsVersionFromWar();
+        CountDownLatch bundledScanned = new CountDownLatch(1);
+        CountDownLatch installedScanned = new CountDownLatch(1);
+        Map<String, Plugin> bundled = new HashMap<>();
+        bundled.put("git", new Plugin("git", "1.2", null, null));
+        Map<String, Plugin> installed = new HashMap<>();
+        installed.put("p4", new Plugin("p4", "1.3.0", null, null));
+        doAnswer(invocation -> {
+            bundledScanned.countDown();
+            return bundled;
+        }).when(pluginManagerSpy).bundledPlugins();
+        doAnswer(invocation -> {
+            installedScanned.countDown();
+            return installed;
+        }).when(pluginManagerSpy).installedPlugins();
+        // the update center retrieval only completes once both scans ran concurrently with it
+        doAnswer(invocation -> {
+            assertTrue(bundledScanned.await(10, TimeUnit.SECONDS));
+            assertTrue(installedScanned.await(10, TimeUnit.SECONDS));
+            return null;
+        }).when(pluginManagerSpy).getUCJson(versionNumber);
+        doReturn(new HashMap<>()).when(pluginManagerSpy).getSecurityWarnings();
+        doReturn(new HashMap<>()).when(pluginManagerSpy).findPluginsAndDependencies(anyList());
+        doReturn(new ArrayList<>()).when(pluginManagerSpy).findPluginsToDownload(anyMap());
+        doReturn(new HashMap<>()).when(pluginManagerSpy).findEffectivePlugins(anyList());
+        doNothing().when(pluginManagerSpy).listPlugins();
+        doNothing().when(pluginManagerSpy).checkVersionCompatibility(any(), anyList());
+
+        pluginManagerSpy.start();
+
+        verify(pluginManagerSpy).bundledPlugins();
+        verify(pluginManagerSpy).installedPlugins();
+        verify(pluginManagerSpy).findPluginsToDownload(anyMap());
+    }
+
     @Test
     void startNoDirectoryTest() throws Exception {
         // by using a file as the parent dir of the plugin folder we force that
@@ -677,6 +743,7 @@ class PluginManagerTest {
         Plugin lockableResource2 = new Plugin("lockable-resources", "2.3.0", null, null);
         Plugin cucumberReports1 = new Plugin("cucumber-reports", "1.2.1", null, null);
         Plugin cucumberReports2 = new Plugin("cucumber-reports", "1.4.1", null, null);
+        Plugin cucumberReports3 = new Plugin("cucumber-reports", "2.5.3", null, null);
         Plugin sshAgents1 = new Plugin("ssh-slaves", "0.9", null, null);
         Plugin sshAgents2 = new Plugin("ssh-slaves", "9.2", null, null);
 
@@ -686,8 +753,8 @@ class PluginManagerTest {
                 () -> assertThat(pm.warningExists(lockableResource2)).isFalse(),
                 () -> assertThat(pm.warningExists(cucumberReports1)).isFalse(),
                 () -> assertThat(pm.warningExists(cucumberReports2)).isTrue(),
-                //() -> assertThat(pm.warningExists(cucumberReports3)).isFalse(),
-                // currently fails since 2.5.3 matches pattern even though 2.5.1 is last effected version
+                // 2.5.3 matches the pattern, but 2.5.1 is the last affected version
+                () -> assertThat(pm.warningExists(cucumberReports3)).isFalse(),
                 () -> assertThat(pm.warningExists(sshAgents1)).isTrue(),
                 () -> assertThat(pm.warningExists(sshAgents2)).isFalse()
         );
@@ -793,6 +860,418 @@ class PluginManagerTest {
                 .isInstanceOf(DownloadPluginException.class);
     }
 
+    @Test
+    void downloadPluginsReusesEarlyDownloadsOfPinnedPlugins() throws IOException {
+        createDirectory(cfg.getPluginDir().toPath());
+        pm.setPluginInfoJson(new JSONObject("""
+                {
+                  "plugins": {
+                    "mailer": { "1.32": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] } },
+                    "structs": { "1.7": { "sha256": "def", "requiredCore": "2.222.1", "dependencies": [] } }
+                  }
+                }
+                """));
+        Map<String, Plugin> installedPlugins = new HashMap<>();
+        installedPlugins.put("structs", new Plugin("structs", "1.7", null, null));
+        pm.setInstalledPluginVersions(installedPlugins);
+        Plugin pinned = new Plugin("mailer", "1.32", null, null);
+        Plugin latest = new Plugin("git", "latest", null, null);
+        Plugin installed = new Plugin("structs", "1.7", null, null);
+        PluginManager pluginManagerSpy = spy(pm);
+        doAnswer(invocation -> {
+            File archive = invocation.getArgument(1);
+            Files.write(archive.toPath(), singletonList(((Plugin) invocation.getArgument(0)).getName()));
+            return true;
+        }).when(pluginManagerSpy).downloadPlugin(any(Plugin.class), any(File.class));
+
+        pluginManagerSpy.startEarlyDownloads(Arrays.asList(pinned, latest, installed));
+
+        assertThat(pinned.getChecksum()).isEqualTo("abc");
+        verify(pluginManagerSpy, timeout(10_000)).downloadPlugin(eq(pinned), any(File.class));
+
+        pluginManagerSpy.downloadPlugins(Arrays.asList(pinned, latest));
+
+        verify(pluginManagerSpy, times(1)).downloadPlugin(eq(pinned), any(File.class));
+        verify(pluginManagerSpy, times(1)).downloadPlugin(eq(latest), any(File.class));
+        verify(pluginManagerSpy, never()).downloadPlugin(eq(installed), any(File.class));
+        assertThat(new File(cfg.getPluginDir(), "mailer.jpi")).hasContent("mailer");
+        assertThat(new File(cfg.getPluginDir(), "git.jpi")).hasContent("git");
+    }
+
+    @Test
+    void failedEarlyDownloadOfASupersededVersionIsNotReported() throws IOException {
+        createDirectory(cfg.getPluginDir().toPath());
+        pm.setPluginInfoJson(new JSONObject("""
+                {
+                  "plugins": {
+                    "mailer": { "1.32": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] } }
+                  }
+                }
+                """));
+        Plugin pinned = new Plugin("mailer", "1.32", null, null);
+        Plugin resolved = new Plugin("mailer", "1.40", null, null);
+        PluginManager pluginManagerSpy = spy(pm);
+        doAnswer(invocation -> {
+            Plugin plugin = invocation.getArgument(0);
+            File archive = invocation.getArgument(1);
+            Files.write(archive.toPath(), singletonList(plugin.getVersion().toString()));
+            if (plugin == pinned) {
+                // e.g. a truncated archive
+                pluginManagerSpy.getFailedPlugins().add(plugin);
+                return false;
+            }
+            return true;
+        }).when(pluginManagerSpy).downloadPlugin(any(Plugin.class), any(File.class));
+
+        pluginManagerSpy.startEarlyDownloads(singletonList(pinned));
+        verify(pluginManagerSpy, timeout(10_000)).downloadPlugin(eq(pinned), any(File.class));
+
+        pluginManagerSpy.downloadPlugins(singletonList(resolved));
+
+        verify(pluginManagerSpy, times(1)).downloadPlugin(eq(resolved), any(File.class));
+        assertThat(pm.getFailedPlugins()).isEmpty();
+        assertThat(new File(cfg.getPluginDir(), "mailer.jpi")).hasContent("1.40");
+    }
+
+    @Test
+    void downloadPluginsExplodesThePluginsIntoTheirFinalDirectories() throws IOException {
+        createDirectory(cfg.getPluginDir().toPath());
+        Files.write(new File(cfg.getPluginDir(), "ssh-credentials.jpi").toPath(), singletonList("previous"));
+        PluginManager pluginManagerSpy = spy(new PluginManager(cfg.toBuilder().withExplodePlugins(true).build()));
+        doAnswer(invocation -> {
+            File archive = invocation.getArgument(1);
+            try (InputStream in = getClass().getResourceAsStream("/ssh-credentials.hpi")) {
+                Files.copy(in, archive.toPath());
+            }
+            return true;
+        }).when(pluginManagerSpy).downloadPlugin(any(Plugin.class), any(File.class));
+
+        pluginManagerSpy.downloadPlugins(singletonList(new Plugin("ssh-credentials", "1.10", null, null)));
+
+        File exploded = new File(cfg.getPluginDir(), "ssh-credentials.jpi");
+        assertThat(exploded).isDirectory();
+        assertThat(new File(exploded, "META-INF/MANIFEST.MF")).isFile();
+        assertThat(new File(cfg.getPluginDir(), "ssh-credentials.bak")).hasContent("previous");
+        assertThat(cfg.getPluginDir().list()).containsExactlyInAnyOrder("ssh-credentials.jpi", "ssh-credentials.bak");
+    }
+
+    @Test
+    void downloadPluginsCachesTheManifestsOfTheExplodedPlugins() throws IOException {
+        createDirectory(cfg.getPluginDir().toPath());
+        PluginManager pluginManagerSpy = spy(new PluginManager(cfg.toBuilder().withExplodePlugins(true).build()));
+        doAnswer(invocation -> {
+            File archive = invocation.getArgument(1);
+            try (InputStream in = getClass().getResourceAsStream("/ssh-credentials.hpi")) {
+                Files.copy(in, archive.toPath());
+            }
+            return true;
+        }).when(pluginManagerSpy).downloadPlugin(any(Plugin.class), any(File.class));
+
+        pluginManagerSpy.downloadPlugins(singletonList(new Plugin("ssh-credentials", "1.10", null, null)));
+
+        // same size and modification time, only a manifest which is not read again still has the original version
+        File manifestFile = new File(cfg.getPluginDir(), "ssh-credentials.jpi/META-INF/MANIFEST.MF");
+        long lastModified = manifestFile.lastModified();
+        String manifest = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.UTF_8);
+        Files.write(manifestFile.toPath(), manifest.replace("Plugin-Version: 1.10", "Plugin-Version: 9.99")
+                .getBytes(StandardCharsets.UTF_8));
+        assertThat(manifestFile.setLastModified(lastModified)).isTrue();
+        assertThat(pluginManagerSpy.readPluginManifest(new File(cfg.getPluginDir(), "ssh-credentials.jpi"))
+                .getPluginVersion()).isEqualTo("1.10");
+    }
+
+    @Test
+    void downloadPluginRestoresTheBackupWithTheExpectedChecksum() throws IOException {
+        createDirectory(cfg.getPluginDir().toPath());
+        Files.write(new File(cfg.getPluginDir(), "mailer.jpi").toPath(), singletonList("mailer 1.33"));
+        Files.write(new File(cfg.getPluginDir(), "mailer.bak").toPath(), singletonList("mailer 1.32"));
+        Files.write(new File(cfg.getPluginDir(), "mailer-extension.jpi").toPath(), singletonList("other"));
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        mailer.setChecksum(Base64.getEncoder().encodeToString(
+                DigestUtils.sha256(("mailer 1.32" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8))));
+        PluginManager pluginManagerSpy = spy(pm);
+        File target = new File(folder, "mailer.jpi");
+
+        assertThat(pluginManagerSpy.downloadPlugin(mailer, target)).isTrue();
+
+        verify(pluginManagerSpy, never()).downloadToFile(anyString(), any(Plugin.class), any(File.class));
+        assertThat(target).hasContent("mailer 1.32");
+        assertThat(mailer.getFile()).isEqualTo(target);
+
+        Plugin unknown = new Plugin("mailer", "1.31", null, null);
+        unknown.setChecksum(Base64.getEncoder().encodeToString(new byte[32]));
+        assertThat(pluginManagerSpy.restoreFromLocalArchive(unknown, target)).isFalse();
+    }
+
+    @Test
+    void localArchivesOfAPluginAreItsArchivesBackupsAndVersionedCopies() {
+        assertThat(PluginManager.isLocalArchiveOf("mailer", "mailer.jpi")).isTrue();
+        assertThat(PluginManager.isLocalArchiveOf("mailer", "mailer.hpi.bak")).isTrue();
+        assertThat(PluginManager.isLocalArchiveOf("mailer", "mailer-1.32.hpi")).isTrue();
+        assertThat(PluginManager.isLocalArchiveOf("mailer", "mailer-extension.jpi")).isFalse();
+        assertThat(PluginManager.isLocalArchiveOf("mailer", "mailer.txt")).isFalse();
+    }
+
+    @Test
+    void downloadPlanUsesTheMetadataSizesAndProbesTheOtherPlugins() {
+        pm.setLatestUcPlugins(new JSONObject()
+                .put("mailer", new JSONObject().put("version", "1.32").put("size", 1000))
+                .put("git", new JSONObject().put("version", "4.1").put("size", 5000)));
+        PluginManager pluginManagerSpy = spy(pm);
+        doReturn(new DownloadPlan.Source("mirror.example.com", 2000)).when(pluginManagerSpy).probeDownload(anyString());
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        Plugin git = new Plugin("git", "4.0", null, null);
+
+        DownloadPlan plan = pluginManagerSpy.planDownloads(Arrays.asList(mailer, git), true);
+
+        assertThat(plan.getPlugins()).containsExactly(git, mailer);
+        assertThat(plan.getBytesPerHost())
+                .containsEntry("mirror.example.com", 2000L)
+                .containsEntry("updates.jenkins.io", 1000L);
+        verify(pluginManagerSpy, times(1)).probeDownload(anyString());
+    }
+
+    @Test
+    void downloadPlanWithoutProbingOnlyUsesTheMetadataSizes() {
+        pm.setLatestUcPlugins(new JSONObject()
+                .put("mailer", new JSONObject().put("version", "1.32").put("size", 1000)));
+        PluginManager pluginManagerSpy = spy(pm);
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        Plugin git = new Plugin("git", "4.0", null, null);
+
+        DownloadPlan plan = pluginManagerSpy.planDownloads(Arrays.asList(git, mailer), false);
+
+        assertThat(plan.getPlugins()).containsExactly(mailer, git);
+        assertThat(plan.getUnknownSizes()).isOne();
+        verify(pluginManagerSpy, never()).probeDownload(anyString());
+    }
+
+    @Test
+    void connectionsToTheDownloadHostAndTheRememberedMirrorsAreWarmedUp() throws IOException {
+        CacheManager cacheManager = new CacheManager(cfg.getCachePath(), cfg.getLogOutput());
+        cacheManager.addToCache("mirror-origins", new JSONObject()
+                .put("origins", new JSONArray().put("https://mirror.example.com").put("ftp://mirror.example.com")));
+        Config config = cfg.toBuilder().withJenkinsUcDownloadUrl(new URL("https://downloads.example.com:8443/plugins"))
+                .build();
+
+        assertThat(new PluginManager(config).getWarmUpOrigins()).containsExactly(
+                "https://downloads.example.com:8443", "https://updates.jenkins.io", "https://mirror.example.com");
+    }
+
+    @Test
+    void pluginsAreDownloadedFromTheMirrorTheFirstDownloadWasRedirectedTo() throws IOException {
+        pm.learnMirrorBase("https://updates.jenkins.io/download/plugins/mailer/1.32/mailer.hpi",
+                URI.create("https://mirror.example.com/jenkins/plugins/mailer/1.32/mailer.hpi"));
+        pm.learnMirrorBase("https://updates.jenkins.io/download/plugins/git/4.0/git.hpi",
+                URI.create("https://other-mirror.example.com/plugins/git/4.0/git.hpi"));
+        pm.learnMirrorBase("https://updates.jenkins.io/update-center.json",
+                URI.create("https://updates.jenkins.io/dynamic-stable-2.440.1/update-center.json"));
+
+        assertThat(pm.getMirrorUrl("https://updates.jenkins.io/download/plugins/junit/1.30/junit.hpi"))
+                .isEqualTo("https://mirror.example.com/jenkins/plugins/junit/1.30/junit.hpi");
+        assertThat(pm.getMirrorUrl("https://updates.jenkins.io/update-center.json")).isNull();
+
+        PluginManager pluginManagerSpy = spy(pm);
+        doReturn(false).when(pluginManagerSpy).downloadHttpToFile(
+                eq("https://mirror.example.com/jenkins/plugins/junit/1.30/junit.hpi"), any(Plugin.class),
+                any(File.class), eq(1));
+        doAnswer(invocation -> {
+            try (InputStream in = getClass().getResourceAsStream("/ssh-credentials.hpi")) {
+                Files.copy(in, invocation.getArgument(2, File.class).toPath());
+            }
+            return true;
+        }).when(pluginManagerSpy).downloadHttpToFile(
+                eq("https://updates.jenkins.io/download/plugins/junit/1.30/junit.hpi"), any(Plugin.class),
+                any(File.class), eq(3));
+
+        assertThat(pluginManagerSpy.downloadToFile("https://updates.jenkins.io/download/plugins/junit/1.30/junit.hpi",
+                new Plugin("junit", "1.30", null, null), new File(folder, "junit.jpi"))).isTrue();
+        // the mirror is not used any more once it failed
+        assertThat(pm.getMirrorUrl("https://updates.jenkins.io/download/plugins/junit/1.30/junit.hpi")).isNull();
+    }
+
+    @Test
+    void mirrorIsRememberedForTheConfiguredTime() {
+        Config config = cfg.toBuilder().withMirrorCacheTtl(Duration.ofMinutes(60)).build();
+        PluginManager pluginManager = new PluginManager(config);
+        pluginManager.learnMirrorBase("https://updates.jenkins.io/download/plugins/mailer/1.32/mailer.hpi",
+                URI.create("https://mirror.example.com/jenkins/plugins/mailer/1.32/mailer.hpi"));
+        pluginManager.saveMirrorBases();
+
+        PluginManager nextRun = new PluginManager(config);
+        nextRun.loadMirrorBases();
+        PluginManager runWithoutCachedMirror = new PluginManager(cfg);
+        runWithoutCachedMirror.loadMirrorBases();
+
+        assertThat(nextRun.getMirrorUrl("https://updates.jenkins.io/download/plugins/git/4.0/git.hpi"))
+                .isEqualTo("https://mirror.example.com/jenkins/plugins/git/4.0/git.hpi");
+        assertThat(runWithoutCachedMirror.getMirrorUrl("https://updates.jenkins.io/download/plugins/git/4.0/git.hpi"))
+                .isNull();
+    }
+
+    @Test
+    void reconcilePluginDirKeepsUnchangedPluginsAndRemovesEverythingElse() throws IOException {
+        File pluginDir = cfg.getPluginDir();
+        createDirectory(pluginDir.toPath());
+        Files.write(new File(pluginDir, "mailer.jpi").toPath(), singletonList("mailer 1.32"));
+        Files.write(new File(pluginDir, "git.jpi").toPath(), singletonList("git 4.0"));
+        Files.write(new File(pluginDir, "junit.jpi").toPath(), singletonList("corrupted"));
+        Files.write(new File(pluginDir, "mailer.bak").toPath(), singletonList("mailer 1.31"));
+        createDirectory(new File(pluginDir, "mailer").toPath());
+        Map<String, Plugin> installed = new HashMap<>();
+        installed.put("mailer", new Plugin("mailer", "1.32", null, null));
+        installed.put("git", new Plugin("git", "4.0", null, null));
+        installed.put("junit", new Plugin("junit", "1.30", null, null));
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        Plugin git = new Plugin("git", "4.1", null, null);
+        Plugin junit = new Plugin("junit", "1.30", null, null);
+        junit.setChecksum(Base64.getEncoder().encodeToString(new byte[32]));
+        Map<String, Plugin> kept = new HashMap<>();
+        pm.setInstalledPluginVersions(kept);
+
+        List<Plugin> remaining = pm.reconcilePluginDir(Arrays.asList(mailer, git, junit), installed);
+
+        assertThat(remaining).containsExactly(git, junit);
+        assertThat(kept).containsOnlyKeys("mailer");
+        // still available to restore from until the plugins are installed
+        assertThat(pluginDir.list()).containsExactlyInAnyOrder("mailer.jpi", "git.jpi", "junit.jpi", "mailer.bak",
+                "mailer");
+
+        pm.removeUnreconciledFiles(emptyList());
+
+        assertThat(pluginDir.list()).containsExactly("mailer.jpi");
+    }
+
+    @Test
+    void removeUnreconciledFilesKeepsTheInstalledPlugins() throws IOException {
+        File pluginDir = cfg.getPluginDir();
+        createDirectory(pluginDir.toPath());
+        Files.write(new File(pluginDir, "git.jpi").toPath(), singletonList("git 4.0"));
+        Files.write(new File(pluginDir, "junit.jpi").toPath(), singletonList("junit 1.29"));
+        Plugin git = new Plugin("git", "4.1", null, null);
+        Plugin junit = new Plugin("junit", "1.30", null, null);
+        pm.setInstalledPluginVersions(new HashMap<>());
+        List<Plugin> remaining = pm.reconcilePluginDir(Arrays.asList(git, junit), new HashMap<>());
+        // installed as a download would be, junit failed
+        Files.move(new File(pluginDir, "git.jpi").toPath(), new File(pluginDir, "git.bak").toPath());
+        Files.write(new File(pluginDir, "git.jpi").toPath(), singletonList("git 4.1"));
+        pm.getFailedPlugins().add(junit);
+
+        pm.removeUnreconciledFiles(remaining);
+
+        assertThat(pluginDir.list()).containsExactly("git.jpi");
+        assertThat(new File(pluginDir, "git.jpi")).hasContent("git 4.1");
+    }
+
+    @Test
+    void lockfileOfEffectivePluginsIsInstalledWithoutResolution() throws IOException {
+        pm.setPluginInfoJson(new JSONObject("""
+                {
+                  "plugins": {
+                    "mailer": { "1.32": { "sha256": "abc", "requiredCore": "2.222.1", "dependencies": [] } }
+                  }
+                }
+                """));
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        mailer.setJenkinsVersion("2.222.1");
+        Plugin structs = new Plugin("structs", "1.7", null, null);
+        Map<String, Plugin> effectivePlugins = new HashMap<>();
+        effectivePlugins.put("mailer", mailer);
+        effectivePlugins.put("structs", structs);
+        pm.setEffectivePlugins(effectivePlugins);
+
+        Lockfile lockfile = pm.createLockfile(new VersionNumber("2.222.3"));
+
+        assertThat(lockfile.getEntries())
+                .extracting(entry -> entry.getName() + ":" + entry.getVersion() + ":" + entry.getChecksum() + ":" +
+                        entry.getRequiredCore())
+                .containsExactly("mailer:1.32:abc:2.222.1", "structs:1.7:null:null");
+        assertThat(lockfile.getEntries().get(0).getUrl()).endsWith("/download/plugins/mailer/1.32/mailer.hpi");
+
+        File lockfileFile = new File(folder, "plugins-lock.json");
+        lockfile.write(lockfileFile);
+        Config lockfileConfig = cfg.toBuilder()
+                .withJenkinsVersion(new VersionNumber("2.222.3"))
+                .withDoDownload(true)
+                .withLockfile(lockfileFile)
+                .build();
+        PluginManager pluginManagerSpy = spy(new PluginManager(lockfileConfig));
+        doReturn(new HashMap<>()).when(pluginManagerSpy).bundledPlugins();
+        doReturn(new HashMap<>(singletonMap("structs", structs))).when(pluginManagerSpy).installedPlugins();
+        doNothing().when(pluginManagerSpy).downloadPlugins(anyList());
+
+        pluginManagerSpy.start();
+
+        verify(pluginManagerSpy, never()).getUCJson(any());
+        verify(pluginManagerSpy, never()).findPluginsAndDependencies(anyList(), any());
+        List<Plugin> pluginsToBeDownloaded = pluginManagerSpy.getPluginsToBeDownloaded();
+        assertThat(pluginsToBeDownloaded)
+                .extracting(plugin -> plugin.getName() + ":" + plugin.getVersion() + ":" + plugin.getChecksum())
+                .containsExactly("mailer:1.32:abc");
+        verify(pluginManagerSpy).downloadPlugins(pluginsToBeDownloaded);
+    }
+
+    @Test
+    void incrementalResolutionOnlyResolvesChangedRequirements() throws Exception {
+        Config config = cfg.toBuilder()
+                .withJenkinsVersion(new VersionNumber("2.222.3"))
+                .withIncrementalResolution(true)
+                .build();
+        JSONObject pluginVersions = new JSONObject("""
+                {
+                  "plugins": {
+                    "git": {
+                      "4.0": { "sha256": "git40", "requiredCore": "2.222.1",
+                               "dependencies": [ { "name": "scm-api", "version": "2.6", "optional": false } ] },
+                      "4.1": { "sha256": "git41", "requiredCore": "2.222.1",
+                               "dependencies": [ { "name": "scm-api", "version": "2.7", "optional": false } ] }
+                    },
+                    "mailer": {
+                      "1.32": { "sha256": "mailer", "requiredCore": "2.222.1",
+                                "dependencies": [ { "name": "display-url-api", "version": "2.3", "optional": false } ] }
+                    },
+                    "scm-api": {
+                      "2.6": { "sha256": "scm26", "requiredCore": "2.222.1", "dependencies": [] },
+                      "2.7": { "sha256": "scm27", "requiredCore": "2.222.1", "dependencies": [] }
+                    },
+                    "display-url-api": {
+                      "2.3": { "sha256": "display", "requiredCore": "2.222.1", "dependencies": [] }
+                    }
+                  }
+                }
+                """);
+        JSONObject updateCenter = new JSONObject()
+                .put("generationTimestamp", "2024-05-01T12:00:00Z")
+                .put("plugins", new JSONObject());
+
+        PluginManager first = new PluginManager(config);
+        first.setLatestUcJson(updateCenter);
+        first.setLatestUcPlugins(updateCenter.getJSONObject("plugins"));
+        first.setPluginInfoJson(pluginVersions);
+        first.findPluginsAndDependencies(Arrays.asList(
+                new Plugin("git", "4.0", null, null), new Plugin("mailer", "1.32", null, null)), new ArrayList<>());
+
+        PluginManager second = spy(new PluginManager(config));
+        second.setLatestUcJson(updateCenter);
+        second.setLatestUcPlugins(updateCenter.getJSONObject("plugins"));
+        second.setPluginInfoJson(pluginVersions);
+        Plugin mailer = new Plugin("mailer", "1.32", null, null);
+        List<Plugin> requested = Arrays.asList(new Plugin("git", "4.1", null, null), mailer);
+        Map<String, Plugin> resolved = new HashMap<>();
+        String output = tapSystemErrNormalized(
+                () -> resolved.putAll(second.findPluginsAndDependencies(requested, new ArrayList<>())));
+
+        verify(second, never()).resolveRecursiveDependencies(eq(mailer), anyMap(), anyList());
+        assertThat(resolved.values())
+                .extracting(plugin -> plugin.getName() + ":" + plugin.getVersion() + ":" + plugin.getChecksum())
+                .containsExactlyInAnyOrder("git:4.1:git41", "scm-api:2.7:scm27", "mailer:1.32:mailer",
+                        "display-url-api:2.3:display");
+        assertThat(mailer.getJenkinsVersion()).hasToString("2.222.1");
+        assertThat(output).isEqualTo("Changes since the previous resolution:\n" +
+                "  upgraded git 4.0 -> 4.1\n" +
+                "  upgraded scm-api 2.6 -> 2.7\n");
+    }
+
     @Test
     void downloadPluginAlreadyInstalledTest() {
         Map<String, Plugin> installedVersions = new HashMap<>();
@@ -870,6 +1349,30 @@ class PluginManagerTest {
                 .hasMessage("Error getting update center json");
     }
 
+    @Test
+    void getJsonReturnsStaleCacheEntryAndRefreshesItInTheBackground() throws Exception {
+        Path cachePath = newFolder(folder, "stale-cache").toPath();
+        File updateCenter = new File(folder, "update-center.json");
+        Files.write(updateCenter.toPath(), "{\"value\": \"fresh\"}".getBytes(StandardCharsets.UTF_8));
+        CacheManager cacheManager = new CacheManager(cachePath, new LogOutput(false));
+        cacheManager.addToCache("update-center", new JSONObject().put("value", "stale"));
+        Files.setLastModifiedTime(cachePath.resolve("update-center.json"),
+                FileTime.from(Instant.now().minus(Duration.ofMinutes(90))));
+        Config config = Config.builder()
+                .withJenkinsWar(Settings.DEFAULT_WAR)
+                .withPluginDir(new File(folder, "plugins"))
+                .withCachePath(cachePath)
+                .withMaxCacheStaleness(Duration.ofHours(1))
+                .build();
+
+        try (PluginManager pluginManager = new PluginManager(config)) {
+            JSONObject json = pluginManager.getJson(updateCenter.toURI().toURL(), "update-center");
+            assertThat(json.getString("value")).isEqualTo("stale");
+        }
+
+        assertThat(cacheManager.retrieveFromCache("update-center").getString("value")).isEqualTo("fresh");
+    }
+
     @Test
     void findPluginsToDownloadTest() {
         Map<String, Plugin> requestedPlugins = new HashMap<>();
@@ -956,8 +1459,9 @@ class PluginManagerTest {
         Plugin testPlugin = new Plugin("test", "1.0", null, null);
         doReturn(true).when(pluginManagerSpy).downloadPlugin(any(Plugin.class), any(File.class));
 
-        doReturn(null).when(pluginManagerSpy).getAttributeFromManifest(any(File.class), any(String.class));
-        doReturn("1.2.0").when(pluginManagerSpy).getAttributeFromManifest(any(File.class), eq("Hudson-Version"));
+        Attributes attributes = new Attributes();
+        attributes.putValue("Hudson-Version", "1.2.0");
+        doReturn(PluginManifest.fromAttributes(attributes)).when(pluginManagerSpy).readPluginManifest(any(File.class));
         pluginManagerSpy.resolveDependenciesFromManifest(testPlugin);
 
         assertThat(testPlugin.getJenkinsVersion()).hasToString("1.2.0");
@@ -970,7 +1474,8 @@ class PluginManagerTest {
         Plugin testPlugin = new Plugin("test", "1.0", null, null);
         doReturn(true).when(pluginManagerSpy).downloadPlugin(any(Plugin.class), any(File.class));
 
-        doReturn(null).when(pluginManagerSpy).getAttributeFromManifest(any(File.class), any(String.class));
+        doReturn(PluginManifest.fromAttributes(new Attributes())).when(pluginManagerSpy)
+                .readPluginManifest(any(File.class));
 
         assertThatThrownBy(() -> pluginManagerSpy.resolveDependenciesFromManifest(testPlugin))
         .isInstanceOf(PluginDependencyException.class)
@@ -989,13 +1494,16 @@ class PluginManagerTest {
 
         when(tempPath.toFile()).thenReturn(tempFile);
 
-        doReturn("1.0.0").doReturn("workflow-scm-step:2.4,workflow-step-api:2.13," +
+        Attributes attributes = new Attributes();
+        attributes.putValue("Plugin-Version", "1.0.0");
+        attributes.putValue("Jenkins-Version", "2.222.1");
+        attributes.putValue("Plugin-Dependencies", "workflow-scm-step:2.4,workflow-step-api:2.13," +
                 "credentials:2.1.14,git-client:2.7.7,mailer:1.18," +
                 "parameterized-trigger:2.33;resolution:=optional," +
                 "promoted-builds:2.27;resolution:=optional," +
                 "scm-api:2.6.3,ssh-credentials:1.13," +
-                "token-macro:1.12.1;resolution:=optional")
-                .when(pluginManagerSpy).getAttributeFromManifest(any(File.class), any(String.class));
+                "token-macro:1.12.1;resolution:=optional");
+        doReturn(PluginManifest.fromAttributes(attributes)).when(pluginManagerSpy).readPluginManifest(any(File.class));
 
         List<Plugin> actualPlugins = pluginManagerSpy.resolveDependenciesFromManifest(testPlugin);
 
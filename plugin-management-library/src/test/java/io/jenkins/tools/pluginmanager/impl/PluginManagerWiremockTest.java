@@ -7,15 +7,26 @@ import io.jenkins.tools.pluginmanager.config.Config;
 import io.jenkins.tools.pluginmanager.config.Credentials;
 import io.jenkins.tools.pluginmanager.config.Settings;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Collections;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.proxyAllTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PluginManagerWiremockTest {
@@ -60,6 +71,19 @@ class PluginManagerWiremockTest {
         archives = null;
     }
 
+    @Test
+    void getJsonNegotiatesCompressionAndRemovesWrapper() throws Exception {
+        archives.stubFor(get(urlEqualTo("/update-center.json"))
+                .withHeader("Accept-Encoding", containing("gzip"))
+                .willReturn(aResponse()
+                        .withHeader("Content-Type", "application/javascript")
+                        .withBody("updateCenter.post(\n{\"plugins\": {\"mailer\": {\"version\": \"1.32\"}}}\n);")));
+
+        JSONObject json = pm.getJson(new URL("http://localhost:" + archives.port() + "/update-center.json"), "update-center");
+
+        assertThat(json.getJSONObject("plugins").getJSONObject("mailer").getString("version")).isEqualTo("1.32");
+    }
+
     @Test
     void downloadToFileTest() {
         Plugin plugin = new Plugin("pluginName", "pluginVersion", "pluginURL", null);
@@ -81,6 +105,56 @@ class PluginManagerWiremockTest {
         assertThat(pm.downloadToFile("http://localhost:" + wireMockPort + "/protectedplugins/mailer/1.32/mailer.hpi", plugin, null)).isFalse();
     }
 
+    @Test
+    void resolvesDependenciesFromStreamedManifestAndReusesTheDownload() throws IOException {
+        byte[] archive;
+        try (InputStream in = getClass().getResourceAsStream("/ssh-credentials.hpi")) {
+            archive = IOUtils.toByteArray(in);
+        }
+        archives.stubFor(get(urlEqualTo("/streamed/ssh-credentials.hpi"))
+                .willReturn(aResponse().withBody(archive)));
+        newFolder(folder, "plugins");
+        pm = new PluginManager(cfg.toBuilder().withDoDownload(true).build());
+        Plugin plugin = new Plugin("ssh-credentials", "latest",
+                "http://localhost:" + archives.port() + "/streamed/ssh-credentials.hpi", null);
+
+        List<Plugin> dependencies = pm.resolveDependenciesFromManifest(plugin);
+        pm.downloadPlugins(Collections.singletonList(plugin));
+
+        assertThat(plugin.getVersion()).hasToString("1.10");
+        assertThat(dependencies).extracting(Plugin::getName).containsExactly("credentials");
+        assertThat(new File(folder, "plugins/ssh-credentials.jpi")).hasBinaryContent(archive);
+        archives.verify(1, getRequestedFor(urlEqualTo("/streamed/ssh-credentials.hpi")));
+    }
+
+    @Test
+    void failuresOfAMirrorAreRecordedAgainstTheMirror() throws Exception {
+        WireMockServer mirror = new WireMockServer(WireMockConfiguration.options().dynamicPort());
+        mirror.start();
+        try {
+            mirror.stubFor(get(urlEqualTo("/update-center.json")).willReturn(aResponse().withStatus(503)));
+            String mirrorUrl = "http://127.0.0.1:" + mirror.port() + "/update-center.json";
+            archives.stubFor(get(urlEqualTo("/redirected/update-center.json"))
+                    .willReturn(aResponse().withStatus(302).withHeader("Location", mirrorUrl)));
+            archives.stubFor(get(urlEqualTo("/direct/update-center.json"))
+                    .willReturn(aResponse().withBody("{\"plugins\": {}}")));
+            URL redirected = new URL("http://localhost:" + archives.port() + "/redirected/update-center.json");
+
+            // enough consecutive failures to open the circuit of the mirror
+            for (int i = 0; i < 2; i++) {
+                assertThatThrownBy(() -> pm.getJson(redirected, null))
+                        .isInstanceOf(UpdateCenterInfoRetrievalException.class);
+            }
+
+            assertThat(pm.getJson(new URL("http://localhost:" + archives.port() + "/direct/update-center.json"), null)
+                    .getJSONObject("plugins").isEmpty()).isTrue();
+            assertThatThrownBy(() -> pm.getJson(new URL(mirrorUrl), null))
+                    .hasRootCauseMessage("Not requesting 127.0.0.1 after 5 consecutive failures, retrying it later");
+        } finally {
+            mirror.stop();
+        }
+    }
+
     @Test
     void getJsonWithBasicAuth() throws Exception {
         int wireMockPort = protectedArchives.port();
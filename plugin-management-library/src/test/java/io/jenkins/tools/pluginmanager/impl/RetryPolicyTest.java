@@ -0,0 +1,125 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.apache.http.client.HttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RetryPolicyTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final List<Long> sleeps = new ArrayList<>();
+
+    @Test
+    void backoffGrowsExponentiallyWithJitterUpToTheMaximum() {
+        RetryPolicy policy = policy(Clock.fixed(NOW, ZoneOffset.UTC), 100, 3);
+
+        for (int i = 0; i < 100; i++) {
+            assertThat(policy.backoff(1)).isBetween(250L, 500L);
+            assertThat(policy.backoff(2)).isBetween(500L, 1000L);
+            assertThat(policy.backoff(10)).isBetween(2000L, 4000L);
+        }
+    }
+
+    @Test
+    void onlyTransientFailuresAreRetried() throws IOException {
+        RetryPolicy policy = policy(Clock.fixed(NOW, ZoneOffset.UTC), 100, 10);
+
+        assertThat(policy.awaitRetry("host", new HttpResponseException(404, "Not Found"), 1, null)).isFalse();
+        assertThat(policy.awaitRetry("host", new HttpResponseException(503, "Unavailable"), 1, null)).isTrue();
+        assertThat(policy.awaitRetry("host", new HttpResponseException(429, "Too Many Requests"), 1, null)).isTrue();
+        assertThat(policy.awaitRetry("host", new SocketTimeoutException(), 1, null)).isTrue();
+        assertThat(sleeps).hasSize(3);
+    }
+
+    @Test
+    void retryAfterIsRespected() throws IOException {
+        RetryPolicy policy = policy(Clock.fixed(NOW, ZoneOffset.UTC), 100, 10);
+        IOException tooManyRequests = new HttpResponseException(429, "Too Many Requests");
+
+        assertThat(policy.awaitRetry("host", tooManyRequests, 1, "7")).isTrue();
+        String inTwentySeconds = DateUtils.formatDate(Date.from(NOW.plusSeconds(20)));
+        assertThat(policy.awaitRetry("host", tooManyRequests, 1, inTwentySeconds)).isTrue();
+        assertThat(policy.awaitRetry("host", tooManyRequests, 1, "3600")).isFalse();
+
+        assertThat(sleeps).containsExactly(7000L, 20000L);
+    }
+
+    @Test
+    void retryBudgetIsSharedByAllRequests() throws IOException {
+        RetryPolicy policy = policy(Clock.fixed(NOW, ZoneOffset.UTC), 2, 10);
+        IOException failure = new IOException("Connection reset");
+
+        assertThat(policy.awaitRetry("a", failure, 1, null)).isTrue();
+        assertThat(policy.awaitRetry("b", failure, 1, null)).isTrue();
+        assertThat(policy.awaitRetry("c", failure, 1, null)).isFalse();
+
+        assertThat(policy.getCounters()).containsEntry("retries", 2L).containsEntry("retryBudgetExhausted", 1L);
+    }
+
+    @Test
+    void circuitOpensAfterConsecutiveFailuresAndLetsAProbeThroughLater() throws IOException {
+        MutableClock clock = new MutableClock();
+        RetryPolicy policy = policy(clock, 100, 2);
+        IOException failure = new HttpResponseException(502, "Bad Gateway");
+
+        policy.beforeRequest("mirror");
+        policy.recordFailure("mirror", failure);
+        policy.beforeRequest("mirror");
+        policy.recordFailure("mirror", failure);
+
+        assertThat(policy.awaitRetry("mirror", failure, 2, null)).isFalse();
+        assertThatThrownBy(() -> policy.beforeRequest("mirror")).isInstanceOf(IOException.class);
+        policy.beforeRequest("other");
+
+        clock.instant = NOW.plus(Duration.ofSeconds(31));
+        policy.beforeRequest("mirror");
+        // a single probe at a time
+        assertThatThrownBy(() -> policy.beforeRequest("mirror")).isInstanceOf(IOException.class);
+        policy.recordSuccess("mirror");
+        policy.beforeRequest("mirror");
+
+        assertThat(policy.getCounters())
+                .containsEntry("requests", 7L)
+                .containsEntry("circuitsOpened", 1L)
+                .containsEntry("rejectedByOpenCircuit", 2L);
+    }
+
+    private RetryPolicy policy(Clock clock, int retryBudget, int failureThreshold) {
+        return new RetryPolicy(clock, sleeps::add, new Random(42), Duration.ofMillis(500), Duration.ofSeconds(4),
+                retryBudget, failureThreshold, Duration.ofSeconds(30));
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant instant = NOW;
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import io.jenkins.tools.pluginmanager.config.Config;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SecurityAuditorTest {
+
+    @TempDir
+    private File tmpDir;
+
+    private Config config;
+    private UpdateCenterMetadata metadata;
+
+    @BeforeEach
+    void before() {
+        config = Config.builder()
+                .withPluginDir(new File(tmpDir, "plugins"))
+                .withCachePath(new File(tmpDir, "cache").toPath())
+                .build();
+        Map<String, List<SecurityWarning>> warnings = new HashMap<>();
+        SecurityWarning warning = new SecurityWarning("SECURITY-1", "Stored XSS", "workflow-api",
+                "https://jenkins.io/security/advisory/");
+        warning.addSecurityVersion("2.0", "2.40", "2[.]([0-9]|[1-3][0-9]|40)(|[.-].*)");
+        warnings.put("workflow-api", Collections.singletonList(warning));
+        metadata = new UpdateCenterMetadata(null, new JSONObject().put("plugins", new JSONObject()),
+                new JSONObject(), null, warnings);
+    }
+
+    @Test
+    void reportsAffectedPluginsOfEveryDirectoryAndTheWar() throws IOException {
+        File first = new File(tmpDir, "first");
+        File second = new File(tmpDir, "second");
+        Files.createDirectories(first.toPath());
+        Files.createDirectories(second.toPath());
+        Files.write(new File(first, "workflow-api.jpi").toPath(), pluginArchive("2.30"));
+        Files.write(new File(first, "mailer.jpi").toPath(), pluginArchive("1.32"));
+        Files.write(new File(second, "workflow-api.jpi").toPath(), pluginArchive("2.41"));
+        File war = new File(tmpDir, "jenkins.war");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(war.toPath()))) {
+            out.putNextEntry(new JarEntry("WEB-INF/plugins/workflow-api.hpi"));
+            out.write(pluginArchive("2.39"));
+            out.closeEntry();
+        }
+
+        SecurityAuditor.Report report = new SecurityAuditor(config, metadata, 2)
+                .audit(Arrays.asList(first, second), war);
+
+        assertThat(report.getScannedSources()).isEqualTo(3);
+        assertThat(report.getScannedPlugins()).isEqualTo(4);
+        assertThat(report.getFailures()).isEmpty();
+        assertThat(report.getFindings())
+                .extracting(finding -> finding.getSource() + " " + finding.getPluginName() + ":" +
+                        finding.getVersion() + " " + finding.getWarning().getId())
+                .containsExactly(
+                        first.getPath() + " workflow-api:2.30 SECURITY-1",
+                        war.getPath() + " workflow-api:2.39 SECURITY-1");
+    }
+
+    @Test
+    void reportsSourcesWhichCannotBeScanned() {
+        File missing = new File(tmpDir, "missing");
+
+        SecurityAuditor.Report report = new SecurityAuditor(config, metadata)
+                .audit(Collections.singletonList(missing), new File(tmpDir, "missing.war"));
+
+        assertThat(report.getFindings()).isEmpty();
+        assertThat(report.getFailures())
+                .extracting(SecurityAuditor.Failure::getMessage)
+                .containsExactly("Plugin directory not found", "WAR file not found");
+    }
+
+    @Test
+    void convertsReportToJson() throws IOException {
+        File pluginDir = new File(tmpDir, "plugins");
+        Files.createDirectories(pluginDir.toPath());
+        Files.write(new File(pluginDir, "workflow-api.jpi").toPath(), pluginArchive("2.30"));
+
+        JSONObject json = new SecurityAuditor(config, metadata)
+                .audit(Collections.singletonList(pluginDir), null)
+                .toJson();
+
+        assertThat(json.getInt("scannedSources")).isEqualTo(1);
+        assertThat(json.getInt("scannedPlugins")).isEqualTo(1);
+        assertThat(json.getJSONArray("failures").length()).isZero();
+        JSONObject finding = json.getJSONArray("findings").getJSONObject(0);
+        assertThat(finding.getString("source")).isEqualTo(pluginDir.getPath());
+        assertThat(finding.getString("plugin")).isEqualTo("workflow-api");
+        assertThat(finding.getString("version")).isEqualTo("2.30");
+        assertThat(finding.getString("id")).isEqualTo("SECURITY-1");
+        assertThat(finding.getString("message")).isEqualTo("Stored XSS");
+        assertThat(finding.getString("url")).isEqualTo("https://jenkins.io/security/advisory/");
+    }
+
+    private static byte[] pluginArchive(String version) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Plugin-Version", version);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new JarOutputStream(bytes, manifest)) {
+            out.flush();
+        }
+        return bytes.toByteArray();
+    }
+}
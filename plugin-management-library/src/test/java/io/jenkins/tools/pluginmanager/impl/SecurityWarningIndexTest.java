@@ -0,0 +1,63 @@
+package io.jenkins.tools.pluginmanager.impl;
+
+import hudson.util.VersionNumber;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SecurityWarningIndexTest {
+
+    private SecurityWarningIndex index;
+    private SecurityWarning firstWarning;
+    private SecurityWarning secondWarning;
+    private SecurityWarning patternOnlyWarning;
+
+    @BeforeEach
+    void buildIndex() {
+        firstWarning = new SecurityWarning("SECURITY-1", "first", "ssh-slaves", "url");
+        firstWarning.addSecurityVersion("", "1.14", "0[.].*|1[.][0-9](|[.-].*)|1[.]1[01234](|[.-].*)");
+        secondWarning = new SecurityWarning("SECURITY-2", "second", "ssh-slaves", "url");
+        secondWarning.addSecurityVersion("1.10", "1.20", "1[.]1[0-9](|[.-].*)|1[.]20(|[.-].*)");
+        secondWarning.addSecurityVersion("2.0", "2.3", "2[.][0-3](|[.-].*)");
+        patternOnlyWarning = new SecurityWarning("SECURITY-3", "pattern only", "scriptler", "url");
+        patternOnlyWarning.addSecurityVersion("", "", "2[.].*");
+
+        Map<String, List<SecurityWarning>> warnings = new HashMap<>();
+        warnings.put("ssh-slaves", Arrays.asList(firstWarning, secondWarning));
+        warnings.put("scriptler", Collections.singletonList(patternOnlyWarning));
+        index = SecurityWarningIndex.build(warnings);
+    }
+
+    @Test
+    void findsWarningsByVersionInterval() {
+        assertThat(index.find("ssh-slaves", new VersionNumber("0.9"))).containsExactly(firstWarning);
+        assertThat(index.find("ssh-slaves", new VersionNumber("1.12"))).containsExactly(firstWarning, secondWarning);
+        assertThat(index.find("ssh-slaves", new VersionNumber("1.20"))).containsExactly(secondWarning);
+        assertThat(index.find("ssh-slaves", new VersionNumber("2.2"))).containsExactly(secondWarning);
+        assertThat(index.find("ssh-slaves", new VersionNumber("1.21"))).isEmpty();
+        assertThat(index.find("ssh-slaves", new VersionNumber("2.4"))).isEmpty();
+    }
+
+    @Test
+    void usesPatternForVersionsExtendingTheLastAffectedVersion() {
+        assertThat(index.find("ssh-slaves", new VersionNumber("1.14.1"))).containsExactly(firstWarning, secondWarning);
+        assertThat(index.find("ssh-slaves", new VersionNumber("2.3.1"))).containsExactly(secondWarning);
+    }
+
+    @Test
+    void usesPatternWithoutLastVersion() {
+        assertThat(index.find("scriptler", new VersionNumber("2.1"))).containsExactly(patternOnlyWarning);
+        assertThat(index.find("scriptler", new VersionNumber("3.0"))).isEmpty();
+    }
+
+    @Test
+    void returnsNothingForPluginsWithoutWarnings() {
+        assertThat(index.find("mailer", new VersionNumber("1.0"))).isEmpty();
+    }
+}
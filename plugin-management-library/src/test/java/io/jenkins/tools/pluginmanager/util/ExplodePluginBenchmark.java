@@ -0,0 +1,123 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Enumeration;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares {@link PluginManagerUtils#explodePlugin(File, File, PluginManifestReader)} with the former sequential
+ * extraction, on a generated plugin archive below and above {@link PluginManagerUtils#PARALLEL_EXPLODE_THRESHOLD}
+ * entries, the size from which the entries are extracted in parallel.
+ * <p>
+ * Run with {@code mvn -pl plugin-management-library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.jenkins.tools.pluginmanager.util.ExplodePluginBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ExplodePluginBenchmark {
+
+    @Param({"50", "3000"})
+    private int entries;
+
+    private File folder;
+    private File archive;
+    private File exploded;
+    private final PluginManifestReader manifestReader = new PluginManifestReader();
+
+    @Setup
+    public void writeArchive() throws IOException {
+        folder = Files.createTempDirectory("explode").toFile();
+        archive = new File(folder, "plugin.jpi");
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().putValue("Plugin-Version", "1.0");
+        Random random = new Random(42);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(archive.toPath()), manifest)) {
+            for (int i = 0; i < entries; i++) {
+                out.putNextEntry(new JarEntry("WEB-INF/classes/package" + i % 40 + "/Class" + i + ".class"));
+                byte[] content = new byte[1024 + random.nextInt(8 * 1024)];
+                // compressible like class files
+                for (int j = 0; j < content.length; j++) {
+                    content[j] = (byte) random.nextInt(16);
+                }
+                out.write(content);
+            }
+        }
+        exploded = new File(folder, "plugin");
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteExploded() throws IOException {
+        FileUtils.deleteDirectory(exploded);
+    }
+
+    @TearDown
+    public void deleteArchive() throws IOException {
+        FileUtils.deleteDirectory(folder);
+    }
+
+    @Benchmark
+    public PluginManifest explodePlugin() throws IOException {
+        return PluginManagerUtils.explodePlugin(archive, exploded, manifestReader);
+    }
+
+    @Benchmark
+    public File sequential() throws IOException {
+        try (JarFile jarfile = new JarFile(archive)) {
+            Enumeration<JarEntry> jarEntries = jarfile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry je = jarEntries.nextElement();
+                File file = new File(exploded, je.getName());
+                if (!file.exists()) {
+                    Files.createDirectories(file.getParentFile().toPath());
+                    file = new File(exploded, je.getName());
+                }
+                if (je.isDirectory()) {
+                    continue;
+                }
+                try (InputStream is = jarfile.getInputStream(je);
+                     OutputStream fo = new FileOutputStream(file)) {
+                    IOUtils.copy(is, fo);
+                }
+            }
+        }
+        return exploded;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ExplodePluginBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,116 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import io.jenkins.tools.pluginmanager.impl.Plugin;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Compares {@link PluginListParser#parsePluginTxtFile(File)} with the former parsing based on regular expressions,
+ * on generated plugins.txt files.
+ * <p>
+ * Run with {@code mvn -pl plugin-management-library test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=io.jenkins.tools.pluginmanager.util.PluginListParserBenchmark}
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PluginListParserBenchmark {
+
+    @Param({"1000", "100000"})
+    private int lines;
+
+    private File pluginsTxt;
+    private final PluginListParser parser = new PluginListParser(false);
+
+    @Setup
+    public void writePluginsTxt() throws IOException {
+        pluginsTxt = File.createTempFile("plugins", ".txt");
+        List<String> content = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            switch (i % 4) {
+                case 0:
+                    content.add("# plugins of team " + i);
+                    break;
+                case 1:
+                    content.add("plugin-" + i + ":1." + i);
+                    break;
+                case 2:
+                    content.add("plugin-" + i + "    # latest");
+                    break;
+                default:
+                    content.add("plugin-" + i + ":1." + i + ":https://updates.jenkins.io/download/plugins/plugin-" + i +
+                            "/1." + i + "/plugin-" + i + ".hpi");
+            }
+        }
+        Files.write(pluginsTxt.toPath(), content, StandardCharsets.UTF_8);
+    }
+
+    @TearDown
+    public void deletePluginsTxt() throws IOException {
+        Files.delete(pluginsTxt.toPath());
+    }
+
+    @Benchmark
+    public List<Plugin> parser() {
+        return parser.parsePluginTxtFile(pluginsTxt);
+    }
+
+    @Benchmark
+    public List<Plugin> regularExpressions() throws IOException {
+        try (BufferedReader bufferedReader = Files.newBufferedReader(pluginsTxt.toPath(), StandardCharsets.UTF_8)) {
+            return bufferedReader.lines()
+                    .map(line -> line.replaceAll("\\s#+.*", ""))
+                    .map(line -> line.replaceAll("\\s", ""))
+                    .filter(line -> !line.startsWith("#"))
+                    .filter(line -> line.length() > 0)
+                    .map(PluginListParserBenchmark::parseLineWithSplit)
+                    .collect(toList());
+        }
+    }
+
+    private static Plugin parseLineWithSplit(String pluginLine) {
+        String[] pluginInfo = pluginLine.split(":", 3);
+        String pluginVersion = pluginInfo.length >= 2 ? pluginInfo[1] : "latest";
+        String pluginUrl = null;
+        if (pluginInfo.length >= 3) {
+            try {
+                new URL(pluginInfo[2]);
+                pluginUrl = pluginInfo[2];
+            } catch (Exception e) {
+                // ignored like an invalid URL
+            }
+        }
+        return new Plugin(pluginInfo[0], pluginVersion, pluginUrl, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PluginListParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
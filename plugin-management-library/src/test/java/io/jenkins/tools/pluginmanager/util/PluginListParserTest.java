@@ -3,16 +3,26 @@ package io.jenkins.tools.pluginmanager.util;
 import io.jenkins.tools.pluginmanager.config.PluginInputException;
 import io.jenkins.tools.pluginmanager.impl.Plugin;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class PluginListParserTest {
+    @TempDir
+    private File folder;
+
     private PluginListParser pluginList;
     private String[] expectedPluginInfo;
 
@@ -128,6 +138,138 @@ class PluginListParserTest {
                 .isInstanceOf(PluginInputException.class);
     }
 
+    @Test
+    void stripsCommentsAndWhitespaceLikeTheFormerRegularExpressions() {
+        List<String> lines = Arrays.asList("git", "  git:1.0 ", "git:1.0 # comment", "git:1.0 ## comment",
+                "# comment", "   # indented comment", "git#1", "\tgit : 1.0\t:\thttp://example.com/git.hpi", "",
+                "git:1.0\t#comment # more");
+
+        for (String line : lines) {
+            String expected = line.replaceAll("\\s#+.*", "").replaceAll("\\s", "");
+            assertThat(PluginListParser.stripCommentAndWhitespace(line)).as(line).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void validatesUrlsWithoutParsingEveryString() {
+        assertThat(PluginListParser.isURL("https://updates.jenkins.io/latest/git.hpi")).isTrue();
+        assertThat(PluginListParser.isURL("ftp://ftp-chi.osuosl.org/pub/jenkins/plugins/git.hpi")).isTrue();
+        assertThat(PluginListParser.isURL("file:/tmp/git.hpi")).isTrue();
+        assertThat(PluginListParser.isURL("HTTP://updates.jenkins.io/latest/git.hpi")).isTrue();
+        assertThat(PluginListParser.isURL(null)).isFalse();
+        assertThat(PluginListParser.isURL("")).isFalse();
+        assertThat(PluginListParser.isURL("updates.jenkins.io/latest/git.hpi")).isFalse();
+        assertThat(PluginListParser.isURL("1http://updates.jenkins.io")).isFalse();
+        assertThat(PluginListParser.isURL("unknown://updates.jenkins.io")).isFalse();
+        assertThat(PluginListParser.isURL("http://[::1")).isFalse();
+    }
+
+    @Test
+    void parsesLargeFilesInParallelKeepingTheOrder() throws IOException {
+        List<String> lines = new ArrayList<>();
+        int count = 0;
+        while (String.join("\n", lines).length() <= PluginListParser.PARALLEL_PARSE_THRESHOLD_BYTES) {
+            lines.add("plugin-" + count + ":1." + count + " # generated");
+            count++;
+        }
+        File large = new File(folder, "plugins.txt");
+        Files.write(large.toPath(), lines, StandardCharsets.UTF_8);
+
+        List<Plugin> plugins = pluginList.parsePluginTxtFile(large);
+
+        assertThat(plugins).hasSize(count);
+        for (int i = 0; i < count; i++) {
+            assertThat(plugins.get(i).getName()).isEqualTo("plugin-" + i);
+            assertThat(plugins.get(i).getVersion()).hasToString("1." + i);
+        }
+    }
+
+    @Test
+    void mergesFilesAndFragmentDirectoriesKeepingTheHighestVersion() throws IOException {
+        File first = new File(folder, "plugins.txt");
+        Files.write(first.toPath(), Arrays.asList("mailer:1.31", "git:4.0.0", "junit"), StandardCharsets.UTF_8);
+        File fragments = new File(folder, "fragments");
+        Files.createDirectories(fragments.toPath());
+        Files.write(new File(fragments, "a-team.txt").toPath(), Arrays.asList("mailer:1.32", "git:3.12.1"),
+                StandardCharsets.UTF_8);
+        try (OutputStream out = new GZIPOutputStream(
+                Files.newOutputStream(new File(fragments, "b-team.yaml.gz").toPath()))) {
+            out.write("plugins:\n  - artifactId: mailer\n    source:\n      version: \"1.32\"\n    \n"
+                    .concat("  - artifactId: credentials\n").getBytes(StandardCharsets.UTF_8));
+        }
+        Files.write(new File(fragments, "README.md").toPath(), Arrays.asList("# not a plugins file"),
+                StandardCharsets.UTF_8);
+
+        List<Plugin> plugins = pluginList.parsePluginFiles(Arrays.asList(first, fragments));
+
+        assertThat(plugins).extracting(Plugin::toString).containsExactly(
+                new Plugin("mailer", "1.32", null, null).toString(),
+                new Plugin("git", "4.0.0", null, null).toString(),
+                new Plugin("junit", "latest", null, null).toString(),
+                new Plugin("credentials", "latest", null, null).toString());
+        assertThat(plugins.get(0).getName()).isSameAs("mailer");
+    }
+
+    @Test
+    void mergesDuplicatesOfOneFileLikeDuplicatesOfSeveralFiles() throws IOException {
+        File single = new File(folder, "plugins.txt");
+        Files.write(single.toPath(), Arrays.asList("mailer:1.32", "git:4.0.0", "mailer:1.31", "git:4.0.0"),
+                StandardCharsets.UTF_8);
+        File first = new File(folder, "first.txt");
+        Files.write(first.toPath(), Arrays.asList("mailer:1.32", "git:4.0.0"), StandardCharsets.UTF_8);
+        File second = new File(folder, "second.txt");
+        Files.write(second.toPath(), Arrays.asList("mailer:1.31", "git:4.0.0"), StandardCharsets.UTF_8);
+
+        List<Plugin> fromSingleFile = pluginList.parsePluginFiles(Arrays.asList(single));
+        List<Plugin> fromTwoFiles = pluginList.parsePluginFiles(Arrays.asList(first, second));
+
+        String[] expected = {new Plugin("mailer", "1.32", null, null).toString(),
+                new Plugin("git", "4.0.0", null, null).toString()};
+        assertThat(fromSingleFile).extracting(Plugin::toString).containsExactly(expected);
+        assertThat(fromTwoFiles).extracting(Plugin::toString).containsExactly(expected);
+    }
+
+    @Test
+    void reportsConflictingRequirements() throws IOException {
+        File first = new File(folder, "first.txt");
+        Files.write(first.toPath(), Arrays.asList("git:latest", "junit:experimental",
+                "mailer:1.32:https://example.com/mailer.hpi"), StandardCharsets.UTF_8);
+        File latest = new File(folder, "latest.txt");
+        Files.write(latest.toPath(), Arrays.asList("git:4.0.0"), StandardCharsets.UTF_8);
+        File experimental = new File(folder, "experimental.txt");
+        Files.write(experimental.toPath(), Arrays.asList("junit:1.30"), StandardCharsets.UTF_8);
+        File url = new File(folder, "url.txt");
+        Files.write(url.toPath(), Arrays.asList("mailer:1.40"), StandardCharsets.UTF_8);
+        File incrementals = new File(folder, "incrementals.txt");
+        Files.write(incrementals.toPath(), Arrays.asList("git:incrementals;org.jenkins-ci.plugins;4.1-rc1.abc",
+                "git:4.0.0"), StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> pluginList.parsePluginFiles(Arrays.asList(first, latest)))
+                .isInstanceOf(PluginInputException.class)
+                .hasMessage("Conflicting requirements for plugin git: git:latest in " + first + " and git:4.0.0 in " +
+                        latest);
+        assertThatThrownBy(() -> pluginList.parsePluginFiles(Arrays.asList(first, experimental)))
+                .isInstanceOf(PluginInputException.class)
+                .hasMessageContaining("junit:experimental");
+        assertThatThrownBy(() -> pluginList.parsePluginFiles(Arrays.asList(first, url)))
+                .isInstanceOf(PluginInputException.class)
+                .hasMessageContaining("mailer:1.32:https://example.com/mailer.hpi");
+        assertThatThrownBy(() -> pluginList.parsePluginFiles(Arrays.asList(incrementals)))
+                .isInstanceOf(PluginInputException.class)
+                .hasMessageContaining("git:incrementals;org.jenkins-ci.plugins;4.1-rc1.abc");
+    }
+
+    @Test
+    void rejectsUnknownOrMissingPluginFiles() throws IOException {
+        File unknown = new File(folder, "plugins.t");
+        Files.write(unknown.toPath(), Arrays.asList("mailer"), StandardCharsets.UTF_8);
+
+        assertThatThrownBy(() -> pluginList.parsePluginFiles(Arrays.asList(unknown)))
+                .isInstanceOf(PluginInputException.class);
+        assertThatThrownBy(() -> pluginList.parsePluginFiles(Arrays.asList(new File(folder, "missing.txt"))))
+                .isInstanceOf(PluginInputException.class);
+    }
+
     @Test
     void fileExistsTest() throws URISyntaxException {
         assertThat(pluginList.fileExists(null)).isFalse();
@@ -1,14 +1,25 @@
 package io.jenkins.tools.pluginmanager.util;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.json.JSONObject;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class PluginManagerUtilsTest {
 
+    @TempDir
+    private File folder;
+
     @Test
     void appendPathOntoUrlObjectsTest() throws MalformedURLException {
         String result = PluginManagerUtils.appendPathOntoUrl(new URL("http://bob.com:8080"), new StringBuilder("file.json"));
@@ -178,6 +189,41 @@ class PluginManagerUtilsTest {
         new JSONObject(result); // This asserts the result is valid json
     }
 
+    @Test
+    void explodePluginExtractsSmallAndLargeArchives() throws IOException {
+        for (int entries : new int[] {3, PluginManagerUtils.PARALLEL_EXPLODE_THRESHOLD * 2}) {
+            File archive = new File(folder, "plugin" + entries + ".jpi");
+            try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+                out.putNextEntry(new ZipEntry("META-INF/"));
+                out.putNextEntry(new ZipEntry("WEB-INF/lib/"));
+                for (int i = 0; i < entries; i++) {
+                    out.putNextEntry(new ZipEntry("images/" + i % 5 + "/file" + i + ".txt"));
+                    out.write(("content " + i).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            PluginManagerUtils.explodePlugin(archive, new File(folder, "plugin" + entries));
+        }
+
+        File large = new File(folder, "plugin" + PluginManagerUtils.PARALLEL_EXPLODE_THRESHOLD * 2);
+        assertThat(new File(folder, "plugin3/images/2/file2.txt")).hasContent("content 2");
+        assertThat(new File(large, "images/4/file99.txt")).hasContent("content 99");
+        assertThat(new File(large, "WEB-INF/lib")).isEmptyDirectory();
+    }
+
+    @Test
+    void explodePluginRejectsEntriesOutsideOfTheTarget() throws IOException {
+        File archive = new File(folder, "evil.jpi");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(archive.toPath()))) {
+            out.putNextEntry(new ZipEntry("../evil.txt"));
+            out.write("evil".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> PluginManagerUtils.explodePlugin(archive, new File(folder, "evil")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("../evil.txt");
+        assertThat(new File(folder, "evil.txt")).doesNotExist();
+    }
+
     @Test
     void dirnameObjectTest() throws MalformedURLException {
         String result = PluginManagerUtils.dirName(new URL("http://bob.com/path/to/file.json"));
@@ -0,0 +1,116 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PluginManifestReaderTest {
+
+    @TempDir
+    private File folder;
+
+    private File archive;
+
+    @BeforeEach
+    void copyArchive() throws IOException {
+        archive = new File(folder, "ssh-credentials.hpi");
+        try (InputStream in = getClass().getResourceAsStream("/ssh-credentials.hpi")) {
+            Files.copy(in, archive.toPath());
+        }
+    }
+
+    @Test
+    void readsAllPluginAttributesAtOnce() throws IOException {
+        PluginManifest manifest = new PluginManifestReader().read(archive);
+
+        assertThat(manifest.getPluginVersion()).isEqualTo("1.10");
+        assertThat(manifest.getRequiredCoreVersion()).isEqualTo("1.532.2");
+        assertThat(manifest.getDependencies())
+                .extracting(plugin -> plugin.getName() + ":" + plugin.getVersion() + ":" + plugin.getOptional())
+                .containsExactly("credentials:1.16.1:false");
+    }
+
+    @Test
+    void cachesManifestsUntilTheArchiveChanges() throws IOException {
+        PluginManifestReader reader = new PluginManifestReader(10);
+
+        PluginManifest first = reader.read(archive);
+        assertThat(reader.read(archive)).isSameAs(first);
+
+        try (InputStream in = getClass().getResourceAsStream("/github-branch-source.jpi")) {
+            Files.copy(in, archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        PluginManifest replaced = reader.read(archive);
+        assertThat(replaced).isNotSameAs(first);
+        assertThat(replaced.getPluginVersion()).isEqualTo("1.8");
+    }
+
+    @Test
+    void doesNotCacheWithoutCacheSize() throws IOException {
+        PluginManifestReader reader = new PluginManifestReader();
+
+        assertThat(reader.read(archive)).isNotSameAs(reader.read(archive));
+    }
+
+    @Test
+    void explodingThePluginCachesTheManifestOfTheDirectory() throws IOException {
+        PluginManifestReader reader = new PluginManifestReader(10);
+        File exploded = new File(folder, "exploded");
+
+        PluginManifest manifest = PluginManagerUtils.explodePlugin(archive, exploded, reader);
+
+        assertThat(manifest.getPluginVersion()).isEqualTo("1.10");
+        assertThat(new File(exploded, "META-INF/MANIFEST.MF")).exists();
+        assertThat(reader.read(exploded)).isSameAs(manifest);
+    }
+
+    @Test
+    void readsManifestFromTheBeginningOfTheStream() throws IOException {
+        try (InputStream in = Files.newInputStream(archive.toPath())) {
+            PluginManifest manifest = PluginManifestReader.readFromStream(in);
+
+            assertThat(manifest).isNotNull();
+            assertThat(manifest.getPluginVersion()).isEqualTo("1.10");
+        }
+    }
+
+    @Test
+    void scansTheStreamForTheManifestEntry() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+            out.putNextEntry(new ZipEntry("index.jelly"));
+            out.write("<div/>".getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry(JarFile.MANIFEST_NAME));
+            out.write("Manifest-Version: 1.0\nPlugin-Version: 2.5\nJenkins-Version: 2.361.4\n\n"
+                    .getBytes(StandardCharsets.UTF_8));
+            out.putNextEntry(new ZipEntry("WEB-INF/lib/plugin.jar"));
+            out.write(new byte[4096]);
+        }
+
+        PluginManifest manifest = PluginManifestReader.scanStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+        assertThat(manifest).isNotNull();
+        assertThat(manifest.getPluginVersion()).isEqualTo("2.5");
+        assertThat(manifest.getRequiredCoreVersion()).isEqualTo("2.361.4");
+    }
+
+    @Test
+    void scanReturnsNullWithoutManifest() throws IOException {
+        byte[] notAnArchive = "not an archive".getBytes(StandardCharsets.UTF_8);
+
+        assertThat(PluginManifestReader.scanStream(new ByteArrayInputStream(notAnArchive))).isNull();
+    }
+}
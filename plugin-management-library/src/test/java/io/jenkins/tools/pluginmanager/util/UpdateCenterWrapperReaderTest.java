@@ -0,0 +1,59 @@
+package io.jenkins.tools.pluginmanager.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.IOUtils;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class UpdateCenterWrapperReaderTest {
+
+    private static final String JSON = "{\"plugins\": {\"mailer\": {\"version\": \"1.32 (beta);\"}}}";
+
+    @Test
+    void removesTheWrapper() throws IOException {
+        Reader reader = new UpdateCenterWrapperReader(new StringReader("updateCenter.post(\n" + JSON + "\n);\n"));
+
+        assertThat(IOUtils.toString(reader)).isEqualTo("\n" + JSON);
+    }
+
+    @Test
+    void passesUnwrappedDocumentsThrough() throws IOException {
+        assertThat(IOUtils.toString(new UpdateCenterWrapperReader(new StringReader(JSON + "\n")))).isEqualTo(JSON + "\n");
+        assertThat(IOUtils.toString(new UpdateCenterWrapperReader(new StringReader("{}")))).isEqualTo("{}");
+    }
+
+    @Test
+    void removesTheWrapperReadCharacterByCharacter() throws IOException {
+        // the source returns one character per read, so the suffix is split across reads
+        Reader source = new StringReader("updateCenter.post(" + JSON + ");") {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+        Reader reader = new UpdateCenterWrapperReader(source);
+
+        StringBuilder content = new StringBuilder();
+        int c;
+        while ((c = reader.read()) != -1) {
+            content.append((char) c);
+        }
+        assertThat(content).hasToString(JSON);
+    }
+
+    @Test
+    void parsesWrappedResponses() throws IOException {
+        byte[] document = ("updateCenter.post(" + JSON + ");").getBytes(StandardCharsets.UTF_8);
+
+        JSONObject json = JsonResponseHandler.parse(new ByteArrayInputStream(document), StandardCharsets.UTF_8);
+
+        assertThat(json.getJSONObject("plugins").getJSONObject("mailer").getString("version"))
+                .isEqualTo("1.32 (beta);");
+    }
+}